@@ -0,0 +1,170 @@
+package fiets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import jodd.json.JsonObject;
+
+/**
+ * Pushes the unread, total and bookmark counts to the clients as
+ * server-sent events whenever they change. Each subscriber is an endless
+ * stream for a chunked response. It starts with the current counts, so a
+ * client that reconnects catches up, and sends a comment as heartbeat when
+ * nothing happened for a while, set by the system property
+ * <code>fiets.events.heartbeatMillis</code> (default 15 s), which also
+ * reveals clients that went away.
+ */
+public class CountEvents {
+
+  private static final Logger log = LogManager.getLogger();
+  private static final long HEARTBEAT_MILLIS =
+    Long.getLong("fiets.events.heartbeatMillis", 15000L);
+  /** Sent first, how long clients wait before they reconnect. */
+  private static final byte[] RETRY =
+    "retry: 5000\n\n".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] HEARTBEAT =
+    ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+  private long id;
+  private String current;
+
+  /**
+   * Send the counts to all subscribers, unless they did not change.
+   */
+  public void publish(int unread, int full, int bookmarks) {
+    String data = new JsonObject()
+      .put("unread_count", unread)
+      .put("full_count", full)
+      .put("bookmark_count", bookmarks)
+      .toString();
+    String event;
+    synchronized (this) {
+      if (data.equals(current)) {
+        return;
+      }
+      current = data;
+      event = event(++id, data);
+    }
+    for (Subscriber subscriber : subscribers) {
+      subscriber.offer(event);
+    }
+  }
+
+  /**
+   * @return a stream of events, closing it unsubscribes
+   */
+  public InputStream subscribe() {
+    Subscriber subscriber = new Subscriber();
+    synchronized (this) {
+      if (current != null) {
+        subscriber.offer(event(id, current));
+      }
+      subscribers.add(subscriber);
+    }
+    log.debug("Subscribed to counts, {} subscribers.", subscribers.size());
+    return subscriber;
+  }
+
+  public int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  private static String event(long id, String data) {
+    return "id: " + id + "\nevent: counts\ndata: " + data + "\n\n";
+  }
+
+  /**
+   * Waits with a lock rather than a monitor, which would pin the carrier of
+   * a virtual thread reading the stream.
+   */
+  private final class Subscriber extends InputStream {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    /** Only the latest event matters, it replaces one not sent yet. */
+    private String pending;
+    private byte[] sending = RETRY;
+    private int pos;
+    private boolean closed;
+
+    private void offer(String event) {
+      lock.lock();
+      try {
+        pending = event;
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override public int read(byte[] b, int off, int len)
+      throws IOException {
+      lock.lock();
+      try {
+        if (sending == null || pos == sending.length) {
+          sending = next();
+          pos = 0;
+          if (sending == null) {
+            return -1;
+          }
+        }
+        int num = Math.min(len, sending.length - pos);
+        System.arraycopy(sending, pos, b, off, num);
+        pos += num;
+        return num;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private byte[] next() throws InterruptedIOException {
+      long deadline = System.currentTimeMillis() + HEARTBEAT_MILLIS;
+      while (pending == null && !closed) {
+        long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0) {
+          return HEARTBEAT;
+        }
+        try {
+          changed.await(wait, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted waiting for events.");
+        }
+      }
+      if (closed) {
+        return null;
+      }
+      byte[] event = pending.getBytes(StandardCharsets.UTF_8);
+      pending = null;
+      return event;
+    }
+
+    @Override public void close() {
+      lock.lock();
+      try {
+        closed = true;
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      subscribers.remove(this);
+      log.debug("Unsubscribed from counts, {} subscribers.",
+        subscribers.size());
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package fiets;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import fiets.model.Feed;
+
+/**
+ * Schedules feed updates individually instead of refreshing all feeds at a
+ * fixed rate. Feeds wait in a priority queue ordered by their next due time.
+ * After each update the interval is derived from the number of posts the feed
+ * published within the last {@value #WINDOW_DAYS} days, bounded by
+ * <code>fiets.schedule.minMinutes</code> (default 15) and
+ * <code>fiets.schedule.maxMinutes</code> (default 1440) and jittered by
+ * &plusmn;10% so feeds do not bunch up. Due times are stored with the feeds
+ * and survive restarts.
+ */
+public class FeedScheduler {
+
+  private static final Logger log = LogManager.getLogger();
+  private static final int WINDOW_DAYS = 30;
+  private static final long WINDOW_MILLIS = TimeUnit.DAYS.toMillis(WINDOW_DAYS);
+  private static final long RESCAN_MINUTES = 10;
+  private static final double JITTER = 0.1d;
+
+  private final FeedService fs;
+  private final long minMillis;
+  private final long maxMillis;
+  private final DelayQueue<Due> queue = new DelayQueue<>();
+  private final Set<Long> scheduled = ConcurrentHashMap.newKeySet();
+
+  public FeedScheduler(FeedService theFs) {
+    this(theFs,
+      TimeUnit.MINUTES.toMillis(Long.getLong("fiets.schedule.minMinutes", 15)),
+      TimeUnit.MINUTES.toMillis(Long.getLong("fiets.schedule.maxMinutes", 1440)));
+  }
+
+  public FeedScheduler(FeedService theFs, long theMinMillis, long theMaxMillis) {
+    if (theMinMillis <= 0 || theMaxMillis < theMinMillis) {
+      throw new IllegalArgumentException(String.format(
+        "Invalid interval bounds: %d/%d", theMinMillis, theMaxMillis));
+    }
+    fs = theFs;
+    minMillis = theMinMillis;
+    maxMillis = theMaxMillis;
+  }
+
+  public void start() throws SQLException {
+    scheduleNewFeeds();
+    Thread t = new Thread(this::loop, "fiets-scheduler");
+    t.setDaemon(true);
+    t.start();
+  }
+
+  private void loop() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        Due first = queue.poll(RESCAN_MINUTES, TimeUnit.MINUTES);
+        if (first == null) {
+          scheduleNewFeeds();
+        } else {
+          List<Due> due = new ArrayList<>();
+          due.add(first);
+          queue.drainTo(due);
+          List<Long> feedIds = new ArrayList<>();
+          for (Due d : due) {
+            feedIds.add(d.feedId);
+          }
+          update(feedIds);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Throwable t) {
+        log.error("Could not complete scheduled update: {}", t.getMessage(), t);
+        sleepAfterError();
+      }
+    }
+  }
+
+  /**
+   * Add feeds the scheduler does not know about yet, i.e. all feeds on
+   * startup and newly added ones later on.
+   */
+  void scheduleNewFeeds() throws SQLException {
+    Map<Long, Date> next = fs.getNextUpdates();
+    long now = System.currentTimeMillis();
+    int added = 0;
+    for (Feed feed : fs.getAllFeeds()) {
+      if (scheduled.add(feed.getId())) {
+        Date at = next.get(feed.getId());
+        queue.add(new Due(feed.getId(), at == null ? now : at.getTime()));
+        added++;
+      }
+    }
+    if (added > 0) {
+      log.info("Scheduled {} feeds, {} in total.", added, scheduled.size());
+    }
+  }
+
+  /**
+   * Update the feeds taken from the queue as due.
+   */
+  void update(List<Long> feedIds) throws SQLException {
+    Map<Long, Feed> feeds = new HashMap<>();
+    try {
+      for (Feed feed : fs.getAllFeeds()) {
+        feeds.put(feed.getId(), feed);
+      }
+    } catch (SQLException | RuntimeException e) {
+      retryLater(feedIds);
+      throw e;
+    }
+    List<Feed> toUpdate = new ArrayList<>();
+    for (long id : feedIds) {
+      Feed feed = feeds.get(id);
+      if (feed == null) {
+        scheduled.remove(id);
+      } else {
+        toUpdate.add(feed);
+      }
+    }
+    log.info("Updating {} due feeds.", toUpdate.size());
+    try {
+      fs.refreshFeeds(toUpdate);
+    } finally {
+      reschedule(toUpdate);
+    }
+    scheduleNewFeeds();
+  }
+
+  private void reschedule(List<Feed> feeds) throws SQLException {
+    long now = System.currentTimeMillis();
+    List<Long> ids = new ArrayList<>();
+    for (Feed feed : feeds) {
+      ids.add(feed.getId());
+    }
+    Map<Long, Integer> posts;
+    try {
+      posts = fs.countPostsSince(new Date(now - WINDOW_MILLIS), ids);
+    } catch (SQLException | RuntimeException e) {
+      retryLater(ids);
+      throw e;
+    }
+    Map<Long, Date> next = new HashMap<>();
+    for (Feed feed : feeds) {
+      long at = now + jitter(interval(posts.getOrDefault(feed.getId(), 0)));
+      queue.add(new Due(feed.getId(), at));
+      next.put(feed.getId(), new Date(at));
+    }
+    fs.setNextUpdates(next);
+  }
+
+  /**
+   * Put feeds taken from the queue back after a database error, due after
+   * the shortest interval, so they are not lost until a restart.
+   */
+  private void retryLater(List<Long> feedIds) {
+    long at = System.currentTimeMillis() + minMillis;
+    for (long id : feedIds) {
+      queue.add(new Due(id, at));
+    }
+  }
+
+  /**
+   * Poll twice per average gap between posts within the window.
+   */
+  long interval(int postsInWindow) {
+    if (postsInWindow <= 0) {
+      return maxMillis;
+    }
+    long interval = WINDOW_MILLIS / postsInWindow / 2;
+    return Math.max(minMillis, Math.min(maxMillis, interval));
+  }
+
+  static long jitter(long interval) {
+    double factor = ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+    return interval + (long) (interval * factor);
+  }
+
+  /**
+   * @return when the feed is due, <code>null</code> if it is not queued
+   */
+  Long dueAt(long feedId) {
+    for (Due d : queue) {
+      if (d.feedId == feedId) {
+        return d.at;
+      }
+    }
+    return null;
+  }
+
+  private static void sleepAfterError() {
+    try {
+      Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // immutable
+  private static class Due implements Delayed {
+    private final long feedId;
+    private final long at;
+    private Due(long theFeedId, long theAt) {
+      feedId = theFeedId;
+      at = theAt;
+    }
+    @Override public long getDelay(TimeUnit unit) {
+      return unit.convert(
+        at - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+    @Override public int compareTo(Delayed o) {
+      return Long.compare(at, ((Due) o).at);
+    }
+  }
+}
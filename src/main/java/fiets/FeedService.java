@@ -1,35 +1,100 @@
 package fiets;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Date;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import fiets.model.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.xml.sax.SAXParseException;
+
+import javax.xml.stream.XMLStreamException;
 
 import fiets.db.Database;
 import fiets.db.FeedDao;
 import fiets.db.FilterDao;
 import fiets.db.PostDao;
+import fiets.metrics.Counter;
+import fiets.metrics.Histogram;
+import fiets.metrics.Metrics;
 import fiets.processors.Process;
-import jodd.http.HttpException;
+import fiets.sources.FeedContent;
 
-public class FeedService {
+public final class FeedService {
   private static final Logger log = LogManager.getLogger();
+  private static final Histogram FETCH_TIME = Metrics.histogram(
+    "fiets_feed_fetch_seconds", "Time to get the response for a feed.");
+  private static final Histogram PARSE_TIME = Metrics.histogram(
+    "fiets_feed_parse_seconds", "Time to read and parse a feed.");
+  private static final Histogram SAVE_TIME = Metrics.histogram(
+    "fiets_feed_save_seconds", "Time to save the posts of a feed.");
+  private static final Histogram REFRESH_TIME = Metrics.histogram(
+    "fiets_refresh_seconds", "Time to refresh a batch of feeds.");
+  private static final String REFRESHES = "fiets_feed_refreshes_total";
+  private static final String REFRESHES_HELP = "Feed refreshes by result.";
+  private static final Counter UPDATED =
+    Metrics.counter(REFRESHES, REFRESHES_HELP, "result", "updated");
+  private static final Counter NOT_MODIFIED =
+    Metrics.counter(REFRESHES, REFRESHES_HELP, "result", "not_modified");
+  private static final Counter FAILED =
+    Metrics.counter(REFRESHES, REFRESHES_HELP, "result", "failed");
+  private final Database db;
   private final FeedDao fed;
   private final FilterDao fid;
   private final PostDao pd;
+  private final RefreshEngine engine = new RefreshEngine();
+  private final AtomicLong fetchCount = new AtomicLong();
+  private final AtomicLong notModifiedCount = new AtomicLong();
+  private final CountEvents countEvents = new CountEvents();
+  private final RefreshCoordinator refresher;
+  private final Jobs jobs = new Jobs();
+  private final ReentrantLock updateAllLock = new ReentrantLock();
 
   public FeedService(Database theDb)
           throws SQLException {
+    db = theDb;
     fed = new FeedDao(theDb);
     fid = new FilterDao(theDb, fed);
     pd = new PostDao(theDb);
+    refresher = new RefreshCoordinator(this::updateFeedPosts);
+    pd.addCountsListener(this::publishCounts);
+    publishCounts();
+    Metrics.gauge("fiets_refresh_feeds", "Feeds being refreshed.",
+      refresher::getRefreshingCount);
+    Metrics.gauge("fiets_refresh_waiting_fetches",
+      "Fetches waiting for a slot.", engine::getWaitingCount);
+    Metrics.gauge("fiets_heavy_slots_taken",
+      "Slots taken by heavy requests.", refresher::getHeavyCount);
+    Metrics.gauge("fiets_jobs_unfinished", "Jobs queued or running.",
+      jobs::getUnfinishedCount);
+    Metrics.gauge("fiets_event_subscribers",
+      "Clients following the counts.", countEvents::getSubscriberCount);
+  }
+
+  private void publishCounts() {
+    try {
+      countEvents.publish(
+        pd.getUnreadCount(), pd.getFullCount(), pd.getBookmarksCount());
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return server-sent events with the counts, whenever they change
+   */
+  public InputStream subscribeCounts() {
+    return countEvents.subscribe();
   }
 
   public List<Feed> addFeeds(List<String> urls)
@@ -45,32 +110,112 @@ public class FeedService {
         feeds.add(feed);
       } catch (IllegalArgumentException e) {
         log.error(e, e);
-      } catch (SAXParseException e) {
+      } catch (XMLStreamException e) {
         log.error("Parse error in feed {}, ignoring this.", url);
-      } catch (HttpException e) {
+      } catch (IOException e) {
         log.error("Could not connect {}, ignoring this.", url);
       }
     }
     return feeds;
   }
 
-  public void updateAllPosts() {
-    List<Feed> feeds;
+  /**
+   * Update all feeds in the background, or follow such a job in progress.
+   * @throws OverloadedException if there is no room for it now
+   */
+  public Job updateAllPosts() throws SQLException {
+    // Queried outside of the lock, which is no monitor either, so a virtual
+    // thread never blocks its carrier here.
+    List<Feed> feeds = fed.getAllFeeds();
+    updateAllLock.lock();
     try {
-      feeds = fed.getAllFeeds();
-      updateFeedPosts(feeds);
-    } catch (SQLException e) {
-      throw new RuntimeException(e);
+      Job running = jobs.getUnfinished("update");
+      if (running != null) {
+        return running;
+      }
+      return jobs.submit(
+        "update", refresher.admitAll(feeds), job -> refresh(feeds, job));
+    } finally {
+      updateAllLock.unlock();
     }
   }
 
+  /**
+   * Update feeds in the background.
+   * @throws OverloadedException if there is no room for it now
+   */
+  public Job updateInBackground(List<Feed> feeds) {
+    return jobs.submit(
+      "update-feed", refresher.admit(feeds), job -> refresh(feeds, job));
+  }
+
+  /**
+   * Add feeds and update them in the background.
+   * @throws OverloadedException if there is no room for it now
+   */
+  public Job addFeedsInBackground(List<String> urls) {
+    return jobs.submit("add-feed", refresher.admit(), job -> {
+      List<Feed> added = addFeeds(urls);
+      Set<String> locations = added.stream()
+        .map(Feed::getLocation).collect(Collectors.toSet());
+      for (String url : urls) {
+        if (!locations.contains(url)) {
+          job.error("Could not add " + url + ".");
+        }
+      }
+      refresh(added, job);
+    });
+  }
+
+  private void refresh(List<Feed> feeds, Job job) throws SQLException {
+    job.pending(feeds);
+    refresher.refresh(feeds, true, job);
+  }
+
+  /**
+   * @return the job, <code>null</code> if unknown or no longer kept
+   */
+  public Job getJob(long id) {
+    return jobs.get(id);
+  }
+
+  /**
+   * Update feeds nobody waits for, joining updates in progress.
+   */
+  public void refreshFeeds(List<Feed> feeds) throws SQLException {
+    refresher.refresh(feeds);
+  }
+
   public void updateFeedPosts(List<Feed> feeds) throws SQLException {
+    updateFeedPosts(feeds, false, RefreshProgress.NONE);
+  }
+
+  /**
+   * @param urgent <code>true</code> if a user waits for it
+   */
+  public void updateFeedPosts(
+    List<Feed> feeds, boolean urgent, RefreshProgress progress)
+    throws SQLException {
+    long start = System.nanoTime();
     List<Filter> allFilters = fid.getAllFilters();
     Filterer ff = new Filterer(allFilters);
-    for (Feed feed : feeds) {
-      try {
-        List<Post> posts = Process.parsePosts(feed);
-        posts = posts.stream()
+    int[] notModified = new int[1];
+    RefreshEngine.Report report = engine.refresh(feeds, urgent, feed -> {
+      progress.fetching(feed);
+      return fetch(feed);
+    }, new RefreshEngine.Sink<Fetched>() {
+      @Override public void store(Feed feed, Fetched fetched)
+        throws SQLException {
+        FeedContent content = fetched.content;
+        if (content != null && content.isNotModified()) {
+          notModified[0]++;
+          fed.touchFeed(feed, "OK");
+          NOT_MODIFIED.inc();
+          progress.refreshed(feed, null);
+          return;
+        }
+        long saveStart = System.nanoTime();
+        List<Post> posts = fetched.posts.stream()
           .map(p -> {
             if (ff.isAllowed(p)) {
               return p;
@@ -79,13 +224,72 @@ public class FeedService {
             }
           }).collect(Collectors.toList());
         pd.savePosts(posts, feed);
-        fed.touchFeed(feed, "OK");
-      } catch (Exception e) {
+        if (content == null) {
+          fed.touchFeed(feed, "OK");
+        } else {
+          fed.touchFeed(
+            feed, "OK", content.getEtag(), content.getLastModified());
+        }
+        SAVE_TIME.recordSince(saveStart);
+        UPDATED.inc();
+        progress.refreshed(feed, null);
+      }
+      @Override public void failed(Feed feed, Exception e)
+        throws SQLException {
         fed.touchFeed(feed, e.getMessage());
+        FAILED.inc();
+        progress.refreshed(feed, e);
         log.error("Could not update posts for {}.", feed.getLocation(), e);
       }
+    });
+    fetchCount.addAndGet(feeds.size());
+    notModifiedCount.addAndGet(notModified[0]);
+    log.info("Refreshed {}, {} not modified. Overall {} of {} fetches "
+      + "not modified ({}%).", report, notModified[0],
+      notModifiedCount.get(), fetchCount.get(),
+      String.format("%.1f", getNotModifiedRate() * 100d));
+    fid.addMatchCounts(ff.getMatchCounts());
+    REFRESH_TIME.recordSince(start);
+  }
+
+  private static Fetched fetch(Feed feed) throws Exception {
+    long start = System.nanoTime();
+    FeedContent content = Process.fetch(feed);
+    FETCH_TIME.recordSince(start);
+    if (content != null && content.isNotModified()) {
+      content.close();
+      return new Fetched(content, null);
     }
-    fid.updateMatchCounts(allFilters);
+    start = System.nanoTime();
+    List<Post> posts = Process.parsePosts(feed, content);
+    PARSE_TIME.recordSince(start);
+    return new Fetched(content, posts);
+  }
+
+  // immutable
+  private static class Fetched {
+    private final FeedContent content;
+    private final List<Post> posts;
+    private Fetched(FeedContent theContent, List<Post> thePosts) {
+      content = theContent;
+      posts = thePosts;
+    }
+  }
+
+  /**
+   * @return share of feed fetches since startup that were answered with
+   * "not modified" and thus skipped parsing and saving
+   */
+  public double getNotModifiedRate() {
+    long fetches = fetchCount.get();
+    return fetches == 0 ? 0d : notModifiedCount.get() / (double) fetches;
+  }
+
+  /**
+   * @return a number that changes whenever feeds, posts or filters change
+   */
+  public long getDataVersion() {
+    return db.getVersion();
   }
 
   public Set<Long> getBookmarks() throws SQLException {
@@ -104,6 +308,21 @@ public class FeedService {
     return pd.getReadPosts(num);
   }
 
+  public PostPage getUnreadPage(PostCursor after, int num)
+    throws SQLException {
+    return pd.getUnreadPage(after, num);
+  }
+
+  public PostPage getReadPage(PostCursor after, int num)
+    throws SQLException {
+    return pd.getReadPage(after, num);
+  }
+
+  public PostPage getBookmarkedPage(PostCursor after, int num)
+    throws SQLException {
+    return pd.getBookmarkedPage(after, num);
+  }
+
   public void markPostsRead(List<Long> postIds) throws SQLException {
     pd.markPostsRead(postIds);
   }
@@ -149,6 +368,14 @@ public class FeedService {
     }
   }
 
+  public void backfillDisplayText() {
+    try {
+      pd.backfillDisplayText();
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   public void dropOutdated() {
     try {
       pd.deleteOutdated();
@@ -157,10 +384,32 @@ public class FeedService {
     }
   }
 
+  public void reconcileCounts() {
+    try {
+      pd.reconcileCounts();
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   public List<Feed> getAllFeeds() throws SQLException {
     return fed.getAllFeeds();
   }
 
+  public Map<Long, java.util.Date> getNextUpdates() throws SQLException {
+    return fed.getNextUpdates();
+  }
+
+  public void setNextUpdates(Map<Long, java.util.Date> next)
+    throws SQLException {
+    fed.setNextUpdates(next);
+  }
+
+  public Map<Long, Integer> countPostsSince(java.util.Date since,
+    Collection<Long> feedIds) throws SQLException {
+    return fed.countPostsSince(since, feedIds);
+  }
+
   public List<Filter> getAllFilters() throws SQLException {
     return fid.getAllFilters();
   }
@@ -193,16 +442,72 @@ public class FeedService {
     pd.markAllRead(before);
   }
 
-  public void addFilter(String url, FilterMatch urlMatch, String title, FilterMatch titleMatch) throws SQLException {
+  /**
+   * @param apply <code>true</code> to mark the unread posts the filter
+   * blocks read, see {@link #applyFilter(Filter)}
+   * @return the number of posts marked read
+   */
+  public int addFilter(String url, FilterMatch urlMatch, String title,
+    FilterMatch titleMatch, boolean apply) throws SQLException {
     Filter filter = new Filter(0L, url, urlMatch, title, titleMatch, 0L);
-    fid.saveFilter(filter);
+    RefreshCoordinator.Slot slot = admitApply(apply);
+    try {
+      filter = fid.saveFilter(filter);
+      return apply ? applyFilter(filter) : 0;
+    } finally {
+      closeApply(slot);
+    }
   }
-  
-  public void updateFilter(long id, String url, FilterMatch urlMatch, String title, FilterMatch titleMatch) throws SQLException {
+
+  /**
+   * @param apply <code>true</code> to mark the unread posts the filter
+   * blocks read, see {@link #applyFilter(Filter)}
+   * @return the number of posts marked read
+   */
+  public int updateFilter(long id, String url, FilterMatch urlMatch,
+    String title, FilterMatch titleMatch, boolean apply) throws SQLException {
     Filter filter = new Filter(id, url, urlMatch, title, titleMatch, 0L);
-    fid.updateFilterKeepMatchCount(filter);
+    RefreshCoordinator.Slot slot = admitApply(apply);
+    try {
+      fid.updateFilterKeepMatchCount(filter);
+      return apply ? applyFilter(filter) : 0;
+    } finally {
+      closeApply(slot);
+    }
+  }
+
+  /**
+   * Take the slot for applying a filter before saving it, so a busy server
+   * turns the request down without having saved anything.
+   * @return the slot, <code>null</code> if the filter is not applied
+   * @throws OverloadedException if too much heavy work is going on
+   */
+  private RefreshCoordinator.Slot admitApply(boolean apply) {
+    return apply ? refresher.admit() : null;
   }
-  
+
+  private static void closeApply(RefreshCoordinator.Slot slot) {
+    if (slot != null) {
+      slot.close();
+    }
+  }
+
+  /**
+   * Apply the filter to the unread posts there are, as if they had come in
+   * after it: those it blocks are marked read and count as its matches.
+   * Needs a slot for heavy work, see {@link #admitApply(boolean)}.
+   * @return the number of posts marked read
+   */
+  private int applyFilter(Filter filter) throws SQLException {
+    Filterer ff = new Filterer(Collections.singletonList(filter));
+    int marked = pd.markFilteredRead(filter, p -> ff.firstMatch(p) >= 0);
+    fid.addMatchCounts(
+      Collections.singletonMap(filter.getId(), (long) marked));
+    log.info("Filter {} marked {} unread posts read.",
+      filter.getId(), marked);
+    return marked;
+  }
+
   public void deleteFilter(long filterId) throws SQLException {
     fid.deleteFilter(filterId);
   }
@@ -15,7 +15,6 @@ import java.util.Set;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import fi.iki.elonen.NanoHTTPD.ResponseException;
 import fiets.model.Feed;
 import fiets.model.HasId;
 import fiets.model.Post;
@@ -41,7 +40,7 @@ public class FeverApi {
   }
 
   public View<String> serve(SessionDecorator sd, FeedService fs)
-    throws IOException, ResponseException, SQLException {
+    throws IOException, SQLException {
     Map<String, List<String>> getParams = sd.getParameters();
     log.info("GET params: {}", getParams);
     if (getParams.containsKey("refresh")) {
@@ -0,0 +1,52 @@
+package fiets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Which responses are compressed, and the compression itself. Text is
+ * compressed from a minimum size on, set by the system property
+ * <code>fiets.gzip.minBytes</code> (default 1024); below it the gzip
+ * overhead eats most of the savings.
+ */
+public final class Gzip {
+
+  public static final int MIN_BYTES =
+    Integer.getInteger("fiets.gzip.minBytes", 1024);
+
+  /**
+   * @return <code>true</code> for textual types; not for event streams,
+   * whose events have to reach the client one by one
+   */
+  public static boolean isCompressible(String mimeType) {
+    if (mimeType == null) {
+      return false;
+    }
+    String type = mimeType.toLowerCase(Locale.ENGLISH);
+    if (type.startsWith("text/event-stream")) {
+      return false;
+    }
+    return type.startsWith("text/") || type.contains("json")
+      || type.contains("javascript") || type.contains("xml");
+  }
+
+  public static boolean isWorthIt(String mimeType, int length) {
+    return length >= MIN_BYTES && isCompressible(mimeType);
+  }
+
+  public static byte[] compress(byte[] data) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+      gzip.write(data);
+    } catch (IOException e) {
+      // Not thrown by in-memory streams.
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+
+  private Gzip() {}
+}
@@ -0,0 +1,173 @@
+package fiets;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fiets.model.Feed;
+import jodd.json.JsonArray;
+import jodd.json.JsonObject;
+
+/**
+ * Expensive work of a request that runs in the background, see
+ * {@link Jobs}. Follows the feeds it refreshes.
+ */
+public class Job implements RefreshProgress {
+
+  public enum State {
+    queued, running, done, failed
+  }
+
+  public enum FeedState {
+    pending, fetching, joined, done, failed
+  }
+
+  private final long id;
+  private final String kind;
+  private final long created = System.currentTimeMillis();
+  private final Map<Long, FeedProgress> feeds = new LinkedHashMap<>();
+  private final List<String> errors = new ArrayList<>();
+  private State state = State.queued;
+  private long started;
+  private long finished;
+
+  Job(long theId, String theKind) {
+    id = theId;
+    kind = theKind;
+  }
+
+  private static class FeedProgress {
+    private final Feed feed;
+    private FeedState state = FeedState.pending;
+    private long started;
+    private long finished;
+    private String error;
+
+    private FeedProgress(Feed theFeed) {
+      feed = theFeed;
+    }
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public String getKind() {
+    return kind;
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  public synchronized boolean isFinished() {
+    return state == State.done || state == State.failed;
+  }
+
+  /**
+   * Add feeds that will be refreshed, unless known already.
+   */
+  public synchronized void pending(List<Feed> theFeeds) {
+    for (Feed feed : theFeeds) {
+      feeds.computeIfAbsent(feed.getId(), i -> new FeedProgress(feed));
+    }
+  }
+
+  /**
+   * Record a problem that is not about a single feed.
+   */
+  public synchronized void error(String message) {
+    errors.add(message);
+  }
+
+  @Override public synchronized void fetching(Feed feed) {
+    FeedProgress fp = progress(feed);
+    fp.state = FeedState.fetching;
+    fp.started = System.currentTimeMillis();
+  }
+
+  @Override public synchronized void joined(Feed feed) {
+    FeedProgress fp = progress(feed);
+    fp.state = FeedState.joined;
+    fp.started = System.currentTimeMillis();
+  }
+
+  @Override public synchronized void refreshed(Feed feed, Exception error) {
+    FeedProgress fp = progress(feed);
+    fp.state = error == null ? FeedState.done : FeedState.failed;
+    fp.error = error == null ? null : String.valueOf(error.getMessage());
+    fp.finished = System.currentTimeMillis();
+    if (fp.started == 0) {
+      fp.started = fp.finished;
+    }
+  }
+
+  synchronized void started() {
+    state = State.running;
+    started = System.currentTimeMillis();
+  }
+
+  synchronized void finished(Exception error) {
+    if (error != null) {
+      errors.add(String.valueOf(error.getMessage()));
+    }
+    state = error == null ? State.done : State.failed;
+    finished = System.currentTimeMillis();
+  }
+
+  private FeedProgress progress(Feed feed) {
+    return feeds.computeIfAbsent(feed.getId(), i -> new FeedProgress(feed));
+  }
+
+  /**
+   * @return the state with the progress of each feed, times are in
+   * milliseconds since the epoch
+   */
+  public synchronized JsonObject toJson() {
+    long now = System.currentTimeMillis();
+    JsonObject json = new JsonObject()
+      .put("id", id)
+      .put("kind", kind)
+      .put("state", state.name())
+      .put("created", created);
+    if (started > 0) {
+      json.put("started", started)
+        .put("elapsed_millis", (finished > 0 ? finished : now) - started);
+    }
+    if (finished > 0) {
+      json.put("finished", finished);
+    }
+    int done = 0;
+    int failed = 0;
+    JsonArray feedsJson = new JsonArray();
+    for (FeedProgress fp : feeds.values()) {
+      JsonObject feedJson = new JsonObject()
+        .put("id", fp.feed.getId())
+        .put("location", fp.feed.getLocation())
+        .put("title", fp.feed.getTitle())
+        .put("state", fp.state.name());
+      if (fp.started > 0) {
+        feedJson.put("millis", (fp.finished > 0 ? fp.finished : now)
+          - fp.started);
+      }
+      if (fp.error != null) {
+        feedJson.put("error", fp.error);
+      }
+      if (fp.state == FeedState.done) {
+        done++;
+      } else if (fp.state == FeedState.failed) {
+        failed++;
+      }
+      feedsJson.add(feedJson);
+    }
+    JsonArray errorsJson = new JsonArray();
+    errors.forEach(errorsJson::add);
+    return json
+      .put("feeds_total", feeds.size())
+      .put("feeds_done", done)
+      .put("feeds_failed", failed)
+      .put("feeds", feedsJson)
+      .put("errors", errorsJson);
+  }
+}
@@ -0,0 +1,103 @@
+package fiets;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs expensive work of requests in the background, each job on a virtual
+ * thread, so the request returns at once with the job to follow. The latest
+ * jobs are kept for looking them up, as many as set by the system property
+ * <code>fiets.jobs.keep</code> (default 100).
+ */
+public class Jobs {
+
+  private static final Logger log = LogManager.getLogger();
+
+  public interface Work {
+    void run(Job job) throws Exception;
+  }
+
+  private final AtomicLong ids = new AtomicLong();
+  private final int keep;
+  private final Map<Long, Job> jobs;
+
+  public Jobs() {
+    this(Integer.getInteger("fiets.jobs.keep", 100));
+  }
+
+  public Jobs(int theKeep) {
+    keep = theKeep;
+    jobs = new LinkedHashMap<>() {
+      @Override protected boolean removeEldestEntry(Map.Entry<Long, Job> e) {
+        return size() > keep;
+      }
+    };
+  }
+
+  /**
+   * @param slot held by the job until it is finished
+   */
+  public Job submit(String kind, RefreshCoordinator.Slot slot, Work work) {
+    Job job = new Job(ids.incrementAndGet(), kind);
+    synchronized (this) {
+      jobs.put(job.getId(), job);
+    }
+    Thread.ofVirtual().name("fiets-job-" + job.getId()).start(() -> {
+      Exception error = null;
+      try {
+        job.started();
+        work.run(job);
+      } catch (Exception e) {
+        error = e;
+      } finally {
+        // Give the slot back before the job shows as finished.
+        slot.close();
+      }
+      job.finished(error);
+      if (error == null) {
+        log.info("Finished job {} ({}).", job.getId(), kind);
+      } else {
+        log.error("Job {} ({}) failed: {}",
+          job.getId(), kind, error.getMessage(), error);
+      }
+    });
+    return job;
+  }
+
+  /**
+   * @return the job, <code>null</code> if unknown or no longer kept
+   */
+  public synchronized Job get(long id) {
+    return jobs.get(id);
+  }
+
+  /**
+   * @return the number of jobs queued or running
+   */
+  public synchronized int getUnfinishedCount() {
+    int count = 0;
+    for (Job job : jobs.values()) {
+      if (!job.isFinished()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return a job of the kind that is not finished yet, <code>null</code>
+   * if there is none
+   */
+  public synchronized Job getUnfinished(String kind) {
+    for (Job job : jobs.values()) {
+      if (job.getKind().equals(kind) && !job.isFinished()) {
+        return job;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,30 @@
+package fiets;
+
+import fiets.http.Status;
+
+/**
+ * A request that is turned away to protect the server, to be answered with
+ * its status and a <code>Retry-After</code> header.
+ */
+public class OverloadedException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Status status;
+  private final long retryAfterSeconds;
+
+  public OverloadedException(
+    Status theStatus, long theRetryAfterSeconds, String message) {
+    super(message);
+    status = theStatus;
+    retryAfterSeconds = Math.max(1, theRetryAfterSeconds);
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
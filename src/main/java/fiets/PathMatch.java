@@ -1,6 +1,7 @@
 package fiets;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.sql.SQLException;
 import java.util.Collections;
@@ -8,6 +9,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import fiets.http.Status;
 import fiets.model.*;
 import fiets.views.*;
 import fiets.views.Pages.Name;
@@ -16,15 +18,15 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public enum PathMatch {
-  showUnreadPosts("") {
+  showUnreadPosts("", true) {
     @Override public View<String> serve(
       SessionDecorator sd, FeedService fs)
       throws SQLException {
-      List<Post> posts = fs.getUnreadPosts(sd.intParamOr("num", 0));
+      PostPage page = fs.getUnreadPage(after(sd), pageSize(sd));
       Set<Long> bookmarks = fs.getBookmarks();
       int allCount = fs.getUnreadCount();
       return new PostsHtmlView(
-        Name.unread, posts, bookmarks, allCount);
+        Name.unread, page, bookmarks, allCount);
     }
   },
   outdatedCount("outdated-count") {
@@ -37,11 +39,38 @@ public enum PathMatch {
   showReadPosts("show-read") {
     @Override public View<String> serve(
       SessionDecorator sd, FeedService fs) throws SQLException {
-      List<Post> posts = fs.getReadPosts(sd.intParamOr("num", 20));
+      PostPage page = fs.getReadPage(after(sd), pageSize(sd));
       Set<Long> bookmarks = fs.getBookmarks();
       int allCount = fs.getUnreadCount();
       return new PostsHtmlView(
-        Name.read, posts, bookmarks, allCount);
+        Name.read, page, bookmarks, allCount);
+    }
+  },
+  morePosts("more-posts") {
+    @Override public View<String> serve(
+      SessionDecorator sd, FeedService fs) throws SQLException {
+      Name view = Name.valueOf(sd.stringParam("view"));
+      PostPage page;
+      switch (view) {
+        case unread:
+          page = fs.getUnreadPage(after(sd), pageSize(sd));
+          break;
+        case read:
+          page = fs.getReadPage(after(sd), pageSize(sd));
+          break;
+        case bookmarks:
+          page = fs.getBookmarkedPage(after(sd), pageSize(sd));
+          break;
+        default:
+          throw new IllegalArgumentException("No posts view: " + view);
+      }
+      PostsHtmlView posts = new PostsHtmlView(
+        view, page, fs.getBookmarks(), fs.getUnreadCount());
+      JsonObject json = new JsonObject().put("html", posts.getItems());
+      if (posts.getNext() != null) {
+        json.put("next", posts.getNext().toString());
+      }
+      return new JsonView(json);
     }
   },
   markPostRead("markread") {
@@ -53,11 +82,11 @@ public enum PathMatch {
   },
   showBookmarks("bookmarks") {
     @Override public View<String> serve(SessionDecorator sd, FeedService fs) {
-      List<Post> posts = Collections.emptyList();
+      PostPage page = new PostPage(Collections.emptyList(), null);
       Set<Long> bookmarkedIds = Collections.emptySet();
       try {
-        posts = fs.getBookmarkedPosts();
-        bookmarkedIds = Server.getIds(posts);
+        page = fs.getBookmarkedPage(after(sd), pageSize(sd));
+        bookmarkedIds = fs.getBookmarks();
       } catch (SQLException e) {
         log.warn("Could not load bookmarked posts.", e);
       }
@@ -67,7 +96,7 @@ public enum PathMatch {
       } catch (SQLException e) {
         log.warn("Could not load unread count for bookmarks page.", e);
       }
-      return new PostsHtmlView(Name.bookmarks, posts, bookmarkedIds, unreadCount);
+      return new PostsHtmlView(Name.bookmarks, page, bookmarkedIds, unreadCount);
     }
   },
   addBookmark("add-bookmark") {
@@ -84,7 +113,7 @@ public enum PathMatch {
       return new RedirectView(PathMatch.showUnreadPosts);
     }
   },
-  showFeeds("feeds") {
+  showFeeds("feeds", true) {
     @Override public View<String> serve(SessionDecorator sd, FeedService fs) 
         throws SQLException {
       List<FeedInfo> feeds = fs.getAllFeedInfos();
@@ -92,7 +121,7 @@ public enum PathMatch {
         sd.getHostname(), feeds, fs.getUnreadCount(), fs.getBookmarksCount());
     }
   },
-  showFilters("filters") {
+  showFilters("filters", true) {
     @Override public View<String> serve(SessionDecorator sd, FeedService fs)
         throws SQLException {
       List<Filter> filters = fs.getAllFilters();
@@ -106,24 +135,22 @@ public enum PathMatch {
         throws Exception {
       List<String> urls = sd.stringParams("url");
       String callback = sd.stringParam("callback");
-      List<Feed> added = fs.addFeeds(urls);
-      fs.updateFeedPosts(added);
+      Job job = fs.addFeedsInBackground(urls);
       if (callback == null) {
-        return new RedirectView(PathMatch.showFeeds);
+        return jobView(job);
       } else {
         return new JavaScriptView(
-          String.format("%s(%s)", callback, Server.jsonOk()));
+          String.format("%s(%s)", callback, jobJson(job)));
       }
     }
   },
   updateFeed("update-feed") {
-    @Override public View<PathMatch> serve(
+    @Override public View<String> serve(
       SessionDecorator sd, FeedService fs) 
       throws SQLException {
       Feed feed = fs.getFeed(sd.longParam("id"));
-      fs.updateFeedPosts(
-        Collections.singletonList(feed));
-      return new RedirectView(PathMatch.showFeeds);
+      return jobView(
+        fs.updateInBackground(Collections.singletonList(feed)));
     }
   },
   deleteFeed("delete-feed") {
@@ -135,9 +162,21 @@ public enum PathMatch {
     }
   },
   updatePosts("update") {
-    @Override public View<PathMatch> serve(SessionDecorator sd, FeedService fs) {
-      fs.updateAllPosts();
-      return new RedirectView(PathMatch.showUnreadPosts);
+    @Override public View<String> serve(SessionDecorator sd, FeedService fs)
+      throws SQLException {
+      return jobView(fs.updateAllPosts());
+    }
+  },
+  jobs("jobs") {
+    @Override public View<String> serve(SessionDecorator sd, FeedService fs)
+      throws FileNotFoundException {
+      String path = sd.getPath();
+      long id = Long.parseLong(path.substring(path.indexOf('/') + 1));
+      Job job = fs.getJob(id);
+      if (job == null) {
+        throw new FileNotFoundException("No job " + id);
+      }
+      return new JsonView(job.toJson());
     }
   },
   feverApi("fever") {
@@ -147,7 +186,7 @@ public enum PathMatch {
       return new FeverApi().serve(sd, fs);
     }
   },
-  counts("counts") {
+  counts("counts", true) {
     @Override public View<String> serve(
       SessionDecorator sd, FeedService fs)
       throws SQLException {
@@ -158,10 +197,22 @@ public enum PathMatch {
       );
     }
   },
+  events("events") {
+    @Override public View<InputStream> serve(
+      SessionDecorator sd, FeedService fs) {
+      return new EventStreamView(fs.subscribeCounts());
+    }
+  },
+  metrics("metrics") {
+    @Override public View<String> serve(
+      SessionDecorator sd, FeedService fs) {
+      return new MetricsView();
+    }
+  },
   staticFile("static") {
     @Override public View<InputStream> serve(
       SessionDecorator sd, FeedService fs) 
-      throws FileNotFoundException {
+      throws IOException {
       return new FileView(sd);
     }
   },
@@ -173,8 +224,9 @@ public enum PathMatch {
       FilterMatch urlMatch = FilterMatch.valueOf(post.get("urlMatch").get(0));
       String title = post.get("title").get(0);
       FilterMatch titleMatch = FilterMatch.valueOf(post.get("titleMatch").get(0));
-      fs.addFilter(url, urlMatch, title, titleMatch);
-      return new JsonView(Server.jsonOk());
+      int marked = fs.addFilter(
+        url, urlMatch, title, titleMatch, post.containsKey("apply"));
+      return new JsonView(Server.jsonOk().put("marked", marked));
     }
   },
   editFilter("edit-filter") {
@@ -186,8 +238,9 @@ public enum PathMatch {
       FilterMatch urlMatch = FilterMatch.valueOf(post.get("urlMatch").get(0));
       String title = post.get("title").get(0);
       FilterMatch titleMatch = FilterMatch.valueOf(post.get("titleMatch").get(0));
-      fs.updateFilter(id, url, urlMatch, title, titleMatch);
-      return new JsonView(Server.jsonOk());
+      int marked = fs.updateFilter(
+        id, url, urlMatch, title, titleMatch, post.containsKey("apply"));
+      return new JsonView(Server.jsonOk().put("marked", marked));
     }
   },
   deleteFilter("delete-filter") {
@@ -202,9 +255,46 @@ public enum PathMatch {
   private static final Logger log = LogManager.getLogger();
 
   private String base;
+  private boolean cacheable;
 
   PathMatch(String theBase) {
+    this(theBase, false);
+  }
+
+  /**
+   * @param theCacheable <code>true</code> if the view only depends on the
+   * request and the data, so it can be served again while they are the same
+   */
+  PathMatch(String theBase, boolean theCacheable) {
     base = theBase;
+    cacheable = theCacheable;
+  }
+
+  /**
+   * @return the answer to a request that started a job, to follow it at
+   * the URL given
+   */
+  private static View<String> jobView(Job job) {
+    return new JsonView(jobJson(job), Status.ACCEPTED);
+  }
+
+  private static JsonObject jobJson(Job job) {
+    return Server.jsonOk()
+      .put("job", job.getId())
+      .put("url", '/' + jobs.getUrl() + job.getId());
+  }
+
+  private static PostCursor after(SessionDecorator sd) {
+    return PostCursor.parse(sd.stringParam("after"));
+  }
+
+  private static int pageSize(SessionDecorator sd) {
+    int num = sd.intParamOr("num", PostsHtmlView.DEFAULT_PAGE_SIZE);
+    return num > 0 ? num : PostsHtmlView.DEFAULT_PAGE_SIZE;
+  }
+
+  public boolean isCacheable() {
+    return cacheable;
   }
 
   public String getUrl() {
@@ -0,0 +1,185 @@
+package fiets;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Many patterns in a trie, each standing for a number (the filter it belongs
+ * to), to find all patterns a text starts with, ends with or contains in a
+ * single pass over the text. Finding contained patterns follows the links
+ * of an Aho-Corasick automaton.
+ */
+final class PatternTrie {
+
+  private static final int ROOT = 0;
+  private static final int[] NONE = {};
+
+  private final boolean reversed;
+  /** The characters leading from each node, sorted, and their targets. */
+  private final char[][] labels;
+  private final int[][] targets;
+  /** Where to go on from each node if no label fits. */
+  private final int[] fail;
+  /** The numbers of the patterns ending at each node. */
+  private final int[][] ends;
+  /** Like {@link #ends}, including the patterns ending at fail nodes. */
+  private final int[][] found;
+
+  /**
+   * @param patterns by their numbers, <code>null</code> for none
+   * @param reversed <code>true</code> to match the ends of texts
+   * @return the trie, <code>null</code> if there are no patterns
+   */
+  static PatternTrie of(String[] patterns, boolean reversed) {
+    for (String pattern : patterns) {
+      if (pattern != null) {
+        return new PatternTrie(patterns, reversed);
+      }
+    }
+    return null;
+  }
+
+  private PatternTrie(String[] patterns, boolean reversed) {
+    this.reversed = reversed;
+    List<Map<Character, Integer>> edges = new ArrayList<>();
+    List<int[]> ending = new ArrayList<>();
+    edges.add(new TreeMap<>());
+    ending.add(NONE);
+    for (int p = 0; p < patterns.length; p++) {
+      String pattern = patterns[p];
+      if (pattern == null) {
+        continue;
+      }
+      int node = ROOT;
+      for (int i = 0; i < pattern.length(); i++) {
+        char c = pattern.charAt(reversed ? pattern.length() - 1 - i : i);
+        Integer next = edges.get(node).get(c);
+        if (next == null) {
+          next = edges.size();
+          edges.get(node).put(c, next);
+          edges.add(new TreeMap<>());
+          ending.add(NONE);
+        }
+        node = next;
+      }
+      ending.set(node, append(ending.get(node), p));
+    }
+    int size = edges.size();
+    labels = new char[size][];
+    targets = new int[size][];
+    for (int node = 0; node < size; node++) {
+      Map<Character, Integer> out = edges.get(node);
+      labels[node] = new char[out.size()];
+      targets[node] = new int[out.size()];
+      int i = 0;
+      for (Map.Entry<Character, Integer> e : out.entrySet()) {
+        labels[node][i] = e.getKey();
+        targets[node][i++] = e.getValue();
+      }
+    }
+    ends = ending.toArray(new int[size][]);
+    fail = new int[size];
+    found = new int[size][];
+    link();
+  }
+
+  /**
+   * Link each node to the node of its longest proper suffix, breadth first.
+   * The patterns ending at the root are left out of {@link #found}, they
+   * are in every text.
+   */
+  private void link() {
+    found[ROOT] = NONE;
+    Deque<Integer> queue = new ArrayDeque<>();
+    for (int child : targets[ROOT]) {
+      fail[child] = ROOT;
+      found[child] = ends[child];
+      queue.add(child);
+    }
+    while (!queue.isEmpty()) {
+      int node = queue.poll();
+      for (int i = 0; i < labels[node].length; i++) {
+        char c = labels[node][i];
+        int child = targets[node][i];
+        int f = fail[node];
+        while (f != ROOT && next(f, c) < 0) {
+          f = fail[f];
+        }
+        int to = next(f, c);
+        fail[child] = to < 0 ? ROOT : to;
+        found[child] = concat(ends[child], found[fail[child]]);
+        queue.add(child);
+      }
+    }
+  }
+
+  /**
+   * Set the numbers of all patterns the text starts with (or ends with, if
+   * reversed).
+   */
+  void matchStart(String text, BitSet hits) {
+    set(ends[ROOT], hits);
+    int node = ROOT;
+    int length = text.length();
+    for (int i = 0; i < length; i++) {
+      node = next(node, text.charAt(reversed ? length - 1 - i : i));
+      if (node < 0) {
+        return;
+      }
+      set(ends[node], hits);
+    }
+  }
+
+  /**
+   * Set the numbers of all patterns the text contains.
+   */
+  void matchAnywhere(String text, BitSet hits) {
+    set(ends[ROOT], hits);
+    int node = ROOT;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      int to = next(node, c);
+      while (to < 0 && node != ROOT) {
+        node = fail[node];
+        to = next(node, c);
+      }
+      node = to < 0 ? ROOT : to;
+      set(found[node], hits);
+    }
+  }
+
+  private int next(int node, char c) {
+    int i = Arrays.binarySearch(labels[node], c);
+    return i < 0 ? -1 : targets[node][i];
+  }
+
+  private static void set(int[] numbers, BitSet hits) {
+    for (int n : numbers) {
+      hits.set(n);
+    }
+  }
+
+  private static int[] append(int[] numbers, int n) {
+    int[] more = Arrays.copyOf(numbers, numbers.length + 1);
+    more[numbers.length] = n;
+    return more;
+  }
+
+  private static int[] concat(int[] a, int[] b) {
+    if (b.length == 0) {
+      return a;
+    }
+    if (a.length == 0) {
+      return b;
+    }
+    int[] both = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, both, a.length, b.length);
+    return both;
+  }
+}
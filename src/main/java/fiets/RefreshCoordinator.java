@@ -0,0 +1,227 @@
+package fiets;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import fiets.http.Status;
+import fiets.model.Feed;
+
+/**
+ * Coordinates the refreshes of feeds, which fetch, parse and save and are by
+ * far the most expensive work. A feed is refreshed once at a time: asking
+ * for a feed that is being refreshed waits for that refresh rather than
+ * starting another, so overlapping updates and the scheduled cycle coalesce.
+ * Requested heavy work is admitted to <code>fiets.heavy.maxConcurrent</code>
+ * (default 2) slots and turned away with 503 beyond. Updating all feeds
+ * again within <code>fiets.refresh.minIntervalSeconds</code> (default 60)
+ * is turned away with 429. Reading is never held up by either.
+ */
+public class RefreshCoordinator {
+
+  private static final Logger log = LogManager.getLogger();
+
+  public interface Refresher {
+    void refresh(List<Feed> feeds, boolean urgent, RefreshProgress progress)
+      throws SQLException;
+  }
+
+  /**
+   * Room for heavy work, given back when closed.
+   */
+  public final class Slot implements AutoCloseable {
+    private final boolean held;
+    private final boolean all;
+    private final long start = System.currentTimeMillis();
+    private boolean closed;
+
+    private Slot(boolean theHeld, boolean theAll) {
+      held = theHeld;
+      all = theAll;
+    }
+
+    @Override public synchronized void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      long end = System.currentTimeMillis();
+      if (all) {
+        lastAllMillis = end;
+      }
+      if (held) {
+        heavy.release();
+        averageHeavyMillis = (averageHeavyMillis * 3 + end - start) / 4;
+      }
+    }
+  }
+
+  private final Refresher refresher;
+  private final int maxHeavy;
+  private final Semaphore heavy;
+  private final long minIntervalMillis;
+  private final Map<Long, CompletableFuture<Void>> inFlight =
+    new ConcurrentHashMap<>();
+  private volatile long averageHeavyMillis;
+  private volatile long lastAllMillis;
+
+  public RefreshCoordinator(Refresher theRefresher) {
+    this(theRefresher, Integer.getInteger("fiets.heavy.maxConcurrent", 2),
+      TimeUnit.SECONDS.toMillis(
+        Long.getLong("fiets.refresh.minIntervalSeconds", 60)));
+  }
+
+  public RefreshCoordinator(
+    Refresher theRefresher, int theMaxHeavy, long theMinIntervalMillis) {
+    if (theMaxHeavy <= 0) {
+      throw new IllegalArgumentException(
+        "Invalid maximum of heavy requests: " + theMaxHeavy);
+    }
+    refresher = theRefresher;
+    maxHeavy = theMaxHeavy;
+    heavy = new Semaphore(theMaxHeavy);
+    minIntervalMillis = theMinIntervalMillis;
+  }
+
+  /**
+   * Refresh the feeds in the background, never turned away. Returns when
+   * all of them are refreshed, including those refreshed by others.
+   */
+  public void refresh(List<Feed> feeds) throws SQLException {
+    refresh(feeds, false, RefreshProgress.NONE);
+  }
+
+  /**
+   * @param urgent <code>true</code> if a user waits for it, to fetch before
+   * refreshes nobody waits for
+   */
+  public void refresh(
+    List<Feed> feeds, boolean urgent, RefreshProgress progress)
+    throws SQLException {
+    List<Feed> joinedFeeds = new ArrayList<>();
+    List<CompletableFuture<Void>> joined = new ArrayList<>();
+    List<Feed> own = claim(feeds, joinedFeeds, joined);
+    for (Feed feed : joinedFeeds) {
+      progress.joined(feed);
+    }
+    try {
+      if (!own.isEmpty()) {
+        refresher.refresh(own, urgent, progress);
+      }
+    } finally {
+      release(own);
+    }
+    if (!joined.isEmpty()) {
+      log.debug("Waiting for {} feeds refreshed already.", joined.size());
+      for (int i = 0; i < joined.size(); i++) {
+        joined.get(i).join();
+        progress.refreshed(joinedFeeds.get(i), null);
+      }
+    }
+  }
+
+  /**
+   * Make room for heavy work.
+   * @throws OverloadedException if too much heavy work is going on
+   */
+  public Slot admit() {
+    return admit(false);
+  }
+
+  /**
+   * Make room for refreshing the feeds, which is not needed if all of them
+   * are being refreshed already.
+   * @throws OverloadedException if too much heavy work is going on
+   */
+  public Slot admit(List<Feed> feeds) {
+    return isInFlight(feeds) ? new Slot(false, false) : admit(false);
+  }
+
+  /**
+   * Make room for refreshing all feeds.
+   * @throws OverloadedException if they were refreshed on request just now
+   * or too much heavy work is going on
+   */
+  public Slot admitAll(List<Feed> all) {
+    if (isInFlight(all)) {
+      return new Slot(false, true);
+    }
+    long wait = lastAllMillis + minIntervalMillis - System.currentTimeMillis();
+    if (wait > 0) {
+      throw new OverloadedException(Status.TOO_MANY_REQUESTS,
+        TimeUnit.MILLISECONDS.toSeconds(wait + 999),
+        "All feeds were updated just now.");
+    }
+    return admit(true);
+  }
+
+  private Slot admit(boolean all) {
+    if (!heavy.tryAcquire()) {
+      throw new OverloadedException(Status.SERVICE_UNAVAILABLE,
+        TimeUnit.MILLISECONDS.toSeconds(averageHeavyMillis + 999),
+        "Too busy, please try again later.");
+    }
+    return new Slot(true, all);
+  }
+
+  /**
+   * @return the number of slots taken by heavy work
+   */
+  public int getHeavyCount() {
+    return maxHeavy - heavy.availablePermits();
+  }
+
+  /**
+   * @return the number of feeds being refreshed
+   */
+  public int getRefreshingCount() {
+    return inFlight.size();
+  }
+
+  private boolean isInFlight(List<Feed> feeds) {
+    for (Feed feed : feeds) {
+      if (!inFlight.containsKey(feed.getId())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the feeds to refresh, the others are added to
+   * <code>joinedFeeds</code> and their refreshes in progress to
+   * <code>joined</code>
+   */
+  private List<Feed> claim(List<Feed> feeds, List<Feed> joinedFeeds,
+    List<CompletableFuture<Void>> joined) {
+    List<Feed> own = new ArrayList<>();
+    for (Feed feed : feeds) {
+      CompletableFuture<Void> refreshing =
+        inFlight.putIfAbsent(feed.getId(), new CompletableFuture<>());
+      if (refreshing == null) {
+        own.add(feed);
+      } else {
+        joinedFeeds.add(feed);
+        joined.add(refreshing);
+      }
+    }
+    return own;
+  }
+
+  private void release(List<Feed> own) {
+    for (Feed feed : own) {
+      CompletableFuture<Void> refreshing = inFlight.remove(feed.getId());
+      if (refreshing != null) {
+        refreshing.complete(null);
+      }
+    }
+  }
+}
@@ -0,0 +1,305 @@
+package fiets;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import fiets.model.Feed;
+
+/**
+ * Refreshes a list of feeds concurrently on virtual threads.
+ * Fetching (and parsing) is bounded by a global limit and by a limit per
+ * host, so a single slow host cannot occupy all slots. Urgent refreshes, the
+ * ones a user waits for, get free global slots before the others. Storing
+ * the results is serialized, the database only ever sees one writer.
+ */
+public class RefreshEngine {
+
+  private static final Logger log = LogManager.getLogger();
+
+  /**
+   * Fetches (and parses) a single feed. Runs concurrently.
+   */
+  public interface Fetcher<T> {
+    T fetch(Feed feed) throws Exception;
+  }
+
+  /**
+   * Stores the result of a fetch. Calls are never concurrent.
+   */
+  public interface Sink<T> {
+    void store(Feed feed, T result) throws Exception;
+
+    default void failed(Feed feed, Exception e) throws Exception {
+      log.error("Could not refresh {}.", feed.getLocation(), e);
+    }
+  }
+
+  // immutable
+  public static class Report {
+    private final int feeds;
+    private final int failed;
+    private final long wallMillis;
+    public Report(int theFeeds, int theFailed, long theWallMillis) {
+      feeds = theFeeds;
+      failed = theFailed;
+      wallMillis = theWallMillis;
+    }
+    public int getFeeds() {
+      return feeds;
+    }
+    public int getFailed() {
+      return failed;
+    }
+    public long getWallMillis() {
+      return wallMillis;
+    }
+    @Override public String toString() {
+      return String.format("%d feeds in %d ms (%d failed)",
+        feeds, wallMillis, failed);
+    }
+  }
+
+  private final int maxPerHost;
+  private final Slots global;
+  /** The hosts being fetched from, dropped once no fetch uses them. */
+  private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+  private final Lock storeLock = new ReentrantLock();
+
+  /**
+   * Constructor. Limits are taken from the system properties
+   * <code>fiets.refresh.maxConcurrent</code> (default 16) and
+   * <code>fiets.refresh.maxPerHost</code> (default 2).
+   */
+  public RefreshEngine() {
+    this(Integer.getInteger("fiets.refresh.maxConcurrent", 16),
+      Integer.getInteger("fiets.refresh.maxPerHost", 2));
+  }
+
+  public RefreshEngine(int theMaxConcurrent, int theMaxPerHost) {
+    if (theMaxConcurrent < 1 || theMaxPerHost < 1) {
+      throw new IllegalArgumentException(String.format(
+        "Limits must be positive: %d/%d", theMaxConcurrent, theMaxPerHost));
+    }
+    global = new Slots(theMaxConcurrent);
+    maxPerHost = theMaxPerHost;
+  }
+
+  /**
+   * @return the number of fetches waiting for a global slot
+   */
+  public int getWaitingCount() {
+    return global.getWaitingCount();
+  }
+
+  /**
+   * Refresh all given feeds and wait until every one of them is done.
+   */
+  public <T> Report refresh(
+    List<Feed> feeds, Fetcher<T> fetcher, Sink<T> sink) {
+    return refresh(feeds, false, fetcher, sink);
+  }
+
+  /**
+   * @param urgent <code>true</code> to fetch before refreshes that are not
+   */
+  public <T> Report refresh(
+    List<Feed> feeds, boolean urgent, Fetcher<T> fetcher, Sink<T> sink) {
+    long start = System.nanoTime();
+    AtomicInteger failed = new AtomicInteger();
+    try (ExecutorService exec = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (Feed feed : feeds) {
+        exec.submit(() -> {
+          if (!refresh(feed, urgent, fetcher, sink)) {
+            failed.incrementAndGet();
+          }
+        });
+      }
+    }
+    long wallMillis = (System.nanoTime() - start) / 1_000_000L;
+    return new Report(feeds.size(), failed.get(), wallMillis);
+  }
+
+  private <T> boolean refresh(
+    Feed feed, boolean urgent, Fetcher<T> fetcher, Sink<T> sink) {
+    T result;
+    try {
+      result = fetchLimited(feed, urgent, fetcher);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      fail(feed, sink, e);
+      return false;
+    } catch (Exception e) {
+      fail(feed, sink, e);
+      return false;
+    }
+    storeLock.lock();
+    try {
+      sink.store(feed, result);
+      return true;
+    } catch (Exception e) {
+      fail(feed, sink, e);
+      return false;
+    } finally {
+      storeLock.unlock();
+    }
+  }
+
+  private <T> T fetchLimited(Feed feed, boolean urgent, Fetcher<T> fetcher)
+    throws Exception {
+    String name = hostOf(feed);
+    Host host = hosts.compute(name, (h, known) -> {
+      Host used = known == null ? new Host(maxPerHost) : known;
+      used.users++;
+      return used;
+    });
+    try {
+      // Waiting for a busy host must not block one of the global slots.
+      host.permits.acquire();
+      try {
+        global.acquire(urgent);
+        try {
+          return fetcher.fetch(feed);
+        } finally {
+          global.release();
+        }
+      } finally {
+        host.permits.release();
+      }
+    } finally {
+      hosts.computeIfPresent(name,
+        (h, used) -> --used.users == 0 ? null : used);
+    }
+  }
+
+  /**
+   * @return the number of hosts being fetched from or waited for
+   */
+  int getHostCount() {
+    return hosts.size();
+  }
+
+  private <T> void fail(Feed feed, Sink<T> sink, Exception e) {
+    storeLock.lock();
+    try {
+      sink.failed(feed, e);
+    } catch (Exception e2) {
+      log.error("Could not record failure for {}.", feed.getLocation(), e2);
+    } finally {
+      storeLock.unlock();
+    }
+  }
+
+  /**
+   * The fetch slots of a host and the number of fetches using them, which
+   * is only changed while computing the host's entry in {@link #hosts}.
+   */
+  private static class Host {
+    private final Semaphore permits;
+    private int users;
+
+    private Host(int thePermits) {
+      permits = new Semaphore(thePermits, true);
+    }
+  }
+
+  /**
+   * Counts free slots like a semaphore, but hands them to urgent waiters
+   * first and to the others only while no urgent one waits.
+   */
+  private static class Slots {
+    private final Lock lock = new ReentrantLock(true);
+    private final Condition urgentTurn = lock.newCondition();
+    private final Condition otherTurn = lock.newCondition();
+    private int free;
+    private int urgentWaiting;
+    private int otherWaiting;
+
+    private Slots(int theFree) {
+      free = theFree;
+    }
+
+    private void acquire(boolean urgent) throws InterruptedException {
+      lock.lock();
+      try {
+        if (urgent) {
+          urgentWaiting++;
+        } else {
+          otherWaiting++;
+        }
+        try {
+          while (free == 0 || !urgent && urgentWaiting > 0) {
+            (urgent ? urgentTurn : otherTurn).await();
+          }
+          free--;
+        } finally {
+          if (urgent) {
+            urgentWaiting--;
+          } else {
+            otherWaiting--;
+          }
+          handOn();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void release() {
+      lock.lock();
+      try {
+        free++;
+        handOn();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private int getWaitingCount() {
+      lock.lock();
+      try {
+        return urgentWaiting + otherWaiting;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Wake the next waiter in line for a free slot, if any.
+     */
+    private void handOn() {
+      if (free > 0) {
+        if (urgentWaiting > 0) {
+          urgentTurn.signal();
+        } else {
+          otherTurn.signal();
+        }
+      }
+    }
+  }
+
+  static String hostOf(Feed feed) {
+    String location = feed.getLocation();
+    try {
+      String host = URI.create(location.trim()).getHost();
+      if (host != null) {
+        return host.toLowerCase(Locale.ROOT);
+      }
+    } catch (RuntimeException e) {
+      log.debug("Could not determine host of {}.", location, e);
+    }
+    return String.valueOf(location);
+  }
+}
@@ -0,0 +1,27 @@
+package fiets;
+
+import fiets.model.Feed;
+
+/**
+ * Follows a refresh feed by feed. Calls come from several threads.
+ */
+public interface RefreshProgress {
+
+  RefreshProgress NONE = new RefreshProgress() {};
+
+  /**
+   * The feed is fetched now.
+   */
+  default void fetching(Feed feed) {}
+
+  /**
+   * The feed is refreshed by another refresh already, which is waited for.
+   */
+  default void joined(Feed feed) {}
+
+  /**
+   * @param error why the feed could not be refreshed, <code>null</code> if
+   * it was
+   */
+  default void refreshed(Feed feed, Exception error) {}
+}
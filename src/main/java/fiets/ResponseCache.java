@@ -0,0 +1,153 @@
+package fiets;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Rendered pages by request, along with the data version they were rendered
+ * at. An entry is only served while the version is unchanged; the least
+ * recently used entries are dropped beyond the maximum number of entries,
+ * set by the system property <code>fiets.cache.entries</code> (default 64).
+ */
+public class ResponseCache {
+
+  private final int maxEntries;
+  private final Map<String, Entry> entries;
+
+  public ResponseCache() {
+    this(Integer.getInteger("fiets.cache.entries", 64));
+  }
+
+  public ResponseCache(int theMaxEntries) {
+    maxEntries = theMaxEntries;
+    entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override protected boolean removeEldestEntry(
+        Map.Entry<String, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * @return the entry for the key if it was rendered at the version,
+   * otherwise <code>null</code>
+   */
+  public synchronized Entry get(String key, long version) {
+    Entry entry = entries.get(key);
+    return entry != null && entry.version == version ? entry : null;
+  }
+
+  /**
+   * Store a rendering unless one of a later version is cached already.
+   * @return the new entry
+   */
+  public synchronized Entry put(
+    String key, long version, String mimeType, byte[] body) {
+    Entry entry = new Entry(version, mimeType, body);
+    Entry cached = entries.get(key);
+    if (cached == null || cached.version <= version) {
+      entries.put(key, entry);
+    }
+    return entry;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public static class Entry {
+    private final long version;
+    private final String mimeType;
+    private final byte[] body;
+    private final String etag;
+    private byte[] gzipped;
+
+    private Entry(long theVersion, String theMimeType, byte[] theBody) {
+      version = theVersion;
+      mimeType = theMimeType;
+      body = theBody;
+      etag = etag(body);
+    }
+
+    public String getMimeType() {
+      return mimeType;
+    }
+
+    public byte[] getBody() {
+      return body;
+    }
+
+    /**
+     * @return the body compressed with gzip, compressed on first use
+     */
+    public synchronized byte[] getGzipped() {
+      if (gzipped == null) {
+        gzipped = Gzip.compress(body);
+      }
+      return gzipped;
+    }
+
+    public String getEtag() {
+      return getEtag(false);
+    }
+
+    /**
+     * @return the tag of the body or of its compressed variant, which is a
+     * different representation and so has a different tag
+     */
+    public String getEtag(boolean gzip) {
+      return gzip ? gzipEtag(etag) : etag;
+    }
+
+    public boolean isMatchedBy(String ifNoneMatch) {
+      return isMatchedBy(ifNoneMatch, false);
+    }
+
+    /**
+     * @param ifNoneMatch value of the <code>If-None-Match</code> header
+     * @param gzip <code>true</code> if the compressed variant is served
+     * @return <code>true</code> if the client has this rendering already
+     */
+    public boolean isMatchedBy(String ifNoneMatch, boolean gzip) {
+      return matches(ifNoneMatch, getEtag(gzip));
+    }
+  }
+
+  /**
+   * @return an entity tag derived from the content, so it stays valid
+   * across restarts; it starts with 8 hex digits of its checksum
+   */
+  public static String etag(byte[] body) {
+    CRC32 crc = new CRC32();
+    crc.update(body);
+    return String.format("\"%08x-%x\"", crc.getValue(), body.length);
+  }
+
+  /**
+   * @return the tag of the compressed variant of a body with the tag
+   */
+  public static String gzipEtag(String etag) {
+    return etag.substring(0, etag.length() - 1) + "-gzip\"";
+  }
+
+  /**
+   * @param ifNoneMatch value of the <code>If-None-Match</code> header
+   * @return <code>true</code> if the client has the variant with the tag
+   */
+  public static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals(etag) || tag.equals("*")) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
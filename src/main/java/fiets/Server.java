@@ -1,29 +1,64 @@
 package fiets;
 
-import fi.iki.elonen.NanoHTTPD;
-import fi.iki.elonen.NanoHTTPD.Response.Status;
 import fiets.db.Database;
+import fiets.http.Handler;
+import fiets.http.Request;
+import fiets.http.Response;
+import fiets.http.Status;
+import fiets.http.Transport;
+import fiets.metrics.Counter;
+import fiets.metrics.Histogram;
+import fiets.metrics.Metrics;
 import fiets.model.Post;
+import fiets.views.EventStreamView;
+import fiets.views.FileView;
+import fiets.views.Pages;
+import fiets.views.StaticAssets;
 import fiets.views.View;
 import jodd.json.JsonObject;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.zip.GZIPOutputStream;
 
-public class Server extends NanoHTTPD {
+public class Server implements Handler {
 
   private static final Logger log = LogManager.getLogger();
+  private static final String MIME_HTML = "text/html";
+  private static final int GZIP_BUFFER = 16 * 1024;
+  private static final String LATENCY_HELP = "Time to answer requests by "
+    + "route, up to the start of streamed bodies.";
+  private static final Map<PathMatch, Histogram> ROUTE_LATENCY =
+    new EnumMap<>(PathMatch.class);
+  private static final Histogram UNMATCHED_LATENCY = Metrics.histogram(
+    "fiets_http_request_seconds", LATENCY_HELP, "route", "none");
+  private static final Map<Status, Counter> RESPONSES =
+    new EnumMap<>(Status.class);
+  static {
+    for (PathMatch pm : PathMatch.values()) {
+      ROUTE_LATENCY.put(pm, Metrics.histogram(
+        "fiets_http_request_seconds", LATENCY_HELP, "route", pm.name()));
+    }
+    for (Status status : Status.values()) {
+      RESPONSES.put(status, Metrics.counter("fiets_http_responses_total",
+        "Responses by status.", "status", Integer.toString(status.getCode())));
+    }
+  }
+  private final int port;
+  private final Transport transport = Transport.configured();
   private final Timer timer = new Timer("fiets-timer", true);
+  private final ResponseCache cache = new ResponseCache();
   private FeedService fs;
 
-  public Server(int port) {
-    super(port);
-    System.out.println("Fiets server listening at port " + port);
+  public Server(int thePort) {
+    port = thePort;
   }
 
   public static void main(String[] args) throws Exception {
@@ -51,18 +86,19 @@ public class Server extends NanoHTTPD {
   }
 
   private void init() throws IOException, SQLException {
-    start();
+    StaticAssets.preload(Pages.staticAssets());
+    transport.start(port, this);
+    System.out.println(
+      "Fiets server listening at port " + port + " on " + transport);
+    Metrics.gauge("fiets_response_cache_entries",
+      "Rendered pages in the cache.", cache::size);
     try (Database db = new Database()) {
       fs = new FeedService(db);
-      scheduleNowAndEvery(() -> {
-        log.info("Triggering regular post update.");
-        fs.updateAllPosts();
-      }, minutesMillis(20));
-      scheduleNowAndEvery(() -> {
-        log.info("Deleting {} outdated posts.", fs.getOutdatedCount());
-        fs.dropOutdated();
-        log.info("Done deleting outdated posts.");
-      }, dayMillis());
+      new FeedScheduler(fs).start();
+      Thread.ofVirtual().name("fiets-backfill").start(fs::backfillDisplayText);
+      // Deletes in chunks and reports its progress itself.
+      scheduleNowAndEvery(fs::dropOutdated, dayMillis());
+      scheduleNowAndEvery(fs::reconcileCounts, minutesMillis(60));
       waitForever();
     }
   }
@@ -85,35 +121,169 @@ public class Server extends NanoHTTPD {
     } while (true);
   }
 
-  @Override public Response serve(IHTTPSession session) {
+  @Override public Response handle(Request request) {
+    long start = System.nanoTime();
+    PathMatch pm = null;
+    Response rsp;
     try {
-      SessionDecorator sd = new SessionDecorator(session);
-      PathMatch pm = PathMatch.match(sd);
-      View<?> view = pm.serve(sd, fs);
-      Object content = view.getContent();
-      Response rsp;
-      if (content instanceof String) {
-        rsp = newFixedLengthResponse((String) content);
-        rsp.setMimeType(view.getMimeType());
-      } else if (content instanceof InputStream) {
-        rsp = newChunkedResponse(
-          Status.OK, view.getMimeType(), (InputStream) content);
-      } else if (content instanceof PathMatch) {
-        rsp = redirect(((PathMatch) content).getUrl());
-      } else {
-        throw new IllegalStateException(
-          "Unknown content type: " + content.getClass());
-      }
-      return rsp;
+      SessionDecorator sd = new SessionDecorator(request);
+      pm = PathMatch.match(sd);
+      rsp = serve(sd, pm);
+    } catch (OverloadedException e) {
+      rsp = overloaded(e);
     } catch (FileNotFoundException e) {
-      return error(Status.NOT_FOUND, "File does not exist.", e);
+      rsp = error(Status.NOT_FOUND, "File does not exist.", e);
     } catch (IllegalArgumentException e) {
-      return error(Status.BAD_REQUEST, "Bad request: " + e, e);
+      rsp = error(Status.BAD_REQUEST, "Bad request: " + e, e);
     } catch (Exception e) {
-      return error(Status.INTERNAL_ERROR, "Unexpected issue.", e);
+      rsp = error(Status.INTERNAL_ERROR, "Unexpected issue.", e);
+    }
+    (pm == null ? UNMATCHED_LATENCY : ROUTE_LATENCY.get(pm))
+      .recordSince(start);
+    RESPONSES.get(rsp.getStatus()).inc();
+    return rsp;
+  }
+
+  private Response serve(SessionDecorator sd, PathMatch pm) throws Exception {
+    if (pm.isCacheable()) {
+      return cached(sd, pm);
+    }
+    View<?> view = pm.serve(sd, fs);
+    if (view instanceof FileView) {
+      return asset(sd, (FileView) view);
+    }
+    return respond(view, sd.acceptsGzip());
+  }
+
+  /**
+   * Serve a page from the cache while the data has not changed since it was
+   * rendered, or tell the client that its copy is still current.
+   */
+  private Response cached(SessionDecorator sd, PathMatch pm) throws Exception {
+    // Read before querying: changes during rendering make it stale at once.
+    long version = fs.getDataVersion();
+    String key = sd.getCacheKey();
+    ResponseCache.Entry entry = cache.get(key, version);
+    if (entry == null) {
+      View<?> view = pm.serve(sd, fs);
+      ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+      view.writeTo(out);
+      entry = cache.put(key, version, view.getMimeType(), out.toByteArray());
+    }
+    boolean gzip = sd.acceptsGzip()
+      && Gzip.isWorthIt(entry.getMimeType(), entry.getBody().length);
+    Response rsp;
+    if (entry.isMatchedBy(sd.header("If-None-Match"), gzip)) {
+      rsp = Response.fixed(
+        Status.NOT_MODIFIED, entry.getMimeType(), new byte[0]);
+    } else {
+      rsp = fixed(entry.getMimeType(),
+        gzip ? entry.getGzipped() : entry.getBody(), gzip);
+    }
+    rsp.addHeader("ETag", entry.getEtag(gzip));
+    rsp.addHeader("Cache-Control", "no-cache");
+    return rsp;
+  }
+
+  /**
+   * Serve a static asset from memory. Fingerprinted requests may be cached
+   * for good, others are revalidated.
+   */
+  private static Response asset(SessionDecorator sd, FileView view) {
+    StaticAssets.Asset asset = view.getAsset();
+    boolean gzip = sd.acceptsGzip() && asset.getGzipped() != null;
+    String etag = gzip
+      ? ResponseCache.gzipEtag(asset.getEtag()) : asset.getEtag();
+    Response rsp;
+    if (ResponseCache.matches(sd.header("If-None-Match"), etag)) {
+      rsp = Response.fixed(
+        Status.NOT_MODIFIED, asset.getMimeType(), new byte[0]);
+    } else {
+      rsp = fixed(asset.getMimeType(),
+        gzip ? asset.getGzipped() : asset.getData(), gzip);
+    }
+    rsp.addHeader("ETag", etag);
+    rsp.addHeader("Cache-Control", view.isImmutable()
+      ? "public, max-age=31536000, immutable" : "no-cache");
+    return rsp;
+  }
+
+  public static Response respond(View<?> view) {
+    return respond(view, false);
+  }
+
+  /**
+   * @param gzip <code>true</code> if the client accepts gzip, text is
+   * compressed then unless it is short
+   */
+  public static Response respond(View<?> view, boolean gzip) {
+    String mimeType = view.getMimeType();
+    if (view.isStreaming()) {
+      return streamed(view, gzip && Gzip.isCompressible(mimeType));
+    }
+    Object content = view.getContent();
+    Response rsp;
+    if (content instanceof String) {
+      byte[] body = ((String) content).getBytes(StandardCharsets.UTF_8);
+      boolean compress = gzip && Gzip.isWorthIt(mimeType, body.length);
+      rsp = fixed(view.getStatus(), mimeType,
+        compress ? Gzip.compress(body) : body, compress);
+    } else if (content instanceof InputStream) {
+      rsp = Response.chunked(Status.OK, mimeType, (InputStream) content);
+      if (EventStreamView.MIME_TYPE.equals(mimeType)) {
+        rsp.addHeader("Cache-Control", "no-cache");
+        // Keeps proxies from holding back the events.
+        rsp.addHeader("X-Accel-Buffering", "no");
+      }
+    } else if (content instanceof PathMatch) {
+      rsp = redirect(((PathMatch) content).getUrl());
+    } else {
+      throw new IllegalStateException(
+        "Unknown content type: " + content.getClass());
+    }
+    return rsp;
+  }
+
+  private static Response fixed(String mimeType, byte[] body, boolean gzipped) {
+    return fixed(Status.OK, mimeType, body, gzipped);
+  }
+
+  private static Response fixed(
+    Status status, String mimeType, byte[] body, boolean gzipped) {
+    Response rsp = Response.fixed(status, mimeType, body);
+    encoded(rsp, gzipped);
+    return rsp;
+  }
+
+  private static void encoded(Response rsp, boolean gzipped) {
+    if (gzipped) {
+      rsp.addHeader("Content-Encoding", "gzip");
+    }
+    if (Gzip.isCompressible(rsp.getMimeType())) {
+      rsp.addHeader("Vary", "Accept-Encoding");
     }
   }
 
+  /**
+   * Send the view chunked while it is rendered, so the first part of a page
+   * goes out before the rest is rendered and the page is never held in
+   * memory as a whole. Compression flushes along with the view, so the
+   * header still goes out first.
+   */
+  private static Response streamed(View<?> view, boolean gzip) {
+    Response rsp = Response.streamed(Status.OK, view.getMimeType(), out -> {
+      if (gzip) {
+        GZIPOutputStream body = new GZIPOutputStream(out, GZIP_BUFFER, true);
+        view.writeTo(body);
+        body.finish();
+      } else {
+        view.writeTo(out);
+      }
+    });
+    encoded(rsp, gzip);
+    return rsp;
+  }
+
   public static JsonObject jsonOk() {
     return new JsonObject().put("status", "OK");
   }
@@ -125,12 +295,17 @@ public class Server extends NanoHTTPD {
       msg = String.format("%s (%s)", msg, t.getMessage());
       log.error(msg, t);
     }
-    return newFixedLengthResponse(status, MIME_HTML, msg);
+    return Response.fixed(status, MIME_HTML, msg);
+  }
+
+  private static Response overloaded(OverloadedException e) {
+    log.warn("Turned away request: {}", e.getMessage());
+    return Response.fixed(e.getStatus(), MIME_HTML, e.getMessage())
+      .addHeader("Retry-After", Long.toString(e.getRetryAfterSeconds()));
   }
 
-  @SuppressWarnings("deprecation")
-  private Response redirect(String target) {
-    Response rsp = newFixedLengthResponse(
+  private static Response redirect(String target) {
+    Response rsp = Response.fixed(
       Status.FOUND, "text/plain", "Redirecting to " + target);
     rsp.addHeader("Location", target);
     return rsp;
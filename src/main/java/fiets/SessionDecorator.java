@@ -2,20 +2,19 @@ package fiets;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
-import fi.iki.elonen.NanoHTTPD.IHTTPSession;
-import fi.iki.elonen.NanoHTTPD.ResponseException;
+import fiets.http.Request;
 
 public class SessionDecorator {
 
-  private final IHTTPSession session;
+  private final Request session;
   private final String path;
   private final String mainPath;
 
-  public SessionDecorator(IHTTPSession theSession) {
+  public SessionDecorator(Request theSession) {
     session = theSession;
     path = extractPath(session);
     mainPath = extractMainPath(path);
@@ -30,7 +29,7 @@ public class SessionDecorator {
     return mainPath;
   }
 
-  private static String extractPath(IHTTPSession theSession) {
+  private static String extractPath(Request theSession) {
     String path = theSession.getUri();
     path = path.replace("/..", "");
     if (path.endsWith("/")) {
@@ -104,14 +103,49 @@ public class SessionDecorator {
     return session.getParameters();
   }
 
-  public Map<String, List<String>> postParameters() 
-    throws IOException, ResponseException {
-    session.parseBody(new HashMap<>());
+  public Map<String, List<String>> postParameters() throws IOException {
+    session.parseBody();
     return session.getParameters();
   }
 
+  /**
+   * @return the value of a request header, <code>null</code> if missing
+   */
+  public String header(String name) {
+    return session.getHeader(name);
+  }
+
+  /**
+   * @return <code>true</code> if the client accepts gzip encoded responses
+   */
+  public boolean acceptsGzip() {
+    String accepted = header("Accept-Encoding");
+    if (accepted == null) {
+      return false;
+    }
+    for (String coding : accepted.split(",")) {
+      String[] parts = coding.split(";");
+      String name = parts[0].trim();
+      if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+        return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the path with the parameters in a stable order and the host,
+   * everything a cacheable page depends on besides the data
+   */
+  public String getCacheKey() {
+    StringBuilder key = new StringBuilder(path).append('?');
+    new TreeMap<>(session.getParameters()).forEach(
+      (name, values) -> key.append(name).append('=').append(values).append('&'));
+    return key.append('@').append(getHostname()).toString();
+  }
+
   public String getHostname() {
-    String host = session.getHeaders().get("Host");
+    String host = header("Host");
     if (host == null) {
       return "unknown";
     }
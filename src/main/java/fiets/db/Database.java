@@ -1,6 +1,10 @@
 package fiets.db;
 
 import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -8,33 +12,227 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import fiets.metrics.Histogram;
+import fiets.metrics.Metrics;
 
 /**
- * Simple database wrapper that provides a singleton H2 connection and some
- * (static) convenience methods.
+ * Simple database wrapper that provides H2 connections and some (static)
+ * convenience methods. There is a small pool of read connections and a
+ * single write connection, so page renders do not queue up behind ingest.
+ * Connections are acquired per use and handed back by closing them; the
+ * write connection is held by one thread at a time. The time waiting for a
+ * connection is recorded in {@link Metrics}, and so is the time executing
+ * statements prepared with {@link #prepare(Connection, String, String)},
+ * by the method preparing them.
  */
 public class Database implements AutoCloseable {
 
-  private final Connection conn;
+  private static final Logger log = LogManager.getLogger();
+  private static final String WAIT = "fiets_db_wait_seconds";
+  private static final String WAIT_HELP = "Time waiting for a connection.";
+  private static final Histogram READ_WAIT =
+    Metrics.histogram(WAIT, WAIT_HELP, "connection", "read");
+  private static final Histogram WRITE_WAIT =
+    Metrics.histogram(WAIT, WAIT_HELP, "connection", "write");
+  /** Statement timings by their labels. */
+  private static final Map<String, Histogram> STATEMENTS =
+    new ConcurrentHashMap<>();
+
+  private final Connection writer;
+  private final ReentrantLock writeLock = new ReentrantLock(true);
+  private final AtomicLong version = new AtomicLong();
+  private final List<Connection> readers;
+  private final BlockingQueue<Connection> idleReaders;
 
   /**
-   * Constructor. Initializes the internal connection singleton.
+   * Constructor. Opens the connections, the number of read connections is
+   * taken from the system property <code>fiets.db.readConnections</code>
+   * (default 4).
    */
   public Database() throws SQLException {
+    this(defaultUrl());
+  }
+
+  /**
+   * Constructor for a database at a given JDBC URL, e.g. an in-memory one.
+   */
+  public Database(String url) throws SQLException {
+    this(url, Integer.getInteger("fiets.db.readConnections", 4));
+  }
+
+  public Database(String url, int theReadConnections) throws SQLException {
+    if (theReadConnections < 1) {
+      throw new IllegalArgumentException(
+        "Need at least one read connection: " + theReadConnections);
+    }
+    writer = DriverManager.getConnection(url, "sa", "");
+    readers = new ArrayList<>(theReadConnections);
+    idleReaders = new ArrayBlockingQueue<>(theReadConnections);
+    for (int i = 0; i < theReadConnections; i++) {
+      Connection reader = DriverManager.getConnection(url, "sa", "");
+      readers.add(reader);
+      idleReaders.add(reader);
+    }
+    Metrics.gauge("fiets_db_idle_read_connections",
+      "Read connections not in use.", idleReaders::size);
+    Metrics.gauge("fiets_db_write_waiting", "Threads waiting to write.",
+      writeLock::getQueueLength);
+  }
+
+  private static String defaultUrl() {
     new File("db").mkdir();
-    conn = DriverManager.getConnection("jdbc:h2:./db/fiets", "sa", "");
+    return "jdbc:h2:./db/fiets";
+  }
+
+  /**
+   * @return a pooled connection for queries, waits if all are in use;
+   * closing it returns it to the pool
+   */
+  public Connection readConnection() throws SQLException {
+    Connection reader;
+    long start = System.nanoTime();
+    try {
+      reader = idleReaders.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted waiting for a connection.", e);
+    }
+    READ_WAIT.recordSince(start);
+    return handle(reader, () -> {
+      try {
+        if (!reader.getAutoCommit()) {
+          reader.rollback();
+          reader.setAutoCommit(true);
+        }
+      } catch (SQLException e) {
+        log.error("Could not reset read connection.", e);
+      } finally {
+        idleReaders.add(reader);
+      }
+    });
+  }
+
+  /**
+   * @return the write connection, waits while another thread holds it;
+   * closing it hands it on. A thread holding it may acquire it again, only
+   * the outermost close releases it.
+   */
+  public Connection writeConnection() {
+    long start = System.nanoTime();
+    writeLock.lock();
+    WRITE_WAIT.recordSince(start);
+    return handle(writer, () -> {
+      version.incrementAndGet();
+      writeLock.unlock();
+    });
+  }
+
+  /**
+   * @return a number that grows whenever the write connection is handed
+   * back, i.e. after every change; read it before querying to tell if
+   * what was rendered from the results is still current
+   */
+  public long getVersion() {
+    return version.get();
+  }
+
+  private static Connection handle(Connection target, Runnable release) {
+    AtomicBoolean closed = new AtomicBoolean();
+    InvocationHandler handler = (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "close":
+          if (closed.compareAndSet(false, true)) {
+            release.run();
+          }
+          return null;
+        case "isClosed":
+          return closed.get() || target.isClosed();
+        case "unwrap":
+          return target.unwrap((Class<?>) args[0]);
+        default:
+          if (closed.get()) {
+            throw new SQLException("Connection was handed back.");
+          }
+          return invoke(target, method, args);
+      }
+    };
+    return (Connection) Proxy.newProxyInstance(
+      Database.class.getClassLoader(), new Class<?>[] { Connection.class },
+      handler);
+  }
+
+  /**
+   * Prepare a statement, recording the time of executing it.
+   * @param label the class and method preparing the statement, as in
+   * <code>PostDao.savePost</code>
+   */
+  public static PreparedStatement prepare(Connection conn, String label,
+    String sql) throws SQLException {
+    return timed(conn.prepareStatement(sql), label);
+  }
+
+  /**
+   * Prepare a statement that returns generated keys, see
+   * {@link #prepare(Connection, String, String)}.
+   */
+  public static PreparedStatement prepare(Connection conn, String label,
+    String sql, int autoGeneratedKeys) throws SQLException {
+    return timed(conn.prepareStatement(sql, autoGeneratedKeys), label);
   }
 
   /**
-   * @return connection singleton
+   * @return the statement, recording the time of executing it
    */
-  public Connection getConnection() {
-    return conn;
+  private static PreparedStatement timed(PreparedStatement target,
+    String label) {
+    Histogram time = STATEMENTS.computeIfAbsent(label, l -> Metrics.histogram(
+      "fiets_db_statement_seconds",
+      "Time executing statements, by the method preparing them.",
+      "method", l));
+    InvocationHandler handler = (proxy, method, args) -> {
+      if (!method.getName().startsWith("execute")) {
+        return invoke(target, method, args);
+      }
+      long start = System.nanoTime();
+      try {
+        return invoke(target, method, args);
+      } finally {
+        time.recordSince(start);
+      }
+    };
+    return (PreparedStatement) Proxy.newProxyInstance(
+      Database.class.getClassLoader(),
+      new Class<?>[] { PreparedStatement.class }, handler);
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args)
+    throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
   }
 
   @Override public void close() throws SQLException {
-    conn.close();
+    for (Connection reader : readers) {
+      reader.close();
+    }
+    writer.close();
   }
 
   /**
@@ -67,11 +265,26 @@ public class Database implements AutoCloseable {
     return new Timestamp(date.getTime());
   }
 
+  /**
+   * Create an index named after the table and its columns.
+   * @param columns column names, optionally followed by <code>DESC</code>
+   */
   public void createIndexIfNotExists(
-    String table, String column) throws SQLException {
-    try (PreparedStatement ps = conn.prepareStatement(
+    String table, String... columns) throws SQLException {
+    String name = String.join("_", columns).replace(' ', '_');
+    try (Connection conn = writeConnection();
+      PreparedStatement ps = prepare(conn, "Database.createIndexIfNotExists",
       String.format("CREATE INDEX IF NOT EXISTS %s_%s_idx ON %s(%s);",
-        table, column, table, column))) {
+        table, name, table, String.join(",", columns)))) {
+      ps.executeUpdate();
+    }
+  }
+
+  public void dropIndexIfExists(
+    String table, String column) throws SQLException {
+    try (Connection conn = writeConnection();
+      PreparedStatement ps = prepare(conn, "Database.dropIndexIfExists",
+      String.format("DROP INDEX IF EXISTS %s_%s_idx;", table, column))) {
       ps.executeUpdate();
     }
   }
@@ -6,8 +6,11 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.apache.logging.log4j.LogManager;
@@ -22,23 +25,44 @@ import fiets.model.FeedInfo;
 public class FeedDao {
 
   private static final Logger log = LogManager.getLogger();
+  private static final String FEED_COLUMNS =
+    "feed.id,feed.location,feed.title,feed.lastAccess,feed.lastStatus,"
+    + "feed.etag,feed.lastModified";
+  private static final int IN_CHUNK = 500;
   private Database db;
 
   public FeedDao(Database theDb) throws SQLException {
     db = theDb;
     createTable();
     createIndexes();
+    upgradeTable();
+    FeedStats.createTable(db);
+  }
+
+  private void upgradeTable() throws SQLException {
+    addColumn("etag VARCHAR(1024)");
+    addColumn("lastModified VARCHAR(128)");
+    addColumn("nextUpdate DATETIME");
+  }
+
+  private void addColumn(String definition) throws SQLException {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedDao.addColumn",
+        "ALTER TABLE feed ADD COLUMN IF NOT EXISTS " + definition)) {
+      ps.executeUpdate();
+    }
   }
 
   private int createTable() throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "CREATE TABLE IF NOT EXISTS feed ("
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedDao.createTable",
+        "CREATE TABLE IF NOT EXISTS feed ("
         + "id BIGINT PRIMARY KEY AUTO_INCREMENT,"
         + "lastAccess DATETIME,"
         + "lastStatus VARCHAR(1024),"
         + "location VARCHAR(2048),"
         + "title VARCHAR(1024)"
-      + ");")) {
+        + ");")) {
       return ps.executeUpdate();
     }
   }
@@ -65,10 +89,30 @@ public class FeedDao {
     return feed;
   }
 
+  /**
+   * Record a successful fetch along with the cache validators of the
+   * response, so the next fetch can be conditional.
+   */
+  public void touchFeed(Feed feed, String status,
+    String etag, String lastModified) throws SQLException {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedDao.touchFeed",
+        "UPDATE feed SET lastAccess=?,lastStatus=?,etag=?,lastModified=? "
+        + "WHERE id=?")) {
+      int i = 0;
+      ps.setTimestamp(++i, Database.toTimestamp(new Date()));
+      ps.setString(++i, status);
+      ps.setString(++i, etag);
+      ps.setString(++i, lastModified);
+      ps.setLong(++i, feed.getId());
+      ps.executeUpdate();
+    }
+  }
+
   public void touchFeed(Feed feed, String status) throws SQLException {
-    Connection conn = db.getConnection();
-    try (PreparedStatement ps = conn.prepareStatement(
-      "UPDATE feed SET lastAccess=?,lastStatus=? WHERE id=?")) {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedDao.touchFeed",
+        "UPDATE feed SET lastAccess=?,lastStatus=? WHERE id=?")) {
       int i = 0;
       ps.setTimestamp(++i, Database.toTimestamp(new Date()));
       ps.setString(++i, status);
@@ -77,10 +121,75 @@ public class FeedDao {
     }
   }
 
+  /**
+   * @return next scheduled update per feed ID, feeds without a schedule
+   * are missing
+   */
+  public Map<Long, Date> getNextUpdates() throws SQLException {
+    Map<Long, Date> next = new HashMap<>();
+    try (Connection conn = db.readConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedDao.getNextUpdates",
+        "SELECT id,nextUpdate FROM feed WHERE nextUpdate IS NOT NULL")) {
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          next.put(rs.getLong(1), rs.getTimestamp(2));
+        }
+      }
+    }
+    return next;
+  }
+
+  public void setNextUpdates(Map<Long, Date> next) throws SQLException {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedDao.setNextUpdates",
+        "UPDATE feed SET nextUpdate=? WHERE id=?")) {
+      for (Map.Entry<Long, Date> e : next.entrySet()) {
+        ps.setTimestamp(1, Database.toTimestamp(e.getValue()));
+        ps.setLong(2, e.getKey());
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    }
+  }
+
+  /**
+   * @return number of posts dated after <code>since</code> per ID of the
+   * given feeds, feeds without such posts are missing
+   */
+  public Map<Long, Integer> countPostsSince(Date since,
+    Collection<Long> feedIds) throws SQLException {
+    Map<Long, Integer> counts = new HashMap<>();
+    List<Long> list = new ArrayList<>(feedIds);
+    try (Connection conn = db.readConnection()) {
+      for (int from = 0; from < list.size(); from += IN_CHUNK) {
+        List<Long> chunk = list.subList(
+          from, Math.min(list.size(), from + IN_CHUNK));
+        try (PreparedStatement ps = Database.prepare(conn,
+          "FeedDao.countPostsSince",
+          "SELECT postfeed.feed,COUNT(post.id) FROM postfeed "
+          + "INNER JOIN post ON post.id=postfeed.post "
+          + "WHERE postfeed.feed IN " + inCondition(chunk.size())
+          + " AND post.date>=? GROUP BY postfeed.feed")) {
+          int i = 0;
+          for (long id : chunk) {
+            ps.setLong(++i, id);
+          }
+          ps.setTimestamp(++i, Database.toTimestamp(since));
+          try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+              counts.put(rs.getLong(1), rs.getInt(2));
+            }
+          }
+        }
+      }
+    }
+    return counts;
+  }
+
   public long lastFeedUpdate() throws SQLException {
-    Connection conn = db.getConnection();
-    try (PreparedStatement ps = conn.prepareStatement(
-      "SELECT MAX(lastAccess) FROM feed")) {
+    try (Connection conn = db.readConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedDao.lastFeedUpdate",
+        "SELECT MAX(lastAccess) FROM feed")) {
       try (ResultSet rs = ps.executeQuery()) {
         if (rs.next()) {
           return rs.getTimestamp(1).getTime();
@@ -92,10 +201,10 @@ public class FeedDao {
   }
 
   private void updateFeedById(Feed feed) throws SQLException {
-    Connection conn = db.getConnection();
-    try (PreparedStatement ps = conn.prepareStatement(
-      "UPDATE feed SET location=?,title=?,lastAccess=?"
-      + "WHERE id=?")) {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedDao.updateFeedById",
+        "UPDATE feed SET location=?,title=?,lastAccess=?"
+        + "WHERE id=?")) {
       ps.setString(1, feed.getLocation());
       ps.setString(2, feed.getTitle());
       ps.setTimestamp(3, Database.toTimestamp(feed.getLastAccess()));
@@ -106,9 +215,10 @@ public class FeedDao {
   }
 
   private void updateFeedByLocation(Feed feed) throws SQLException {
-    Connection conn = db.getConnection();
-    try (PreparedStatement ps = conn.prepareStatement(
-      "UPDATE feed SET lastAccess=? WHERE location=?")) {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn,
+        "FeedDao.updateFeedByLocation",
+        "UPDATE feed SET lastAccess=? WHERE location=?")) {
       ps.setTimestamp(1, Database.toTimestamp(feed.getLastAccess()));
       ps.setString(2, feed.getLocation());
       ps.executeUpdate();
@@ -117,7 +227,8 @@ public class FeedDao {
   }
 
   private boolean existsFeed(String location) throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
+    try (Connection conn = db.readConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedDao.existsFeed",
         "SELECT * FROM feed WHERE location=?")) {
       ps.setString(1, location);
       return Database.hasResult(ps);
@@ -125,10 +236,11 @@ public class FeedDao {
   }
 
   private Feed insertFeed(Feed feed) throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "INSERT INTO feed (location, title, lastAccess, lastStatus) "
-      + "VALUES (?,?,?,?)",
-      Statement.RETURN_GENERATED_KEYS)) {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedDao.insertFeed",
+        "INSERT INTO feed (location, title, lastAccess, lastStatus) "
+        + "VALUES (?,?,?,?)",
+        Statement.RETURN_GENERATED_KEYS)) {
       ps.setString(1, feed.getLocation());
       ps.setString(2, feed.getTitle());
       ps.setTimestamp(3, Database.toTimestamp(feed.getLastAccess()));
@@ -143,8 +255,9 @@ public class FeedDao {
   }
 
   public Optional<Feed> getFeed(long id) throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "SELECT id,location,title,lastAccess,lastStatus FROM feed WHERE id=?")) {
+    try (Connection conn = db.readConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedDao.getFeed",
+        "SELECT " + FEED_COLUMNS + " FROM feed WHERE id=?")) {
       ps.setLong(1, id);
       ResultSet rs = ps.executeQuery();
       if (rs.next()) {
@@ -157,8 +270,9 @@ public class FeedDao {
 
   public List<Feed> getAllFeeds() throws SQLException {
     List<Feed> feeds = new ArrayList<>();
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "SELECT id,location,title,lastAccess,lastStatus FROM feed ORDER BY title ASC")) {
+    try (Connection conn = db.readConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedDao.getAllFeeds",
+        "SELECT " + FEED_COLUMNS + " FROM feed ORDER BY title ASC")) {
       ResultSet rs = ps.executeQuery();
       while (rs.next()) {
         feeds.add(parseFeedResultSet(rs));
@@ -174,17 +288,21 @@ public class FeedDao {
     }
 
   }
+
+  /**
+   * @return the feeds with their post statistics, as maintained by the
+   * {@link PostDao}
+   */
   public List<FeedInfo> getAllFeedInfos() throws SQLException {
     List<FeedInfo> feeds = new ArrayList<>();
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "SELECT DISTINCT(feed.id),feed.location,feed.title,feed.lastAccess,feed.lastStatus,"
-      + "COUNT(CASE WHEN post.read=0 THEN 1 END),"
-      + "COUNT(CASE WHEN post.read=1 THEN 1 END),"
-      + "MAX(post.date) "
-      + "FROM feed "
-      + "LEFT JOIN postfeed ON feed.id=postfeed.feed "
-      + "LEFT JOIN post ON postfeed.post=post.id "
-      + "GROUP BY feed.id ORDER BY feed.id")) {
+    try (Connection conn = db.readConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedDao.getAllFeedInfos",
+        "SELECT " + FEED_COLUMNS + ","
+        + "COALESCE(feedstats.unread,0),COALESCE(feedstats.read,0),"
+        + "feedstats.lastpost "
+        + "FROM feed "
+        + "LEFT JOIN feedstats ON feed.id=feedstats.feed "
+        + "ORDER BY feed.id")) {
       ResultSet rs = ps.executeQuery();
       while (rs.next()) {
         feeds.add(parseFeedInfoResultSet(rs));
@@ -206,8 +324,11 @@ public class FeedDao {
     if (lastStatus == null) {
       lastStatus = "unknown";
     }
+    String etag = rs.getString(++i);
+    String lastModified = rs.getString(++i);
     ctrRef[0] = i;
-    Feed feed = new Feed(id, location, title, lastAccess, lastStatus);
+    Feed feed = new Feed(
+      id, location, title, lastAccess, lastStatus, etag, lastModified);
     return feed;
   }
 
@@ -223,12 +344,20 @@ public class FeedDao {
 
   public void deleteFeed(long id) throws SQLException {
     Feed f = getFeed(id).get();
-    Connection conn = db.getConnection();
-    try (PreparedStatement ps = conn.prepareStatement(
-      "DELETE FROM feed WHERE id=?")) {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedDao.deleteFeed",
+        "DELETE FROM feed WHERE id=?")) {
       ps.setLong(1, id);
       ps.executeUpdate();
     }
     log.debug("Deleted feed {} with ID {}.", f.getLocation(), id);
   }
+
+  private static String inCondition(int num) {
+    StringBuilder sb = new StringBuilder(num*3);
+    for (int i = 0; i < num; i++) {
+      sb.append("?,");
+    }
+    return '(' + sb.deleteCharAt(sb.length()-1).toString() + ')';
+  }
 }
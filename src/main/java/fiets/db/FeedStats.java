@@ -0,0 +1,236 @@
+package fiets.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The <code>feedstats</code> table holds the number of unread and read posts
+ * and the date of the most recent post per feed, so the feeds page does not
+ * have to aggregate all posts. The rows are kept up to date by the post
+ * changes, on the write connection and within their transaction; posts are
+ * selected by a condition on <code>post</code> with its parameters.
+ */
+final class FeedStats {
+
+  private static final int IN_CHUNK = 500;
+
+  static void createTable(Database db) throws SQLException {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "FeedStats.createTable",
+        "CREATE TABLE IF NOT EXISTS feedstats ("
+        + "feed BIGINT PRIMARY KEY,"
+        + "unread INT,"
+        + "read INT,"
+        + "lastpost DATETIME"
+        + ")")) {
+      ps.executeUpdate();
+    }
+  }
+
+  /**
+   * Compute the table from the posts if it is empty while there are posts,
+   * i.e. for databases from before it was introduced.
+   */
+  static void rebuildIfEmpty(Connection conn) throws SQLException {
+    try (PreparedStatement ps = Database.prepare(conn,
+      "FeedStats.rebuildIfEmpty",
+      "SELECT 1 FROM feedstats LIMIT 1")) {
+      if (Database.hasResult(ps)) {
+        return;
+      }
+    }
+    try (PreparedStatement ps = Database.prepare(conn,
+      "FeedStats.rebuildIfEmpty",
+      "INSERT INTO feedstats (feed,unread,read,lastpost) "
+      + "SELECT postfeed.feed,"
+      + "COUNT(CASE WHEN post.read=false THEN 1 END),"
+      + "COUNT(CASE WHEN post.read=true THEN 1 END),"
+      + "MAX(post.date) "
+      + "FROM postfeed LEFT JOIN post ON postfeed.post=post.id "
+      + "GROUP BY postfeed.feed")) {
+      ps.executeUpdate();
+    }
+  }
+
+  /**
+   * Posts were added to a feed.
+   */
+  static void linked(Connection conn, long feed, Collection<Long> postIds)
+    throws SQLException {
+    List<Long> list = new ArrayList<>(postIds);
+    for (int from = 0; from < list.size(); from += IN_CHUNK) {
+      List<Long> chunk = list.subList(
+        from, Math.min(list.size(), from + IN_CHUNK));
+      try (PreparedStatement ps = Database.prepare(conn, "FeedStats.linked",
+        "SELECT COUNT(CASE WHEN post.read=false THEN 1 END),"
+        + "COUNT(CASE WHEN post.read=true THEN 1 END),MAX(post.date) "
+        + "FROM post WHERE post.id IN " + inCondition(chunk.size()))) {
+        int i = 0;
+        for (long id : chunk) {
+          ps.setLong(++i, id);
+        }
+        try (ResultSet rs = ps.executeQuery()) {
+          rs.next();
+          int unread = rs.getInt(1);
+          int read = rs.getInt(2);
+          Timestamp lastPost = rs.getTimestamp(3);
+          // A feed's row is created along with its first posts.
+          if (!add(conn, feed, unread, read, lastPost)) {
+            insert(conn, feed, unread, read, lastPost);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The posts matching the condition are about to be marked (un)read; only
+   * those whose state actually changes are counted.
+   */
+  static void readStateChanging(Connection conn, boolean read,
+    String condition, Object... params) throws SQLException {
+    try (PreparedStatement ps = Database.prepare(conn,
+      "FeedStats.readStateChanging",
+      "SELECT postfeed.feed,COUNT(post.id) FROM post "
+      + "INNER JOIN postfeed ON post.id=postfeed.post "
+      + "WHERE post.read=? AND (" + condition + ") "
+      + "GROUP BY postfeed.feed")) {
+      ps.setBoolean(1, !read);
+      setParameters(ps, 1, params);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          int num = rs.getInt(2);
+          add(conn, rs.getLong(1), read ? -num : num, read ? num : -num, null);
+        }
+      }
+    }
+  }
+
+  /**
+   * The posts matching the condition are about to be deleted.
+   * @return the feeds they belong to, pass them to
+   * {@link #refreshLastPost(Connection, Set)} once the posts are gone
+   */
+  static Set<Long> deleting(Connection conn, String condition,
+    Object... params) throws SQLException {
+    Set<Long> feeds = new LinkedHashSet<>();
+    try (PreparedStatement ps = Database.prepare(conn, "FeedStats.deleting",
+      "SELECT postfeed.feed,"
+      + "COUNT(CASE WHEN post.read=false THEN 1 END),"
+      + "COUNT(CASE WHEN post.read=true THEN 1 END) FROM post "
+      + "INNER JOIN postfeed ON post.id=postfeed.post "
+      + "WHERE " + condition + " GROUP BY postfeed.feed")) {
+      setParameters(ps, 0, params);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          long feed = rs.getLong(1);
+          add(conn, feed, -rs.getInt(2), -rs.getInt(3), null);
+          feeds.add(feed);
+        }
+      }
+    }
+    return feeds;
+  }
+
+  /**
+   * @return the feeds the posts matching the condition belong to
+   */
+  static Set<Long> feedsOf(Connection conn, String condition,
+    Object... params) throws SQLException {
+    Set<Long> feeds = new LinkedHashSet<>();
+    try (PreparedStatement ps = Database.prepare(conn, "FeedStats.feedsOf",
+      "SELECT DISTINCT postfeed.feed FROM post "
+      + "INNER JOIN postfeed ON post.id=postfeed.post WHERE " + condition)) {
+      setParameters(ps, 0, params);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          feeds.add(rs.getLong(1));
+        }
+      }
+    }
+    return feeds;
+  }
+
+  /**
+   * Determine the most recent post of feeds again, after posts were deleted
+   * or redated.
+   */
+  static void refreshLastPost(Connection conn, Set<Long> feeds)
+    throws SQLException {
+    if (feeds.isEmpty()) {
+      return;
+    }
+    try (PreparedStatement ps = Database.prepare(conn,
+      "FeedStats.refreshLastPost",
+      "UPDATE feedstats SET lastpost=(SELECT MAX(post.date) FROM postfeed "
+      + "INNER JOIN post ON postfeed.post=post.id "
+      + "WHERE postfeed.feed=feedstats.feed) WHERE feed=?")) {
+      for (long feed : feeds) {
+        ps.setLong(1, feed);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    }
+  }
+
+  static void remove(Connection conn, long feed) throws SQLException {
+    try (PreparedStatement ps = Database.prepare(conn, "FeedStats.remove",
+      "DELETE FROM feedstats WHERE feed=?")) {
+      ps.setLong(1, feed);
+      ps.executeUpdate();
+    }
+  }
+
+  /**
+   * @return <code>false</code> if the feed has no row yet
+   */
+  private static boolean add(Connection conn, long feed, int unread,
+    int read, Timestamp lastPost) throws SQLException {
+    try (PreparedStatement ps = Database.prepare(conn, "FeedStats.add",
+      "UPDATE feedstats SET unread=unread+?,read=read+?,"
+      + "lastpost=GREATEST(lastpost,?) WHERE feed=?")) {
+      ps.setInt(1, unread);
+      ps.setInt(2, read);
+      ps.setTimestamp(3, lastPost);
+      ps.setLong(4, feed);
+      return ps.executeUpdate() > 0;
+    }
+  }
+
+  private static void insert(Connection conn, long feed, int unread,
+    int read, Timestamp lastPost) throws SQLException {
+    try (PreparedStatement ps = Database.prepare(conn, "FeedStats.insert",
+      "INSERT INTO feedstats (feed,unread,read,lastpost) VALUES (?,?,?,?)")) {
+      ps.setLong(1, feed);
+      ps.setInt(2, unread);
+      ps.setInt(3, read);
+      ps.setTimestamp(4, lastPost);
+      ps.executeUpdate();
+    }
+  }
+
+  private static void setParameters(PreparedStatement ps, int offset,
+    Object... params) throws SQLException {
+    for (Object param : params) {
+      ps.setObject(++offset, param);
+    }
+  }
+
+  private static String inCondition(int num) {
+    StringBuilder sb = new StringBuilder(num*3);
+    for (int i = 0; i < num; i++) {
+      sb.append("?,");
+    }
+    return '(' + sb.deleteCharAt(sb.length()-1).toString() + ')';
+  }
+
+  private FeedStats() {}
+}
@@ -9,8 +9,10 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class FilterDao {
@@ -26,8 +28,9 @@ public class FilterDao {
   }
 
   private int createTable() throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "CREATE TABLE IF NOT EXISTS filter ("
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "FilterDao.createTable",
+        "CREATE TABLE IF NOT EXISTS filter ("
         + "id BIGINT PRIMARY KEY AUTO_INCREMENT,"
         + "feed BIGINT,"
         + "url VARCHAR(2048),"
@@ -35,7 +38,7 @@ public class FilterDao {
         + "title VARCHAR(2048),"
         + "titlematch TINYINT,"
         + "matchcount BIGINT DEFAULT 0"
-      + ");")) {
+        + ");")) {
       return ps.executeUpdate();
     }
   }
@@ -45,21 +48,26 @@ public class FilterDao {
   }
 
   private Filter insertFilter(Filter filter) throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "INSERT INTO filter (url, urlmatch, title, titlematch) "
-      + "VALUES (?,?,?,?)")) {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "FilterDao.insertFilter",
+        "INSERT INTO filter (url, urlmatch, title, titlematch) "
+        + "VALUES (?,?,?,?)", Statement.RETURN_GENERATED_KEYS)) {
       ps.setString(1, filter.getUrl());
       ps.setInt(2, filter.getUrlMatch().ordinal());
       ps.setString(3, filter.getTitle());
       ps.setInt(4, filter.getTitleMatch().ordinal());
       ps.executeUpdate();
+      return new Filter(Database.getGeneratedKey(ps), filter.getUrl(),
+        filter.getUrlMatch(), filter.getTitle(), filter.getTitleMatch(),
+        filter.getMatchCount());
     }
-    return filter;  
   }
 
   public Filter updateFilterKeepMatchCount(Filter filter) throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "UPDATE filter SET url=?, urlMatch=?, title=?, titleMatch=? WHERE id=?")) {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn,
+        "FilterDao.updateFilterKeepMatchCount",
+        "UPDATE filter SET url=?, urlMatch=?, title=?, titleMatch=? WHERE id=?")) {
       ps.setString(1, filter.getUrl());
       ps.setInt(2, filter.getUrlMatch().ordinal());
       ps.setString(3, filter.getTitle());
@@ -74,8 +82,9 @@ public class FilterDao {
   
   public List<Filter> getAllFilters() throws SQLException {
     List<Filter> filters = new ArrayList<>();
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "SELECT id, url, urlmatch, title, titlematch, matchcount FROM filter")) {
+    try (Connection conn = db.readConnection();
+      PreparedStatement ps = Database.prepare(conn, "FilterDao.getAllFilters",
+        "SELECT id, url, urlmatch, title, titlematch, matchcount FROM filter")) {
       ResultSet rs = ps.executeQuery();
       while (rs.next()) {
         filters.add(parseFilterResultSet(rs));
@@ -97,29 +106,33 @@ public class FilterDao {
   }
   
   public void deleteFilter(long id) throws SQLException {
-    Connection conn = db.getConnection();
-    try (PreparedStatement ps = conn.prepareStatement(
-      "DELETE FROM filter WHERE id=?")) {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "FilterDao.deleteFilter",
+        "DELETE FROM filter WHERE id=?")) {
       ps.setLong(1, id);
       ps.executeUpdate();
     }
     log.info("Deleted filter with ID {}.", id);
   }
 
-  public void updateMatchCount(Filter f) throws SQLException {
-    Connection conn = db.getConnection();
-    try (PreparedStatement ps = conn.prepareStatement(
-            "UPDATE filter SET matchcount=? WHERE id=?")) {
-      ps.setLong(1, f.getMatchCount());
-      ps.setLong(2, f.getId());
-      ps.executeUpdate();
+  /**
+   * Add to the match counts of filters, in one batch.
+   * @param counts the number to add by filter ID
+   */
+  public void addMatchCounts(Map<Long, Long> counts) throws SQLException {
+    if (counts.isEmpty()) {
+      return;
     }
-    log.debug("Increased match count for filter with ID {} to {}.", f.getId(), f.getMatchCount());
-  }
-
-  public void updateMatchCounts(List<Filter> filters) throws SQLException {
-    for (Filter filter : filters) {
-      updateMatchCount(filter);
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "FilterDao.addMatchCounts",
+        "UPDATE filter SET matchcount=matchcount+? WHERE id=?")) {
+      for (Map.Entry<Long, Long> e : counts.entrySet()) {
+        ps.setLong(1, e.getValue());
+        ps.setLong(2, e.getKey());
+        ps.addBatch();
+      }
+      ps.executeBatch();
     }
+    log.debug("Added matches of {} filters.", counts.size());
   }
 }
@@ -0,0 +1,60 @@
+package fiets.db;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Post counters kept in memory, so pages do not need to count the tables.
+ * Also used to collect the changes of a transaction until it is committed.
+ */
+final class PostCounts {
+
+  private final AtomicInteger unread = new AtomicInteger();
+  private final AtomicInteger full = new AtomicInteger();
+  private final AtomicInteger bookmarks = new AtomicInteger();
+
+  int getUnread() {
+    return unread.get();
+  }
+
+  int getFull() {
+    return full.get();
+  }
+
+  int getBookmarks() {
+    return bookmarks.get();
+  }
+
+  void addPosts(int posts, int unreadPosts) {
+    full.addAndGet(posts);
+    unread.addAndGet(unreadPosts);
+  }
+
+  void addUnread(int delta) {
+    unread.addAndGet(delta);
+  }
+
+  void addBookmarks(int delta) {
+    bookmarks.addAndGet(delta);
+  }
+
+  void add(PostCounts delta) {
+    addPosts(delta.getFull(), delta.getUnread());
+    addBookmarks(delta.getBookmarks());
+  }
+
+  /**
+   * Set the counters to the actual counts.
+   * @return <code>true</code> if they had drifted
+   */
+  boolean reset(int theUnread, int theFull, int theBookmarks) {
+    boolean drifted = unread.getAndSet(theUnread) != theUnread;
+    drifted |= full.getAndSet(theFull) != theFull;
+    drifted |= bookmarks.getAndSet(theBookmarks) != theBookmarks;
+    return drifted;
+  }
+
+  @Override public String toString() {
+    return String.format("%d unread, %d total, %d bookmarks",
+      getUnread(), getFull(), getBookmarks());
+  }
+}
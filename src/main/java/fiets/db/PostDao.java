@@ -5,22 +5,37 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import fiets.model.Feed;
+import fiets.model.Filter;
+import fiets.model.FilterMatch;
 import fiets.model.Post;
+import fiets.model.PostCursor;
+import fiets.model.PostPage;
 
 /**
  * A post is considered equal to an existing one when either the location or the
  * title matches. Only when both the location and the title differ is a post
- * treated as new.
+ * treated as new. Titles are compared normalized, see {@link PostKeys}; both
+ * lookups go through indexed hash columns.
  */
 public class PostDao {
 
@@ -29,24 +44,68 @@ public class PostDao {
     + "post.lastaccess <= DATEADD('month', -1, current_timestamp()) AND "
     + "post.id NOT IN (SELECT bookmarkedpost.post FROM bookmarkedpost)";
   private static final Logger log = LogManager.getLogger();
+  private static final int IN_CHUNK = 500;
+  private static final int BACKFILL_CHUNK = 1000;
+  private static final String POST_COLUMNS =
+    "post.id,post.date,post.location,post.snippet,post.title,post.read,"
+    + "post.displaytitle,post.displaysnippet,";
+  private static final int RETENTION_CHUNK =
+    Integer.getInteger("fiets.retention.chunk", 1000);
+  private static final String INSERT_POST =
+    "INSERT INTO post (date,location,snippet,title,read,lastaccess,"
+    + "locationhash,titlehash,displaytitle,displaysnippet) "
+    + "VALUES (?,?,?,?,?,?,?,?,?,?)";
+
+  /**
+   * Changes made within a transaction, see {@link PostDao#write(Work)}.
+   */
+  private interface Work<T> {
+    T run(Connection conn, PostCounts delta) throws SQLException;
+  }
 
   private Database db;
+  private final PostCounts counts = new PostCounts();
+  private final List<Runnable> countsListeners = new CopyOnWriteArrayList<>();
 
   public PostDao(Database theDb) throws SQLException {
     db = theDb;
     createTables();
-    createIndexes();
     upgradeTables();
+    createIndexes();
+    backfillKeys();
+    reconcileCounts();
+    rebuildFeedStats();
+  }
+
+  /**
+   * Call the listener after changes that may have changed the unread, total
+   * or bookmark counts, on the thread that made them.
+   */
+  public void addCountsListener(Runnable listener) {
+    countsListeners.add(listener);
+  }
+
+  private void countsChanged() {
+    for (Runnable listener : countsListeners) {
+      try {
+        listener.run();
+      } catch (RuntimeException e) {
+        log.error("Counts listener failed: {}", e.getMessage(), e);
+      }
+    }
   }
 
   private void upgradeTables() throws SQLException {
     addLastaccessColumn();
+    addKeyColumns();
+    addDisplayColumns();
   }
 
   public void createTables() throws SQLException {
     createPostTable();
     createPostFeedTable();
     createBookmarkTable();
+    FeedStats.createTable(db);
   }
 
   private void createIndex(String column) throws SQLException {
@@ -56,56 +115,323 @@ public class PostDao {
   private void createIndexes() throws SQLException {
     createIndex("id");
     createIndex("date");
-    createIndex("read");
-    createIndex("location");
+    createIndex("locationhash");
+    createIndex("titlehash");
+    // Keyset pagination, unread posts are listed oldest first, read ones
+    // newest first.
+    db.createIndexIfNotExists("post", "read", "date", "id");
+    db.createIndexIfNotExists("post", "read DESC", "date DESC", "id DESC");
+    // Covered by the above.
+    db.dropIndexIfExists("post", "read");
+    // Replaced by the much smaller locationhash index.
+    db.dropIndexIfExists("post", "location");
+    db.createIndexIfNotExists("postfeed", "post");
+    db.createIndexIfNotExists("postfeed", "feed");
+    db.createIndexIfNotExists("bookmarkedpost", "post");
   }
 
   public Post savePost(Post post, Feed feed) throws SQLException {
+    // Prepared before taking the write connection, it is costly.
+    Post prepared = post.withDisplayText();
+    // Look up on the write connection, nobody may insert the post meanwhile.
+    return write((conn, delta) -> savePost(conn, prepared, feed, delta));
+  }
+
+  private Post savePost(Connection conn, Post post, Feed feed,
+    PostCounts delta) throws SQLException {
     if (post.getId() == 0L) {
-      Post existing = loadPostByLocation(post.getLocation());
+      Post existing = loadPostByLocation(conn, post.getLocation());
       if (existing == null) {
-        existing = loadPostByTitle(post.getTitle());
+        existing = loadPostByTitle(conn, post.getTitle());
       }
       if (existing == null) {
-        post = insertPost(post);
+        post = insertPost(conn, post);
+        delta.addPosts(1, post.isRead() ? 0 : 1);
       } else {
         post = existing;
         log.debug("Post {} already exists with ID {}.",
           post.getLocation(), post.getId());
-        touchPost(post);
+        touchPost(conn, post);
       }
     } else {
-      updatePostById(post);
+      updatePostById(conn, post, delta);
     }
-    savePostFeed(post, feed);
+    savePostFeed(conn, post, feed);
     return post;
   }
 
-  private Post loadPostByTitle(String title) throws SQLException {
-    Connection conn = db.getConnection();
-    try (PreparedStatement ps = conn.prepareStatement(
-      selectPost("WHERE post.title=?"))) {
-      ps.setString(1, title);
+  private Post loadPostByTitle(Connection conn, String title)
+    throws SQLException {
+    String normalized = PostKeys.normalizeTitle(title);
+    try (PreparedStatement ps = Database.prepare(conn,
+        "PostDao.loadPostByTitle",
+        selectPost("WHERE post.titlehash=?"))) {
+      ps.setLong(1, PostKeys.titleHash(title));
       try (ResultSet rs = ps.executeQuery()) {
-        if (!rs.next()) {
-          return null;
+        while (rs.next()) {
+          Post post = parsePostResultSet(rs);
+          if (normalized.equals(PostKeys.normalizeTitle(post.getTitle()))) {
+            return post;
+          }
         }
-        return parsePostResultSet(rs);
+        return null;
       }
     }
   }
 
+  /**
+   * Save all posts of a feed in one transaction. New posts are matched
+   * against the existing ones (and each other) with a few set-based queries
+   * instead of per-post lookups; inserts and updates are batched. The result
+   * is the same as calling {@link #savePost(Post, Feed)} for each post in
+   * order.
+   */
   public void savePosts(List<Post> posts, Feed feed) throws SQLException {
+    if (posts.isEmpty()) {
+      return;
+    }
+    // Prepared before taking the write connection, it is costly.
+    List<Post> prepared = new ArrayList<>(posts.size());
     for (Post post : posts) {
-      savePost(post, feed);
+      prepared.add(post.withDisplayText());
+    }
+    write((conn, delta) -> {
+      List<Long> ids = new ArrayList<>(prepared.size());
+      List<Post> added = new ArrayList<>();
+      for (Post post : prepared) {
+        if (post.getId() != 0L) {
+          updatePostById(conn, post, delta);
+          ids.add(post.getId());
+        } else {
+          added.add(post);
+        }
+      }
+      ids.addAll(saveNewPosts(conn, added, delta));
+      savePostFeeds(conn, ids, feed);
+      return null;
+    });
+  }
+
+  /**
+   * Run changes in one transaction on the write connection. The counters
+   * follow the changes once they are committed.
+   */
+  private <T> T write(Work<T> work) throws SQLException {
+    try (Connection conn = db.writeConnection()) {
+      boolean autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      try {
+        PostCounts delta = new PostCounts();
+        T result = work.run(conn, delta);
+        conn.commit();
+        counts.add(delta);
+        countsChanged();
+        return result;
+      } catch (SQLException | RuntimeException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(autoCommit);
+      }
     }
   }
 
+  private List<Long> saveNewPosts(Connection conn, List<Post> posts,
+    PostCounts delta) throws SQLException {
+    Set<String> locations = new HashSet<>();
+    for (Post post : posts) {
+      if (post.getLocation() != null) {
+        locations.add(post.getLocation());
+      }
+    }
+    Map<String, Long> byLocation = loadIds(conn, "location", locations);
+    // Titles are only compared if the location is unknown.
+    Set<String> titles = new HashSet<>();
+    for (Post post : posts) {
+      if (!byLocation.containsKey(post.getLocation())) {
+        titles.add(PostKeys.normalizeTitle(post.getTitle()));
+      }
+    }
+    Map<String, Long> byTitle = loadIds(conn, "title", titles);
+
+    // Resolve in order, so a post also matches one inserted just before.
+    List<Post> toInsert = new ArrayList<>();
+    Map<String, Post> insertedLocations = new HashMap<>();
+    Map<String, Post> insertedTitles = new HashMap<>();
+    Set<Long> toTouch = new LinkedHashSet<>();
+    List<Post> resolved = new ArrayList<>(posts.size());
+    for (Post post : posts) {
+      Long id = byLocation.get(post.getLocation());
+      Post same = insertedLocations.get(post.getLocation());
+      if (id == null && same == null) {
+        String title = PostKeys.normalizeTitle(post.getTitle());
+        id = byTitle.get(title);
+        same = insertedTitles.get(title);
+      }
+      if (id != null) {
+        toTouch.add(id);
+        resolved.add(new Post(id, post));
+      } else if (same != null) {
+        resolved.add(same);
+      } else {
+        toInsert.add(post);
+        if (post.getLocation() != null) {
+          insertedLocations.putIfAbsent(post.getLocation(), post);
+        }
+        insertedTitles.putIfAbsent(
+          PostKeys.normalizeTitle(post.getTitle()), post);
+        resolved.add(post);
+      }
+    }
+    Map<Post, Long> insertedIds = insertPosts(conn, toInsert);
+    touchPosts(conn, toTouch);
+    for (Post post : toInsert) {
+      delta.addPosts(1, post.isRead() ? 0 : 1);
+    }
+
+    List<Long> ids = new ArrayList<>(resolved.size());
+    for (Post post : resolved) {
+      ids.add(post.getId() == 0L ? insertedIds.get(post) : post.getId());
+    }
+    log.debug("Saved {} posts, {} new, {} existing.",
+      posts.size(), toInsert.size(), toTouch.size());
+    return ids;
+  }
+
+  /**
+   * Look up posts by the hash of a column and keep those whose value really
+   * matches.
+   * @param column <code>location</code> or <code>title</code>; titles are
+   * expected normalized
+   * @return the lowest ID per value
+   */
+  private static Map<String, Long> loadIds(
+    Connection conn, String column, Set<String> values) throws SQLException {
+    boolean title = "title".equals(column);
+    Map<String, Long> ids = new HashMap<>();
+    List<String> list = new ArrayList<>(values);
+    for (int from = 0; from < list.size(); from += IN_CHUNK) {
+      List<String> chunk = list.subList(
+        from, Math.min(list.size(), from + IN_CHUNK));
+      try (PreparedStatement ps = Database.prepare(conn,
+        "PostDao.loadIds", String.format(
+        "SELECT id,%s FROM post WHERE %shash IN %s",
+        column, column, inCondition(chunk.size())))) {
+        int i = 0;
+        for (String value : chunk) {
+          ps.setLong(++i, title
+            ? PostKeys.titleHash(value) : PostKeys.locationHash(value));
+        }
+        try (ResultSet rs = ps.executeQuery()) {
+          while (rs.next()) {
+            String value = rs.getString(2);
+            if (title) {
+              value = PostKeys.normalizeTitle(value);
+            }
+            if (value != null && values.contains(value)) {
+              ids.merge(value, rs.getLong(1), Math::min);
+            }
+          }
+        }
+      }
+    }
+    return ids;
+  }
+
+  private Map<Post, Long> insertPosts(Connection conn, List<Post> posts)
+    throws SQLException {
+    Map<Post, Long> ids = new IdentityHashMap<>();
+    if (posts.isEmpty()) {
+      return ids;
+    }
+    try (PreparedStatement ps = Database.prepare(conn, "PostDao.insertPosts",
+      INSERT_POST, Statement.RETURN_GENERATED_KEYS)) {
+      for (Post post : posts) {
+        preparePostStatement(ps, post);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+      try (ResultSet rs = ps.getGeneratedKeys()) {
+        for (Post post : posts) {
+          if (!rs.next()) {
+            throw new SQLException("Missing generated key for "
+              + post.getLocation());
+          }
+          ids.put(post, rs.getLong(1));
+        }
+      }
+    }
+    return ids;
+  }
+
+  private static void touchPosts(Connection conn, Set<Long> ids)
+    throws SQLException {
+    if (ids.isEmpty()) {
+      return;
+    }
+    try (PreparedStatement ps = Database.prepare(conn, "PostDao.touchPosts",
+      "UPDATE post SET lastaccess=? WHERE id=?")) {
+      Timestamp now = Database.toTimestamp(new Date());
+      for (long id : ids) {
+        ps.setTimestamp(1, now);
+        ps.setLong(2, id);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    }
+  }
+
+  private static void savePostFeeds(Connection conn, List<Long> postIds,
+    Feed feed) throws SQLException {
+    Set<Long> missing = new LinkedHashSet<>(postIds);
+    List<Long> list = new ArrayList<>(missing);
+    for (int from = 0; from < list.size(); from += IN_CHUNK) {
+      List<Long> chunk = list.subList(
+        from, Math.min(list.size(), from + IN_CHUNK));
+      try (PreparedStatement ps = Database.prepare(conn,
+        "PostDao.savePostFeeds",
+        "SELECT post FROM postfeed WHERE feed=? AND post IN "
+        + inCondition(chunk.size()))) {
+        int i = 0;
+        ps.setLong(++i, feed.getId());
+        for (long id : chunk) {
+          ps.setLong(++i, id);
+        }
+        try (ResultSet rs = ps.executeQuery()) {
+          while (rs.next()) {
+            missing.remove(rs.getLong(1));
+          }
+        }
+      }
+    }
+    if (missing.isEmpty()) {
+      return;
+    }
+    try (PreparedStatement ps = Database.prepare(conn, "PostDao.savePostFeeds",
+      "INSERT INTO postfeed (post, feed) VALUES (?, ?)")) {
+      for (long id : missing) {
+        ps.setLong(1, id);
+        ps.setLong(2, feed.getId());
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    }
+    FeedStats.linked(conn, feed.getId(), missing);
+  }
+
   public Post loadPostByLocation(String location) throws SQLException {
-    Connection conn = db.getConnection();
-    try (PreparedStatement ps = conn.prepareStatement(
-      selectPost("WHERE post.location=?"))) {
-      ps.setString(1, location);
+    try (Connection conn = db.readConnection()) {
+      return loadPostByLocation(conn, location);
+    }
+  }
+
+  private Post loadPostByLocation(Connection conn, String location)
+    throws SQLException {
+    try (PreparedStatement ps = Database.prepare(conn,
+        "PostDao.loadPostByLocation",
+        selectPost("WHERE post.locationhash=? AND post.location=?"))) {
+      ps.setLong(1, PostKeys.locationHash(location));
+      ps.setString(2, location);
       try (ResultSet rs = ps.executeQuery()) {
         if (!rs.next()) {
           return null;
@@ -116,9 +442,9 @@ public class PostDao {
   }
 
   public Set<Long> getBookmarks() throws SQLException {
-    Connection conn = db.getConnection();
-    try (PreparedStatement ps = conn.prepareStatement(
-      "SELECT post FROM bookmarkedpost")) {
+    try (Connection conn = db.readConnection();
+      PreparedStatement ps = Database.prepare(conn, "PostDao.getBookmarks",
+        "SELECT post FROM bookmarkedpost")) {
       try (ResultSet rs = ps.executeQuery()) {
         List<Long> posts = new ArrayList<>();
         while (rs.next()) {
@@ -130,7 +456,7 @@ public class PostDao {
   }
 
   public int getUnreadCount() throws SQLException {
-    return getCount(" WHERE post.read=false");
+    return counts.getUnread();
   }
 
   public int getReadCount() throws SQLException {
@@ -141,62 +467,212 @@ public class PostDao {
     return getCount(OUTDATED_SPEC);
   }
 
-  public void deleteOutdated() throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "DELETE FROM post" + OUTDATED_SPEC)) {
-      ps.executeUpdate();
+  /**
+   * Delete read posts not accessed for a month, unless bookmarked. Works
+   * through them by ID in chunks of <code>fiets.retention.chunk</code>
+   * (default {@value #RETENTION_CHUNK}), one transaction each, and hands
+   * the write connection on in between, so other changes wait for one
+   * chunk at most. Links of posts deleted before are cleaned up as well.
+   * @return number of deleted posts
+   */
+  public int deleteOutdated() throws SQLException {
+    Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusMonths(1));
+    long start = System.nanoTime();
+    int total = 0;
+    long after = Long.MIN_VALUE;
+    while (true) {
+      long afterId = after;
+      List<Long> ids = write((conn, delta) -> deleteOutdated(
+        conn, delta, afterId, cutoff));
+      total += ids.size();
+      if (ids.size() < RETENTION_CHUNK) {
+        break;
+      }
+      after = ids.get(ids.size() - 1);
+      Thread.yield();
     }
+    deleteOrphanedLinks();
+    long millis = Math.max(1L, (System.nanoTime() - start) / 1000000L);
+    log.info("Deleted {} outdated posts in {} ms ({} rows/s).",
+      total, millis, total * 1000L / millis);
+    return total;
   }
 
-  public void deletePost(long id) throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-            "DELETE FROM post WHERE id=?")) {
-      ps.setLong(1, id);
-      ps.executeUpdate();
+  /**
+   * Delete the next chunk of outdated posts with IDs above
+   * <code>afterId</code> along with their feed links.
+   * @return the IDs of the deleted posts, ascending
+   */
+  private static List<Long> deleteOutdated(Connection conn, PostCounts delta,
+    long afterId, Timestamp cutoff) throws SQLException {
+    List<Long> ids = new ArrayList<>();
+    try (PreparedStatement ps = Database.prepare(conn, "PostDao.deleteOutdated",
+      "SELECT post.id FROM post "
+      + "LEFT JOIN bookmarkedpost ON bookmarkedpost.post=post.id "
+      + "WHERE post.id>? AND post.read=true "
+      + "AND post.lastaccess<=? AND bookmarkedpost.post IS NULL "
+      + "ORDER BY post.id LIMIT ?")) {
+      ps.setLong(1, afterId);
+      ps.setTimestamp(2, cutoff);
+      ps.setInt(3, RETENTION_CHUNK);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          ids.add(rs.getLong(1));
+        }
+      }
+    }
+    if (!ids.isEmpty()) {
+      String in = inCondition(ids.size());
+      deletePosts(conn, delta, "post.id IN " + in, ids.toArray());
+      try (PreparedStatement ps = Database.prepare(conn,
+        "PostDao.deleteOutdated",
+        "DELETE FROM postfeed WHERE postfeed.post IN " + in)) {
+        setParameters(ps, ids.toArray());
+        ps.executeUpdate();
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Delete the feed links left behind by posts deleted without them, in
+   * chunks like {@link #deleteOutdated()}. Post IDs are not reused, so
+   * the links found are still orphaned when deleted.
+   */
+  private void deleteOrphanedLinks() throws SQLException {
+    long after = Long.MIN_VALUE;
+    while (true) {
+      List<Long> ids = new ArrayList<>();
+      try (Connection conn = db.readConnection();
+        PreparedStatement ps = Database.prepare(conn,
+          "PostDao.deleteOrphanedLinks",
+          "SELECT DISTINCT postfeed.post FROM postfeed "
+          + "LEFT JOIN post ON post.id=postfeed.post "
+          + "WHERE postfeed.post>? AND post.id IS NULL "
+          + "ORDER BY postfeed.post LIMIT ?")) {
+        ps.setLong(1, after);
+        ps.setInt(2, RETENTION_CHUNK);
+        try (ResultSet rs = ps.executeQuery()) {
+          while (rs.next()) {
+            ids.add(rs.getLong(1));
+          }
+        }
+      }
+      if (ids.isEmpty()) {
+        return;
+      }
+      write((conn, delta) -> {
+        try (PreparedStatement ps = Database.prepare(conn,
+          "PostDao.deleteOrphanedLinks",
+          "DELETE FROM postfeed WHERE postfeed.post IN "
+          + inCondition(ids.size()))) {
+          setParameters(ps, ids.toArray());
+          return ps.executeUpdate();
+        }
+      });
+      if (ids.size() < RETENTION_CHUNK) {
+        return;
+      }
+      after = ids.get(ids.size() - 1);
+      Thread.yield();
     }
   }
 
+  public void deletePost(long id) throws SQLException {
+    write((conn, delta) -> deletePosts(conn, delta, "post.id=?", id));
+  }
+
   public void deletePostsOfFeed(long feedId) throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-            "SELECT post.id FROM post " +
-            "INNER JOIN postfeed ON post.id=postfeed.post " +
-            "WHERE postfeed.feed=?")) {
-      ps.setLong(1, feedId);
+    write((conn, delta) -> {
+      deletePosts(conn, delta, "post.id IN "
+        + "(SELECT postfeed.post FROM postfeed WHERE postfeed.feed=?)", feedId);
+      try (PreparedStatement ps = Database.prepare(conn,
+        "PostDao.deletePostsOfFeed",
+        "DELETE FROM postfeed WHERE postfeed.feed=?")) {
+        ps.setLong(1, feedId);
+        ps.executeUpdate();
+      }
+      FeedStats.remove(conn, feedId);
+      return null;
+    });
+  }
+
+  /**
+   * Delete the posts matching a condition along with their share of the
+   * counters and the feed stats.
+   * @return the number of deleted posts
+   */
+  private static int deletePosts(Connection conn, PostCounts delta,
+    String condition, Object... params) throws SQLException {
+    int unread;
+    try (PreparedStatement ps = Database.prepare(conn, "PostDao.deletePosts",
+      "SELECT COUNT(id) FROM post "
+      + "WHERE post.read=false AND (" + condition + ")")) {
+      setParameters(ps, params);
       try (ResultSet rs = ps.executeQuery()) {
-        List<Post> posts = new ArrayList<>();
-        while (rs.next()) {
-          long id = rs.getLong(1);
-          deletePost(id);
-        }
+        rs.next();
+        unread = rs.getInt(1);
       }
     }
+    Set<Long> feeds = FeedStats.deleting(conn, condition, params);
+    int deleted;
+    try (PreparedStatement ps = Database.prepare(conn, "PostDao.deletePosts",
+      "DELETE FROM post WHERE " + condition)) {
+      setParameters(ps, params);
+      deleted = ps.executeUpdate();
+    }
+    FeedStats.refreshLastPost(conn, feeds);
+    delta.addPosts(-deleted, -unread);
+    return deleted;
+  }
 
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "DELETE FROM postfeed WHERE postfeed.feed=?")) {
-      ps.setLong(1, feedId);
-      ps.executeUpdate();
+  private static void setParameters(PreparedStatement ps, Object... params)
+    throws SQLException {
+    for (int i = 0; i < params.length; i++) {
+      ps.setObject(i + 1, params[i]);
     }
   }
 
   public int getFullCount() throws SQLException {
-    return getCount("");
+    return counts.getFull();
   }
 
   public int getBookmarksCount() throws SQLException {
-    Connection conn = db.getConnection();
-    try (PreparedStatement ps = conn.prepareStatement(
-      "SELECT COUNT(post) FROM bookmarkedpost")) {
-      try (ResultSet rs = ps.executeQuery()) {
-        rs.next();
-        return rs.getInt(1);
+    return counts.getBookmarks();
+  }
+
+  private void rebuildFeedStats() throws SQLException {
+    try (Connection conn = db.writeConnection()) {
+      FeedStats.rebuildIfEmpty(conn);
+    }
+  }
+
+  /**
+   * Correct the in-memory counters, should they ever have drifted from the
+   * tables.
+   */
+  public void reconcileCounts() throws SQLException {
+    try (Connection conn = db.writeConnection()) {
+      int unread = count(conn, "SELECT COUNT(id) FROM post WHERE post.read=false");
+      int full = count(conn, "SELECT COUNT(id) FROM post");
+      int bookmarks = count(conn, "SELECT COUNT(post) FROM bookmarkedpost");
+      if (counts.reset(unread, full, bookmarks)) {
+        log.warn("Corrected drifted post counters to {}.", counts);
+        countsChanged();
       }
     }
   }
 
   private int getCount(String appendix) throws SQLException {
-    Connection conn = db.getConnection();
-    try (PreparedStatement ps = conn.prepareStatement(
-      "SELECT COUNT(id) FROM post" + appendix)) {
+    try (Connection conn = db.readConnection()) {
+      return count(conn, "SELECT COUNT(id) FROM post" + appendix);
+    }
+  }
+
+  private static int count(Connection conn, String query)
+    throws SQLException {
+    try (PreparedStatement ps = Database.prepare(conn,
+      "PostDao.count", query)) {
       try (ResultSet rs = ps.executeQuery()) {
         rs.next();
         return rs.getInt(1);
@@ -205,27 +681,101 @@ public class PostDao {
   }
 
   public List<Post> getUnreadPosts(int num) throws SQLException {
-    Connection conn = db.getConnection();
     String appendix = "WHERE post.read=false ORDER BY post.date ASC";
     if (num > 0) {
       appendix += " LIMIT 0," + num;
     }
-    return loadPosts(conn, appendix);
+    return loadPosts(appendix);
   }
 
   public List<Post> getReadPosts(int num) throws SQLException {
-    Connection conn = db.getConnection();
     String appendix = "WHERE post.read=true ORDER BY post.date DESC";
     if (num > 0) {
       appendix += " LIMIT 0," + num;
     }
-    return loadPosts(conn, appendix);
+    return loadPosts(appendix);
   }
 
-  private List<Post> loadPosts(Connection conn, String appendix)
+  /**
+   * @param after last post of the previous page, <code>null</code> for the
+   * first page
+   * @return up to <code>num</code> unread posts, oldest first
+   */
+  public PostPage getUnreadPage(PostCursor after, int num)
     throws SQLException {
-    try (PreparedStatement ps = conn.prepareStatement(
-      selectPost(appendix))) {
+    return loadPage(selectPost("WHERE post.read=false"), 0,
+      "post.read", true, after, num);
+  }
+
+  /**
+   * @return up to <code>num</code> read posts, newest first
+   */
+  public PostPage getReadPage(PostCursor after, int num)
+    throws SQLException {
+    return loadPage(selectPost("WHERE post.read=true"), 0,
+      "post.read", false, after, num);
+  }
+
+  /**
+   * @return up to <code>num</code> bookmarked posts, oldest first
+   */
+  public PostPage getBookmarkedPage(PostCursor after, int num)
+    throws SQLException {
+    return loadPage(selectBookmarkedPost("WHERE TRUE"), 1,
+      null, true, after, num);
+  }
+
+  /**
+   * Load a page of posts ordered by date and ID, starting after a cursor.
+   * The date bound alone is a range on the index, so the query does not
+   * have to skip the preceding pages.
+   * @param offset number of columns before the post columns
+   * @param constant column that is the same in all selected posts, ordered
+   * by as well so an index starting with it delivers the order; may be
+   * <code>null</code>
+   */
+  private PostPage loadPage(String select, int offset, String constant,
+    boolean ascending, PostCursor after, int num) throws SQLException {
+    String order = ascending ? "ASC" : "DESC";
+    String query = select;
+    if (after != null) {
+      String cmp = ascending ? ">" : "<";
+      query += String.format(" AND post.date %s= ? "
+        + "AND (post.date %s ? OR post.id %s ?)", cmp, cmp, cmp);
+    }
+    query += String.format(" ORDER BY %spost.date %s,post.id %s LIMIT ?",
+      constant == null ? "" : constant + " " + order + ",", order, order);
+    try (Connection conn = db.readConnection();
+      PreparedStatement ps = Database.prepare(conn,
+        "PostDao.loadPage", query)) {
+      int i = 0;
+      if (after != null) {
+        Timestamp date = Database.toTimestamp(after.getDate());
+        ps.setTimestamp(++i, date);
+        ps.setTimestamp(++i, date);
+        ps.setLong(++i, after.getId());
+      }
+      // One more to tell whether there is a next page.
+      ps.setInt(++i, num + 1);
+      try (ResultSet rs = ps.executeQuery()) {
+        List<Post> posts = new ArrayList<>();
+        while (rs.next()) {
+          posts.add(parsePostResultSet(
+            rs, offset, offset == 0 ? null : rs.getLong(1)));
+        }
+        if (posts.size() <= num) {
+          return new PostPage(posts, null);
+        }
+        posts = posts.subList(0, num);
+        return new PostPage(posts, PostCursor.of(posts.get(num - 1)));
+      }
+    }
+  }
+
+  private List<Post> loadPosts(String appendix) throws SQLException {
+    try (Connection conn = db.readConnection();
+      PreparedStatement ps = Database.prepare(conn,
+        "PostDao.loadPosts", selectPost(appendix))) {
       try (ResultSet rs = ps.executeQuery()) {
         List<Post> posts = new ArrayList<>();
         while (rs.next()) {
@@ -237,34 +787,32 @@ public class PostDao {
   }
 
   public List<Post> postsAfter(long sinceId) throws SQLException {
-    Connection conn = db.getConnection();
     String appendix = String.format(
       "WHERE post.id > %d ORDER BY post.id ASC", sinceId);
-    return loadPosts(conn, appendix);
+    return loadPosts(appendix);
   }
 
   public List<Post> postsBefore(long maxId) throws SQLException {
-    Connection conn = db.getConnection();
     String appendix = String.format(
       "WHERE post.id < %d ORDER BY post.id ASC", maxId);
-    return loadPosts(conn, appendix);
+    return loadPosts(appendix);
   }
 
   public List<Post> posts(List<Long> withIds) throws SQLException {
     String idString = withIds.toString();
     idString = idString.substring(1, idString.length()-1);
-    Connection conn = db.getConnection();
     String appendix = String.format(
       "WHERE post.id IN (%s) ORDER BY post.id ASC", idString);
-    return loadPosts(conn, appendix);
+    return loadPosts(appendix);
   }
 
   public List<Post> getBookmarkedPosts() throws SQLException {
-    Connection conn = db.getConnection();
     String appendix =
         "ORDER BY post.date ASC";
-    try (PreparedStatement ps = conn.prepareStatement(
-      selectBookmarkedPost(appendix))) {
+    try (Connection conn = db.readConnection();
+      PreparedStatement ps = Database.prepare(conn,
+        "PostDao.getBookmarkedPosts",
+        selectBookmarkedPost(appendix))) {
       try (ResultSet rs = ps.executeQuery()) {
         List<Post> posts = new ArrayList<>();
         while (rs.next()) {
@@ -277,8 +825,7 @@ public class PostDao {
   }
 
   private static String selectPost(String appendix) {
-    return "SELECT "
-      + "post.id,post.date,post.location,post.snippet,post.title,post.read,"
+    return "SELECT " + POST_COLUMNS
       + "feed.id,feed.location,feed.title,feed.lastAccess,feed.lastStatus "
       + "FROM post "
       + "LEFT JOIN postfeed ON post.id=postfeed.post "
@@ -288,8 +835,7 @@ public class PostDao {
 
   private static String selectBookmarkedPost(String appendix) {
     return "SELECT "
-      + "bookmarkedpost.post,"
-      + "post.id,post.date,post.location,post.snippet,post.title,post.read,"
+      + "bookmarkedpost.post," + POST_COLUMNS
       + "feed.id,feed.location,feed.title,feed.lastAccess,feed.lastStatus "
       + "FROM bookmarkedpost "
       + "LEFT JOIN post ON bookmarkedpost.post=post.id "
@@ -314,31 +860,57 @@ public class PostDao {
     String snippet = rs.getString(++index);
     String title = rs.getString(++index);
     boolean read = rs.getBoolean(++index);
+    String displayTitle = rs.getString(++index);
+    String displaySnippet = rs.getString(++index);
     long feedId = rs.getLong(++index);
     String feedLocation = rs.getString(++index);
     String feedTitle = rs.getString(++index);
     Date feedLastAccess = rs.getTimestamp(++index);
     String feedLastStatus = rs.getString(++index);
     return new Post(id, location, date, title, snippet, read,
-      new Feed(feedId, feedLocation, feedTitle, feedLastAccess, feedLastStatus));
+      new Feed(feedId, feedLocation, feedTitle, feedLastAccess, feedLastStatus),
+      displayTitle, displaySnippet);
   }
 
-  private void updatePostById(Post post) throws SQLException {
-    Connection conn = db.getConnection();
-    try (PreparedStatement ps = conn.prepareStatement(
+  private static void updatePostById(Connection conn, Post post,
+    PostCounts delta) throws SQLException {
+    Boolean wasRead = null;
+    Date oldDate = null;
+    try (PreparedStatement ps = Database.prepare(conn, "PostDao.updatePostById",
+      "SELECT read,date FROM post WHERE id=?")) {
+      ps.setLong(1, post.getId());
+      try (ResultSet rs = ps.executeQuery()) {
+        if (rs.next()) {
+          wasRead = rs.getBoolean(1);
+          oldDate = rs.getTimestamp(2);
+        }
+      }
+    }
+    if (wasRead != null && wasRead != post.isRead()) {
+      delta.addUnread(post.isRead() ? -1 : 1);
+      FeedStats.readStateChanging(
+        conn, post.isRead(), "post.id=?", post.getId());
+    }
+    try (PreparedStatement ps = Database.prepare(conn, "PostDao.updatePostById",
       "UPDATE post "
-      + "SET date=?,location=?,snippet=?,title=?,read=?,lastaccess=? "
+      + "SET date=?,location=?,snippet=?,title=?,read=?,lastaccess=?,"
+      + "locationhash=?,titlehash=?,displaytitle=?,displaysnippet=? "
       + "WHERE id=?")) {
       int index = preparePostStatement(ps, post);
       ps.setLong(++index, post.getId());
       ps.executeUpdate();
     }
+    if (wasRead != null && !Objects.equals(
+      oldDate, Database.toTimestamp(post.getDate()))) {
+      FeedStats.refreshLastPost(
+        conn, FeedStats.feedsOf(conn, "post.id=?", post.getId()));
+    }
     log.debug("Updated post {} with ID {}.", post.getLocation(), post.getId());
   }
 
-  private void touchPost(Post post) throws SQLException {
-    Connection conn = db.getConnection();
-    try (PreparedStatement ps = conn.prepareStatement(
+  private static void touchPost(Connection conn, Post post)
+    throws SQLException {
+    try (PreparedStatement ps = Database.prepare(conn, "PostDao.touchPost",
       "UPDATE post SET lastaccess=? WHERE id=?")) {
       int index = 0;
       ps.setTimestamp(++index, Database.toTimestamp(new Date()));
@@ -348,12 +920,11 @@ public class PostDao {
     log.debug("Touched post {} with ID {}.", post.getLocation(), post.getId());
   }
 
-  private Post insertPost(Post post) throws SQLException {
-    Connection conn = db.getConnection();
+  private static Post insertPost(Connection conn, Post post)
+    throws SQLException {
     log.debug("Insert post " + post.getLocation());
-    try (PreparedStatement ps = conn.prepareStatement(
-      "INSERT INTO post (date,location,snippet,title,read,lastaccess) "
-      + "VALUES (?,?,?,?,?,?)", Statement.RETURN_GENERATED_KEYS)) {
+    try (PreparedStatement ps = Database.prepare(conn, "PostDao.insertPost",
+      INSERT_POST, Statement.RETURN_GENERATED_KEYS)) {
       preparePostStatement(ps, post);
       ps.executeUpdate();
       post = new Post(Database.getGeneratedKey(ps), post);
@@ -362,7 +933,7 @@ public class PostDao {
     return post;
   }
 
-  private int preparePostStatement(PreparedStatement ps, Post post)
+  private static int preparePostStatement(PreparedStatement ps, Post post)
     throws SQLException {
     int index = 0;
     ps.setTimestamp(++index, Database.toTimestamp(post.getDate()));
@@ -371,10 +942,15 @@ public class PostDao {
     ps.setString(++index, post.getTitle());
     ps.setBoolean(++index, post.isRead());
     ps.setTimestamp(++index, Database.toTimestamp(new Date()));
+    ps.setLong(++index, PostKeys.locationHash(post.getLocation()));
+    ps.setLong(++index, PostKeys.titleHash(post.getTitle()));
+    Post display = post.withDisplayText();
+    ps.setString(++index, display.getDisplayTitle());
+    ps.setString(++index, display.getDisplaySnippet());
     return index;
   }
 
-  private String shorten(String snippet, int len) {
+  private static String shorten(String snippet, int len) {
     if (snippet.length() > len) {
       return snippet.substring(0, len);
     }
@@ -382,8 +958,9 @@ public class PostDao {
   }
 
   private int createPostTable() throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "CREATE TABLE IF NOT EXISTS post ("
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "PostDao.createPostTable",
+        "CREATE TABLE IF NOT EXISTS post ("
         + "id BIGINT PRIMARY KEY AUTO_INCREMENT,"
         + "date DATETIME,"
         + "location VARCHAR(2048),"
@@ -391,41 +968,180 @@ public class PostDao {
         + "title VARCHAR(1024),"
         + "read TINYINT,"
         + "lastaccess DATETIME"
-      + ")")) {
+        + ")")) {
       return ps.executeUpdate();
     }
   }
 
   private void addLastaccessColumn() throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "ALTER TABLE post "
-      + "ADD COLUMN IF NOT EXISTS lastaccess DATETIME DEFAULT ?")) {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn,
+        "PostDao.addLastaccessColumn",
+        "ALTER TABLE post "
+        + "ADD COLUMN IF NOT EXISTS lastaccess DATETIME DEFAULT ?")) {
       ps.setTimestamp(1, Database.toTimestamp(new Date()));
       ps.executeUpdate();
     }
   }
 
+  private void addKeyColumns() throws SQLException {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "PostDao.addKeyColumns",
+        "ALTER TABLE post ADD COLUMN IF NOT EXISTS locationhash BIGINT")) {
+      ps.executeUpdate();
+    }
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "PostDao.addKeyColumns",
+        "ALTER TABLE post ADD COLUMN IF NOT EXISTS titlehash BIGINT")) {
+      ps.executeUpdate();
+    }
+  }
+
+  private void addDisplayColumns() throws SQLException {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "PostDao.addDisplayColumns",
+        "ALTER TABLE post "
+        + "ADD COLUMN IF NOT EXISTS displaytitle VARCHAR(8192)")) {
+      ps.executeUpdate();
+    }
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "PostDao.addDisplayColumns",
+        "ALTER TABLE post "
+        + "ADD COLUMN IF NOT EXISTS displaysnippet VARCHAR(2048)")) {
+      ps.executeUpdate();
+    }
+  }
+
+  /**
+   * Compute the display texts of posts stored before they were introduced,
+   * in chunks of {@value #BACKFILL_CHUNK} posts. The texts are computed
+   * outside of the write connection, which is held for the updates only.
+   * Until then the posts are rendered the expensive way.
+   * @return number of updated posts
+   */
+  public int backfillDisplayText() throws SQLException {
+    long lastId = -1L;
+    int total = 0;
+    while (true) {
+      List<Post> chunk = new ArrayList<>();
+      try (Connection conn = db.readConnection();
+        PreparedStatement ps = Database.prepare(conn,
+          "PostDao.backfillDisplayText",
+          "SELECT id,title,snippet FROM post "
+          + "WHERE displaytitle IS NULL AND id>? ORDER BY id LIMIT ?")) {
+        ps.setLong(1, lastId);
+        ps.setInt(2, BACKFILL_CHUNK);
+        try (ResultSet rs = ps.executeQuery()) {
+          while (rs.next()) {
+            chunk.add(new Post(rs.getLong(1), null, null, rs.getString(2),
+              rs.getString(3), false, null).withDisplayText());
+          }
+        }
+      }
+      if (chunk.isEmpty()) {
+        break;
+      }
+      lastId = chunk.get(chunk.size() - 1).getId();
+      try (Connection conn = db.writeConnection();
+        PreparedStatement ps = Database.prepare(conn,
+          "PostDao.backfillDisplayText",
+          "UPDATE post SET displaytitle=?,displaysnippet=? "
+          + "WHERE id=? AND displaytitle IS NULL")) {
+        for (Post post : chunk) {
+          ps.setString(1, post.getDisplayTitle());
+          ps.setString(2, post.getDisplaySnippet());
+          ps.setLong(3, post.getId());
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+      total += chunk.size();
+    }
+    if (total > 0) {
+      log.info("Computed display texts of {} posts.", total);
+    }
+    return total;
+  }
+
+  /**
+   * Compute the hash keys of posts stored before they were introduced, in
+   * chunks of {@value #BACKFILL_CHUNK} posts per transaction.
+   */
+  private void backfillKeys() throws SQLException {
+    try (Connection conn = db.writeConnection()) {
+      backfillKeys(conn);
+    }
+  }
+
+  private void backfillKeys(Connection conn) throws SQLException {
+    long lastId = -1L;
+    int total = 0;
+    boolean autoCommit = conn.getAutoCommit();
+    conn.setAutoCommit(false);
+    try (PreparedStatement select = Database.prepare(conn,
+        "PostDao.backfillKeys",
+        "SELECT id,location,title FROM post "
+        + "WHERE locationhash IS NULL AND id>? ORDER BY id LIMIT ?");
+      PreparedStatement update = Database.prepare(conn, "PostDao.backfillKeys",
+        "UPDATE post SET locationhash=?,titlehash=? WHERE id=?")) {
+      while (true) {
+        select.setLong(1, lastId);
+        select.setInt(2, BACKFILL_CHUNK);
+        int num = 0;
+        try (ResultSet rs = select.executeQuery()) {
+          while (rs.next()) {
+            lastId = rs.getLong(1);
+            update.setLong(1, PostKeys.locationHash(rs.getString(2)));
+            update.setLong(2, PostKeys.titleHash(rs.getString(3)));
+            update.setLong(3, lastId);
+            update.addBatch();
+            num++;
+          }
+        }
+        if (num == 0) {
+          break;
+        }
+        update.executeBatch();
+        conn.commit();
+        total += num;
+      }
+    } catch (SQLException | RuntimeException e) {
+      conn.rollback();
+      throw e;
+    } finally {
+      conn.setAutoCommit(autoCommit);
+    }
+    if (total > 0) {
+      log.info("Computed hash keys of {} posts.", total);
+    }
+  }
+
   private int createPostFeedTable() throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "CREATE TABLE IF NOT EXISTS postfeed ("
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn,
+        "PostDao.createPostFeedTable",
+        "CREATE TABLE IF NOT EXISTS postfeed ("
         + "post BIGINT,"
         + "feed BIGINT"
-      + ")")) {
+        + ")")) {
       return ps.executeUpdate();
     }
   }
 
   private int createBookmarkTable() throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "CREATE TABLE IF NOT EXISTS bookmarkedpost ("
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn,
+        "PostDao.createBookmarkTable",
+        "CREATE TABLE IF NOT EXISTS bookmarkedpost ("
         + "post BIGINT"
-      + ")")) {
+        + ")")) {
       return ps.executeUpdate();
     }
   }
 
-  private boolean existsPostFeed(Post post, Feed feed) throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
+  private static boolean existsPostFeed(
+    Connection conn, Post post, Feed feed) throws SQLException {
+    try (PreparedStatement ps = Database.prepare(conn, "PostDao.existsPostFeed",
       "SELECT post, feed FROM postfeed WHERE post=? AND feed=?")) {
       ps.setLong(1, post.getId());
       ps.setLong(2, feed.getId());
@@ -433,58 +1149,176 @@ public class PostDao {
     }
   }
 
-  private void savePostFeed(Post post, Feed feed) throws SQLException {
-    if (!existsPostFeed(post, feed)) {
-      try (PreparedStatement ps = db.getConnection().prepareStatement(
+  private static void savePostFeed(Connection conn, Post post, Feed feed)
+    throws SQLException {
+    if (!existsPostFeed(conn, post, feed)) {
+      try (PreparedStatement ps = Database.prepare(conn, "PostDao.savePostFeed",
         "INSERT INTO postfeed (post, feed) VALUES (?, ?)")) {
         ps.setLong(1, post.getId());
         ps.setLong(2, feed.getId());
         ps.executeUpdate();
       }
+      FeedStats.linked(
+        conn, feed.getId(), Collections.singletonList(post.getId()));
     }
   }
 
   public void markPostsRead(List<Long> postIds) throws SQLException {
-    int num = postIds.size();
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "UPDATE post SET post.read=true WHERE post.id IN " + inCondition(num))) {
-      int i = 0;
-      for (Long postId : postIds) {
-        ps.setLong(++i, postId);
-      }
-      ps.executeUpdate();
-    }
+    String condition = "post.id IN " + inCondition(postIds.size());
+    markRead(true, condition, postIds.toArray());
   }
 
   public void markPostRead(long postId) throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "UPDATE post SET post.read=true WHERE post.id=?")) {
-      ps.setLong(1, postId);
-      ps.executeUpdate();
-    }
+    markRead(true, "post.id=?", postId);
   }
 
   public void markPostUnread(long postId) throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "UPDATE post SET post.read=false WHERE post.id=?")) {
-      ps.setLong(1, postId);
-      ps.executeUpdate();
+    markRead(false, "post.id=?", postId);
+  }
+
+  /**
+   * Set the read state of the posts matching a condition, along with the
+   * counters and the feed stats.
+   */
+  private int markRead(boolean read, String condition, Object... params)
+    throws SQLException {
+    return write((conn, delta) -> {
+      FeedStats.readStateChanging(conn, read, condition, params);
+      try (PreparedStatement ps = Database.prepare(conn, "PostDao.markRead",
+        "UPDATE post SET post.read=? "
+        + "WHERE post.read=? AND (" + condition + ")")) {
+        ps.setBoolean(1, read);
+        ps.setBoolean(2, !read);
+        for (int i = 0; i < params.length; i++) {
+          ps.setObject(i + 3, params[i]);
+        }
+        int changed = ps.executeUpdate();
+        delta.addUnread(read ? -changed : changed);
+        return changed;
+      }
+    });
+  }
+
+  /**
+   * Mark the unread posts a filter blocks read. What SQL can tell is left
+   * to the database, in one update if that is all. Regular expressions are
+   * checked on the posts the database finds, in chunks of
+   * {@value #BACKFILL_CHUNK}, by <code>blocks</code>.
+   * @param blocks tells if the filter blocks a post with ID, title and
+   * location
+   * @return the number of posts marked read
+   */
+  public int markFilteredRead(Filter filter, Predicate<Post> blocks)
+    throws SQLException {
+    List<String> conditions = new ArrayList<>();
+    List<Object> params = new ArrayList<>();
+    boolean exact = filterCondition("post.title", filter.getTitleMatch(),
+      filter.getTitle(), conditions, params);
+    exact &= filterCondition("post.location", filter.getUrlMatch(),
+      filter.getUrl(), conditions, params);
+    String condition = conditions.isEmpty()
+      ? "TRUE" : String.join(" AND ", conditions);
+    if (exact) {
+      return markRead(true, condition, params.toArray());
     }
+    long lastId = -1L;
+    int total = 0;
+    while (true) {
+      List<Long> blocked = new ArrayList<>();
+      try (Connection conn = db.readConnection();
+        PreparedStatement ps = Database.prepare(conn,
+          "PostDao.markFilteredRead",
+          "SELECT post.id,post.title,post.location FROM post "
+          + "WHERE post.read=false AND (" + condition + ") AND post.id>? "
+          + "ORDER BY post.id LIMIT ?")) {
+        int i = 0;
+        for (Object param : params) {
+          ps.setObject(++i, param);
+        }
+        ps.setLong(++i, lastId);
+        ps.setInt(++i, BACKFILL_CHUNK);
+        int found = 0;
+        try (ResultSet rs = ps.executeQuery()) {
+          while (rs.next()) {
+            found++;
+            lastId = rs.getLong(1);
+            Post post = new Post(lastId, rs.getString(3), null,
+              rs.getString(2), null, false, null);
+            if (blocks.test(post)) {
+              blocked.add(lastId);
+            }
+          }
+        }
+        if (found == 0) {
+          break;
+        }
+      }
+      if (!blocked.isEmpty()) {
+        total += markRead(true,
+          "post.id IN " + inCondition(blocked.size()), blocked.toArray());
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Add the condition of a filter on a column that SQL can check.
+   * @return <code>true</code> if that is the whole condition
+   */
+  private static boolean filterCondition(String column, FilterMatch match,
+    String pattern, List<String> conditions, List<Object> params) {
+    String text = pattern == null ? "" : pattern;
+    String like;
+    switch (match) {
+      case IGNORE:
+        return true;
+      case STARTS_WITH:
+        like = escapeLike(text) + "%";
+        break;
+      case ENDS_WITH:
+        like = "%" + escapeLike(text);
+        break;
+      case CONTAINS:
+        like = "%" + escapeLike(text) + "%";
+        break;
+      default:
+        String literal = FilterMatch.requiredLiteral(text);
+        if (literal != null) {
+          conditions.add(column + " LIKE ? ESCAPE '\\'");
+          params.add("%" + escapeLike(literal) + "%");
+        } else {
+          conditions.add(column + " IS NOT NULL");
+        }
+        return false;
+    }
+    conditions.add(column + " LIKE ? ESCAPE '\\'");
+    params.add(like);
+    return true;
+  }
+
+  private static String escapeLike(String text) {
+    return text.replace("\\", "\\\\").replace("%", "\\%")
+      .replace("_", "\\_");
   }
 
   public void bookmarkPost(long postId) throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "INSERT INTO bookmarkedpost (post) VALUES (?)")) {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn, "PostDao.bookmarkPost",
+        "INSERT INTO bookmarkedpost (post) VALUES (?)")) {
       ps.setLong(1, postId);
-      ps.executeUpdate();
+      counts.addBookmarks(ps.executeUpdate());
+      countsChanged();
     }
   }
 
   public void removeBookmarkPost(long postId) throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "DELETE FROM bookmarkedpost WHERE post=?")) {
+    try (Connection conn = db.writeConnection();
+      PreparedStatement ps = Database.prepare(conn,
+        "PostDao.removeBookmarkPost",
+        "DELETE FROM bookmarkedpost WHERE post=?")) {
       ps.setLong(1, postId);
-      ps.executeUpdate();
+      counts.addBookmarks(-ps.executeUpdate());
+      countsChanged();
     }
   }
 
@@ -497,11 +1331,7 @@ public class PostDao {
   }
 
   public void markAllRead(Date before) throws SQLException {
-    try (PreparedStatement ps = db.getConnection().prepareStatement(
-      "UPDATE post SET post.read=true WHERE post.date < ?")) {
-      ps.setTimestamp(1, Database.toTimestamp(before));
-      ps.executeUpdate();
-    }
+    markRead(true, "post.date < ?", Database.toTimestamp(before));
   }
 
 }
@@ -0,0 +1,58 @@
+package fiets.db;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Fixed-width keys for looking up duplicate posts: 64 bit FNV-1a hashes of the
+ * location and of the normalized title. Hashes may collide, lookups have to
+ * compare the actual values as well.
+ */
+final class PostKeys {
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  static long locationHash(String location) {
+    return fnv1a(location == null ? "" : location);
+  }
+
+  static long titleHash(String title) {
+    return fnv1a(normalizeTitle(title));
+  }
+
+  /**
+   * Titles are compared trimmed, with whitespace collapsed and lower case.
+   */
+  static String normalizeTitle(String title) {
+    if (title == null) {
+      return "";
+    }
+    StringBuilder sb = new StringBuilder(title.length());
+    boolean space = false;
+    for (int i = 0; i < title.length(); i++) {
+      char c = title.charAt(i);
+      if (Character.isWhitespace(c)) {
+        space = sb.length() > 0;
+      } else {
+        if (space) {
+          sb.append(' ');
+          space = false;
+        }
+        sb.append(c);
+      }
+    }
+    return sb.toString().toLowerCase(Locale.ROOT);
+  }
+
+  private static long fnv1a(String s) {
+    long hash = FNV_OFFSET;
+    for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b & 0xff;
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+  private PostKeys() {}
+}
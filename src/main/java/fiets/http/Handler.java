@@ -0,0 +1,10 @@
+package fiets.http;
+
+/**
+ * Answers the requests of a {@link Transport}, called by one thread per
+ * request. Failures are expected to be answered by an error response.
+ */
+@FunctionalInterface
+public interface Handler {
+  Response handle(Request request);
+}
@@ -0,0 +1,171 @@
+package fiets.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the handler on the HTTP server of the JDK with a virtual thread per
+ * request, so waiting requests and open event streams only cost memory.
+ * Form bodies are limited to <code>fiets.http.maxFormBytes</code> (default
+ * 1 MB).
+ */
+public class JdkTransport implements Transport {
+
+  private static final Logger log = LogManager.getLogger();
+  private static final int MAX_FORM_BYTES =
+    Integer.getInteger("fiets.http.maxFormBytes", 1024 * 1024);
+
+  private HttpServer server;
+  private ExecutorService executor;
+
+  @Override public void start(int port, Handler handler) throws IOException {
+    // Read by the JDK server on first use; chunks wait for Nagle without.
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+    server = HttpServer.create(new InetSocketAddress(port), 0);
+    executor = Executors.newThreadPerTaskExecutor(
+      Thread.ofVirtual().name("fiets-http-", 0).factory());
+    server.setExecutor(executor);
+    server.createContext("/", exchange -> handle(exchange, handler));
+    server.start();
+  }
+
+  @Override public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  @Override public void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  @Override public String toString() {
+    return "JDK HttpServer";
+  }
+
+  private static void handle(HttpExchange exchange, Handler handler) {
+    try (exchange) {
+      send(exchange, handler.handle(new JdkRequest(exchange)));
+    } catch (IOException e) {
+      // The client went away.
+      log.debug("Could not send response: {}", e.getMessage());
+    } catch (RuntimeException e) {
+      log.error("Could not send response: {}", e.getMessage(), e);
+    }
+  }
+
+  private static void send(HttpExchange exchange, Response rsp)
+    throws IOException {
+    Headers headers = exchange.getResponseHeaders();
+    if (rsp.getMimeType() != null) {
+      headers.set("Content-Type", rsp.getMimeType());
+    }
+    rsp.getHeaders().forEach(headers::set);
+    int code = rsp.getStatus().getCode();
+    if (code == Status.NOT_MODIFIED.getCode()
+      || exchange.getRequestMethod().equals("HEAD")) {
+      exchange.sendResponseHeaders(code, -1);
+      rsp.discard();
+      return;
+    }
+    // For the JDK server 0 means chunked and -1 no body.
+    long length = rsp.getLength();
+    exchange.sendResponseHeaders(code, length == 0 ? -1 : Math.max(length, 0));
+    try (OutputStream out = exchange.getResponseBody()) {
+      rsp.writeTo(out);
+    }
+  }
+
+  private static class JdkRequest implements Request {
+    private final HttpExchange exchange;
+    private final Map<String, List<String>> parameters = new HashMap<>();
+
+    private JdkRequest(HttpExchange theExchange) {
+      exchange = theExchange;
+      decodeParameters(exchange.getRequestURI().getRawQuery(), parameters);
+    }
+
+    @Override public String getMethod() {
+      return exchange.getRequestMethod();
+    }
+
+    @Override public String getUri() {
+      return exchange.getRequestURI().getPath();
+    }
+
+    @Override public Map<String, List<String>> getParameters() {
+      return parameters;
+    }
+
+    @Override public String getHeader(String name) {
+      return exchange.getRequestHeaders().getFirst(name);
+    }
+
+    @Override public void parseBody() throws IOException {
+      String type = getHeader("Content-Type");
+      if (type == null || !type.toLowerCase(Locale.ENGLISH)
+        .startsWith("application/x-www-form-urlencoded")) {
+        return;
+      }
+      try (InputStream in = exchange.getRequestBody()) {
+        byte[] body = in.readNBytes(MAX_FORM_BYTES + 1);
+        if (body.length > MAX_FORM_BYTES) {
+          throw new IllegalArgumentException("Form body too large.");
+        }
+        decodeParameters(
+          new String(body, StandardCharsets.UTF_8), parameters);
+      }
+    }
+  }
+
+  /**
+   * Decode parameters the way NanoHTTPD does: names are trimmed, a name
+   * without value gets no value.
+   */
+  static void decodeParameters(
+    String encoded, Map<String, List<String>> parameters) {
+    if (encoded == null) {
+      return;
+    }
+    StringTokenizer st = new StringTokenizer(encoded, "&");
+    while (st.hasMoreTokens()) {
+      String pair = st.nextToken();
+      int sep = pair.indexOf('=');
+      String name = decode(sep >= 0 ? pair.substring(0, sep) : pair).trim();
+      List<String> values =
+        parameters.computeIfAbsent(name, n -> new ArrayList<>());
+      if (sep >= 0) {
+        values.add(decode(pair.substring(sep + 1)));
+      }
+    }
+  }
+
+  private static String decode(String value) {
+    try {
+      return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      // Kept as sent rather than failing the whole request.
+      return value;
+    }
+  }
+}
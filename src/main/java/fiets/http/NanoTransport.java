@@ -0,0 +1,133 @@
+package fiets.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.ResponseException;
+
+/**
+ * Runs the handler on NanoHTTPD, which starts a platform thread for each
+ * connection.
+ */
+public class NanoTransport implements Transport {
+
+  private NanoHTTPD server;
+
+  @Override public void start(int port, Handler handler) throws IOException {
+    server = new NanoHTTPD(port) {
+      @Override public Response serve(IHTTPSession session) {
+        return toNano(handler.handle(new NanoRequest(session)));
+      }
+
+      /**
+       * Responses are compressed by the handler already, where the size is
+       * known and compressed variants can be reused.
+       */
+      @Override protected boolean useGzipWhenAccepted(Response r) {
+        return false;
+      }
+    };
+    server.setServerSocketFactory(noDelaySockets());
+    server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+  }
+
+  @Override public int getPort() {
+    return server.getListeningPort();
+  }
+
+  @Override public void stop() {
+    server.stop();
+  }
+
+  @Override public String toString() {
+    return "NanoHTTPD";
+  }
+
+  private static NanoHTTPD.Response toNano(fiets.http.Response rsp) {
+    NanoHTTPD.Response.IStatus status = status(rsp.getStatus());
+    NanoHTTPD.Response nano;
+    try {
+      nano = rsp.isChunked()
+        ? NanoHTTPD.newChunkedResponse(
+          status, rsp.getMimeType(), rsp.getData())
+        : NanoHTTPD.newFixedLengthResponse(
+          status, rsp.getMimeType(), rsp.getData(), rsp.getLength());
+    } catch (IOException e) {
+      nano = NanoHTTPD.newFixedLengthResponse(
+        status(Status.INTERNAL_ERROR), NanoHTTPD.MIME_PLAINTEXT,
+        new ByteArrayInputStream(new byte[0]), 0);
+    }
+    for (Map.Entry<String, String> header : rsp.getHeaders().entrySet()) {
+      nano.addHeader(header.getKey(), header.getValue());
+    }
+    return nano;
+  }
+
+  private static NanoHTTPD.Response.IStatus status(Status status) {
+    return new NanoHTTPD.Response.IStatus() {
+      @Override public String getDescription() {
+        return status.getDescription();
+      }
+
+      @Override public int getRequestStatus() {
+        return status.getCode();
+      }
+    };
+  }
+
+  /**
+   * Chunked responses reach the socket as several small writes per chunk,
+   * which Nagle's algorithm would hold back until the previous ones are
+   * acknowledged.
+   */
+  private static NanoHTTPD.ServerSocketFactory noDelaySockets() {
+    return () -> new ServerSocket() {
+      @Override public Socket accept() throws IOException {
+        Socket socket = super.accept();
+        socket.setTcpNoDelay(true);
+        return socket;
+      }
+    };
+  }
+
+  private static class NanoRequest implements Request {
+    private final IHTTPSession session;
+
+    private NanoRequest(IHTTPSession theSession) {
+      session = theSession;
+    }
+
+    @Override public String getMethod() {
+      return session.getMethod().name();
+    }
+
+    @Override public String getUri() {
+      return session.getUri();
+    }
+
+    @Override public Map<String, List<String>> getParameters() {
+      return session.getParameters();
+    }
+
+    @Override public String getHeader(String name) {
+      // NanoHTTPD keeps the header names in lower case.
+      return session.getHeaders().get(name.toLowerCase(Locale.ENGLISH));
+    }
+
+    @Override public void parseBody() throws IOException {
+      try {
+        session.parseBody(new HashMap<>());
+      } catch (ResponseException e) {
+        throw new IOException(e.getMessage(), e);
+      }
+    }
+  }
+}
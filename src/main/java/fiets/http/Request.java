@@ -0,0 +1,36 @@
+package fiets.http;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A request as received by a {@link Transport}.
+ */
+public interface Request {
+
+  String getMethod();
+
+  /**
+   * @return the decoded path, without the query
+   */
+  String getUri();
+
+  /**
+   * @return the query parameters, along with the form parameters of the
+   * body once it was parsed; a parameter without a value has no values
+   */
+  Map<String, List<String>> getParameters();
+
+  /**
+   * @param name the header name, in any case
+   * @return the value of the header, <code>null</code> if missing
+   */
+  String getHeader(String name);
+
+  /**
+   * Read the form parameters of the body into the
+   * {@link #getParameters() parameters}.
+   */
+  void parseBody() throws IOException;
+}
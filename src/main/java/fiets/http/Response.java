@@ -0,0 +1,180 @@
+package fiets.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A response, independent of the {@link Transport} sending it. The body is
+ * either known in full, read from a stream or written by a {@link Body} while
+ * it is sent; the latter two are sent chunked.
+ */
+public final class Response {
+
+  private static final Logger log = LogManager.getLogger();
+  private static final int PIPE_BUFFER = 64 * 1024;
+
+  /**
+   * Writes a body to the connection, or to a pipe if the transport needs a
+   * stream to read from.
+   */
+  @FunctionalInterface
+  public interface Body {
+    void writeTo(OutputStream out) throws IOException;
+  }
+
+  private final Status status;
+  private final String mimeType;
+  private final byte[] data;
+  private final InputStream stream;
+  private final Body body;
+  private final Map<String, String> headers =
+    new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+  private Response(Status theStatus, String theMimeType, byte[] theData,
+    InputStream theStream, Body theBody) {
+    status = theStatus;
+    mimeType = theMimeType;
+    data = theData;
+    stream = theStream;
+    body = theBody;
+  }
+
+  public static Response fixed(Status status, String mimeType, byte[] data) {
+    return new Response(status, mimeType, data, null, null);
+  }
+
+  public static Response fixed(Status status, String mimeType, String text) {
+    return fixed(status, mimeType, text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @param in sent until its end, then closed; also closed if the client
+   * goes away
+   */
+  public static Response chunked(
+    Status status, String mimeType, InputStream in) {
+    return new Response(status, mimeType, null, in, null);
+  }
+
+  public static Response streamed(Status status, String mimeType, Body body) {
+    return new Response(status, mimeType, null, null, body);
+  }
+
+  public Response addHeader(String name, String value) {
+    headers.put(name, value);
+    return this;
+  }
+
+  /**
+   * @param name the header name, in any case
+   */
+  public String getHeader(String name) {
+    return headers.get(name);
+  }
+
+  public Map<String, String> getHeaders() {
+    return Collections.unmodifiableMap(headers);
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public String getMimeType() {
+    return mimeType;
+  }
+
+  /**
+   * @return <code>true</code> if the length is unknown ahead
+   */
+  public boolean isChunked() {
+    return data == null;
+  }
+
+  /**
+   * @return the length of the body, -1 if it is chunked
+   */
+  public long getLength() {
+    return data == null ? -1 : data.length;
+  }
+
+  /**
+   * Send the body to the client, flushing along with a chunked body so it
+   * leaves in the pieces it is produced in. Closes the stream of a chunked
+   * response.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    if (data != null) {
+      out.write(data);
+    } else if (stream != null) {
+      try (InputStream in = stream) {
+        byte[] buffer = new byte[16 * 1024];
+        int num;
+        while ((num = in.read(buffer)) >= 0) {
+          out.write(buffer, 0, num);
+          out.flush();
+        }
+      }
+    } else {
+      body.writeTo(out);
+    }
+    out.flush();
+  }
+
+  /**
+   * Give up the body without sending it, e.g. for a HEAD request. Closes
+   * the stream of a chunked response; a written body is not written at all.
+   */
+  public void discard() throws IOException {
+    if (stream != null) {
+      stream.close();
+    }
+  }
+
+  /**
+   * @return the body to read; a written body is rendered into a pipe by a
+   * virtual thread meanwhile, so the first part goes out before the rest is
+   * written and the body is never held in memory as a whole
+   */
+  public InputStream getData() throws IOException {
+    if (data != null) {
+      return new ByteArrayInputStream(data);
+    } else if (stream != null) {
+      return stream;
+    }
+    PipedInputStream in = new PipedInputStream(PIPE_BUFFER);
+    PipedOutputStream out = new PipedOutputStream(in);
+    Thread.ofVirtual().name("fiets-render").start(() -> {
+      try {
+        body.writeTo(out);
+      } catch (IOException e) {
+        // The client went away, the pipe was closed by the sender.
+        log.debug("Stopped writing: {}", e.getMessage());
+      } catch (RuntimeException e) {
+        log.error("Could not write response: {}", e.getMessage(), e);
+      } finally {
+        closeQuietly(out);
+      }
+    });
+    return in;
+  }
+
+  private static void closeQuietly(OutputStream out) {
+    try {
+      out.close();
+    } catch (IOException e) {
+      log.debug("Could not close pipe: {}", e.getMessage());
+    }
+  }
+}
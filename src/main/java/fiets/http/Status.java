@@ -0,0 +1,39 @@
+package fiets.http;
+
+/**
+ * The status codes the server answers with.
+ */
+public enum Status {
+  OK(200, "OK"),
+  ACCEPTED(202, "Accepted"),
+  FOUND(302, "Found"),
+  NOT_MODIFIED(304, "Not Modified"),
+  BAD_REQUEST(400, "Bad Request"),
+  NOT_FOUND(404, "Not Found"),
+  TOO_MANY_REQUESTS(429, "Too Many Requests"),
+  INTERNAL_ERROR(500, "Internal Server Error"),
+  SERVICE_UNAVAILABLE(503, "Service Unavailable");
+
+  private final int code;
+  private final String reason;
+
+  Status(int theCode, String theReason) {
+    code = theCode;
+    reason = theReason;
+  }
+
+  public int getCode() {
+    return code;
+  }
+
+  public String getReason() {
+    return reason;
+  }
+
+  /**
+   * @return the code followed by the reason, as in the status line
+   */
+  public String getDescription() {
+    return code + " " + reason;
+  }
+}
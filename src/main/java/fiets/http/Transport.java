@@ -0,0 +1,39 @@
+package fiets.http;
+
+import java.io.IOException;
+
+/**
+ * The HTTP server the {@link Handler} runs on, chosen by the system property
+ * <code>fiets.transport</code>: <code>nano</code> (default) for NanoHTTPD
+ * with a platform thread per connection, <code>jdk</code> for the
+ * HTTP server of the JDK with a virtual thread per request.
+ */
+public interface Transport {
+
+  /**
+   * @param port the port to listen at on all interfaces, 0 for any free one
+   */
+  void start(int port, Handler handler) throws IOException;
+
+  /**
+   * @return the port listened at once started
+   */
+  int getPort();
+
+  void stop();
+
+  static Transport configured() {
+    return create(System.getProperty("fiets.transport", "nano"));
+  }
+
+  static Transport create(String name) {
+    switch (name) {
+      case "nano":
+        return new NanoTransport();
+      case "jdk":
+        return new JdkTransport();
+      default:
+        throw new IllegalArgumentException("Unknown transport: " + name);
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package fiets.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only grows, updated without locks.
+ */
+public final class Counter {
+
+  private final LongAdder value = new LongAdder();
+
+  Counter() {}
+
+  public void inc() {
+    value.increment();
+  }
+
+  public void add(long amount) {
+    value.add(amount);
+  }
+
+  public long get() {
+    return value.sum();
+  }
+}
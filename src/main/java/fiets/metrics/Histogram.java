@@ -0,0 +1,151 @@
+package fiets.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durations in log-linear buckets like an HDR histogram: each power of two
+ * is split into {@value #SUB} buckets, so a value is known to about 6%
+ * across the whole range from nanoseconds to an hour. Recording finds the
+ * bucket with a few bit operations and counts it atomically, without locks
+ * or allocation. An exposed bucket counts the buckets that lie below its
+ * bound as a whole, so it never includes a value above the bound but may
+ * leave out values up to about 6% below it.
+ */
+public final class Histogram {
+
+  private static final int SUB_BITS = 4;
+  private static final int SUB = 1 << SUB_BITS;
+  /** Values from 2^42 ns (73 minutes) on go to the last bucket. */
+  private static final int MAX_BITS = 42;
+  private static final int BUCKETS = SUB + (MAX_BITS - SUB_BITS) * SUB;
+  /** The bucket bounds exposed, in seconds. */
+  private static final double[] LE = {
+    0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1,
+    0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300
+  };
+  private static final int[] LE_LAST_BUCKET = new int[LE.length];
+  static {
+    for (int i = 0; i < LE.length; i++) {
+      long nanos = (long) (LE[i] * 1e9d);
+      int last = index(nanos);
+      LE_LAST_BUCKET[i] = highest(last) > nanos ? last - 1 : last;
+    }
+  }
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder sum = new LongAdder();
+
+  Histogram() {}
+
+  public void record(long nanos) {
+    counts.incrementAndGet(index(nanos));
+    sum.add(nanos);
+  }
+
+  /**
+   * Record the time passed since the start, as of {@link System#nanoTime()}.
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * @return the sum of all values in nanoseconds
+   */
+  public long getSum() {
+    return sum.sum();
+  }
+
+  /**
+   * @param quantile between 0 and 1, e.g. 0.99
+   * @return the highest value in the bucket of the quantile, in nanoseconds
+   */
+  public long getQuantile(double quantile) {
+    long[] snapshot = snapshot();
+    long total = 0;
+    for (long c : snapshot) {
+      total += c;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return highest(i);
+      }
+    }
+    return 0;
+  }
+
+  void writeTo(StringBuilder sb, String name, String labels) {
+    long[] snapshot = snapshot();
+    long cumulative = 0;
+    int bucket = 0;
+    for (int i = 0; i < LE.length; i++) {
+      for (; bucket <= LE_LAST_BUCKET[i]; bucket++) {
+        cumulative += snapshot[bucket];
+      }
+      sb.append(name).append("_bucket").append(withLabel(labels, LE[i]))
+        .append(' ').append(cumulative).append('\n');
+    }
+    for (; bucket < BUCKETS; bucket++) {
+      cumulative += snapshot[bucket];
+    }
+    sb.append(name).append("_bucket").append(withLabel(labels, -1))
+      .append(' ').append(cumulative).append('\n');
+    sb.append(name).append("_sum").append(labels).append(' ')
+      .append(getSum() / (double) TimeUnit.SECONDS.toNanos(1)).append('\n');
+    sb.append(name).append("_count").append(labels).append(' ')
+      .append(cumulative).append('\n');
+  }
+
+  private long[] snapshot() {
+    long[] snapshot = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+    }
+    return snapshot;
+  }
+
+  private static String withLabel(String labels, double le) {
+    String value = le < 0 ? "+Inf" : Double.toString(le);
+    String label = "le=\"" + value + "\"";
+    return labels.isEmpty() ? "{" + label + "}"
+      : labels.substring(0, labels.length() - 1) + "," + label + "}";
+  }
+
+  static int index(long nanos) {
+    if (nanos < SUB) {
+      return (int) Math.max(nanos, 0);
+    }
+    int bits = 63 - Long.numberOfLeadingZeros(nanos);
+    if (bits >= MAX_BITS) {
+      return BUCKETS - 1;
+    }
+    int shift = bits - SUB_BITS;
+    return SUB + shift * SUB + (int) ((nanos >>> shift) - SUB);
+  }
+
+  static long lowest(int index) {
+    if (index < SUB) {
+      return index;
+    }
+    int shift = (index - SUB) / SUB;
+    int sub = (index - SUB) % SUB;
+    return (long) (SUB + sub) << shift;
+  }
+
+  static long highest(int index) {
+    return index == BUCKETS - 1 ? Long.MAX_VALUE : lowest(index + 1) - 1;
+  }
+}
@@ -0,0 +1,117 @@
+package fiets.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The registry of all metrics, exposed in the Prometheus text format. Get a
+ * metric once, e.g. into a constant, and update it on the hot path; the
+ * registry is only searched when getting it and when exposing all.
+ */
+public final class Metrics {
+
+  public static final String MIME_TYPE = "text/plain; version=0.0.4";
+
+  private static final Map<String, Family> FAMILIES = new ConcurrentHashMap<>();
+
+  private static class Family {
+    private final String type;
+    private final String help;
+    private final Map<String, Object> children = new ConcurrentHashMap<>();
+
+    private Family(String theType, String theHelp) {
+      type = theType;
+      help = theHelp;
+    }
+  }
+
+  /**
+   * @param labels names followed by their values
+   */
+  public static Counter counter(String name, String help, String... labels) {
+    return (Counter) family(name, "counter", help).children
+      .computeIfAbsent(labels(labels), l -> new Counter());
+  }
+
+  /**
+   * @param name ends with <code>_seconds</code>, values are recorded in
+   * nanoseconds and exposed in seconds
+   * @param labels names followed by their values
+   */
+  public static Histogram histogram(
+    String name, String help, String... labels) {
+    return (Histogram) family(name, "histogram", help).children
+      .computeIfAbsent(labels(labels), l -> new Histogram());
+  }
+
+  /**
+   * Register a value read when exposed, replacing one with the same labels.
+   * @param labels names followed by their values
+   */
+  public static void gauge(
+    String name, String help, DoubleSupplier value, String... labels) {
+    family(name, "gauge", help).children.put(labels(labels), value);
+  }
+
+  /**
+   * @return all metrics in the Prometheus text format
+   */
+  public static String scrape() {
+    StringBuilder sb = new StringBuilder(16 * 1024);
+    for (Map.Entry<String, Family> e : new TreeMap<>(FAMILIES).entrySet()) {
+      String name = e.getKey();
+      Family family = e.getValue();
+      sb.append("# HELP ").append(name).append(' ').append(family.help)
+        .append("\n# TYPE ").append(name).append(' ').append(family.type)
+        .append('\n');
+      for (Map.Entry<String, Object> child
+        : new TreeMap<>(family.children).entrySet()) {
+        String labels = child.getKey();
+        Object metric = child.getValue();
+        if (metric instanceof Histogram) {
+          ((Histogram) metric).writeTo(sb, name, labels);
+        } else {
+          double value = metric instanceof Counter
+            ? ((Counter) metric).get()
+            : ((DoubleSupplier) metric).getAsDouble();
+          sb.append(name).append(labels).append(' ').append(value)
+            .append('\n');
+        }
+      }
+    }
+    return sb.toString();
+  }
+
+  private static Family family(String name, String type, String help) {
+    Family family = FAMILIES.computeIfAbsent(name, n -> new Family(type, help));
+    if (!family.type.equals(type)) {
+      throw new IllegalArgumentException(String.format(
+        "Metric %s is a %s, not a %s.", name, family.type, type));
+    }
+    return family;
+  }
+
+  private static String labels(String... labels) {
+    if (labels.length % 2 != 0) {
+      throw new IllegalArgumentException(
+        "Labels need names and values: " + String.join(",", labels));
+    }
+    if (labels.length == 0) {
+      return "";
+    }
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = 0; i < labels.length; i += 2) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(labels[i]).append("=\"").append(labels[i + 1]
+        .replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+        .append('"');
+    }
+    return sb.append('}').toString();
+  }
+
+  private Metrics() {}
+}
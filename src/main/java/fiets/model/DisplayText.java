@@ -0,0 +1,95 @@
+package fiets.model;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jsoup.Jsoup;
+
+/**
+ * Plain text of titles and snippets as pages show it: markup removed,
+ * quotes escaped for use in attributes and shortened where needed.
+ * Parsing the markup is expensive, so posts get it computed once when they
+ * are stored, see {@link Post#withDisplayText()}.
+ */
+public final class DisplayText {
+  private static final Logger log = LogManager.getLogger();
+  private static final int TITLE_LENGTH = 90;
+  private static final int SNIPPET_LENGTH = 330;
+  private static final int MOBILE_FEED_TITLE_LENGTH = 10;
+
+  public static String title(String title) {
+    return cleanup(title);
+  }
+
+  public static String shortTitle(String displayTitle) {
+    return shorten(displayTitle, TITLE_LENGTH);
+  }
+
+  /**
+   * @return the shortened snippet, or the title if there is none
+   */
+  public static String snippet(String snippet, String title) {
+    if (snippet == null || snippet.trim().length() == 0) {
+      snippet = title;
+    }
+    return shorten(cleanup(snippet), SNIPPET_LENGTH);
+  }
+
+  /**
+   * @return the first words of a feed title that fit a small screen
+   */
+  public static String mobileFeedTitle(String displayTitle) {
+    if (displayTitle.length() <= MOBILE_FEED_TITLE_LENGTH) {
+      return displayTitle;
+    }
+
+    String[] words = displayTitle.split("\\s+");
+    if (words.length == 0) {
+      return displayTitle;
+    }
+
+    String firstWord = words[0];
+    if (firstWord.length() > MOBILE_FEED_TITLE_LENGTH) {
+      return shortenFirstWord(firstWord);
+    }
+
+    StringBuilder shortened = new StringBuilder(firstWord);
+    for (int i = 1; i < words.length; i++) {
+      String next = words[i];
+      if (shortened.length() + 1 + next.length() > MOBILE_FEED_TITLE_LENGTH) {
+        return shortened.toString();
+      }
+      shortened.append(' ').append(next);
+    }
+    return shortened.toString();
+  }
+
+  public static String cleanup(String text) {
+    try {
+      return Jsoup.parse(text).text()
+              .replace("'", "&apos;").replace("\"", "&quot;");
+    } catch (RuntimeException e) {
+      log.error("Parser error: " + e, e);
+      return text;
+    }
+  }
+
+  private static String shorten(String text, int maxLength) {
+    if (text.length() > maxLength) {
+      text = text.substring(0, maxLength-1) + " [&hellip;]";
+    }
+    return text;
+  }
+
+  private static String shortenFirstWord(String word) {
+    int maxChars = Math.min(word.length(), MOBILE_FEED_TITLE_LENGTH);
+    for (int i = 0; i < maxChars; i++) {
+      char c = word.charAt(i);
+      if (!Character.isLetterOrDigit(c)) {
+        return word.substring(0, i);
+      }
+    }
+    return word.substring(0, maxChars);
+  }
+
+  private DisplayText() {}
+}
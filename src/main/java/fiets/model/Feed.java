@@ -10,14 +10,24 @@ public class Feed implements HasId {
   private final String title;
   private final Date lastAccess;
   private final String lastStatus;
+  private final String etag;
+  private final String lastModified;
   public Feed(
     long theId, String theLocation, String theTitle, Date theLastAccess,
-    String theLastStatus) {
+    String theLastStatus, String theEtag, String theLastModified) {
     id = theId;
     location = theLocation;
     title = theTitle;
     lastAccess = theLastAccess == null ? null : (Date) theLastAccess.clone();
     lastStatus = theLastStatus;
+    etag = theEtag;
+    lastModified = theLastModified;
+  }
+  public Feed(
+    long theId, String theLocation, String theTitle, Date theLastAccess,
+    String theLastStatus) {
+    this(theId, theLocation, theTitle, theLastAccess, theLastStatus,
+      null, null);
   }
   public Feed(String theLocation, String theTitle, String theLastStatus) {
     this(0l, theLocation, theTitle, Date.from(Instant.EPOCH), theLastStatus);
@@ -40,4 +50,18 @@ public class Feed implements HasId {
   public String getLastStatus() {
     return lastStatus;
   }
+  /**
+   * @return entity tag of the last successfully processed response or
+   * <code>null</code>
+   */
+  public String getEtag() {
+    return etag;
+  }
+  /**
+   * @return Last-Modified header of the last successfully processed response
+   * or <code>null</code>
+   */
+  public String getLastModified() {
+    return lastModified;
+  }
 }
@@ -9,7 +9,7 @@ public class Filter {
 	private final FilterMatch urlMatch;
 	private final String title;
 	private final FilterMatch titleMatch;
-	private long matchCount;
+	private final long matchCount;
   public Filter(long theId, String url, FilterMatch urlMatch, String title, FilterMatch titleMatch, long matchCount) {
     this.id = theId;
     this.url = url;
@@ -37,8 +37,4 @@ public class Filter {
   public long getMatchCount() {
     return matchCount;
   }
-
-  public void incMatchCount() {
-    matchCount = matchCount + 1;
-  }
 }
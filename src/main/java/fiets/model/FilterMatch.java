@@ -39,6 +39,9 @@ public enum FilterMatch {
     }
   };
 
+  /** Escapes of letters that match without taking arguments. */
+  private static final String ESCAPES = "bBdDsSwWAzZGhHvVRXntrfea";
+
   private String text;
 
   FilterMatch(String text) {
@@ -50,4 +53,101 @@ public enum FilterMatch {
   public String displayText(String type, String value) {
 	  return String.format("%s %s %s", type, text, value);
   }
+
+  /**
+   * Find text that every match of the regular expression contains, the
+   * longest run of plain characters outside of groups and classes. Gives
+   * up on anything it does not understand, e.g. alternatives and flags.
+   * @return the text, <code>null</code> if none is known
+   */
+  public static String requiredLiteral(String regex) {
+    if (regex.contains("(?") || regex.contains("\\Q")) {
+      return null;
+    }
+    String best = "";
+    StringBuilder run = new StringBuilder();
+    int i = 0;
+    while (i < regex.length()) {
+      char c = regex.charAt(i);
+      int next = i + 1;
+      boolean literal = false;
+      if (c == '\\') {
+        if (next >= regex.length()) {
+          return null;
+        }
+        char e = regex.charAt(next++);
+        if (Character.isLetterOrDigit(e)) {
+          if (ESCAPES.indexOf(e) < 0) {
+            return null;
+          }
+        } else {
+          run.append(e);
+          literal = true;
+        }
+      } else if (c == '|') {
+        return null;
+      } else if (c == '(' || c == '[') {
+        next = skipNested(regex, i);
+        if (next < 0) {
+          return null;
+        }
+      } else if (c == '*' || c == '?' || c == '{') {
+        // The character before is optional.
+        if (run.length() > 0) {
+          int last = run.length() - 1;
+          boolean pair = last > 0 && Character.isLowSurrogate(run.charAt(last));
+          run.setLength(pair ? last - 1 : last);
+        }
+        if (c == '{') {
+          next = regex.indexOf('}', i);
+          if (next < 0) {
+            return null;
+          }
+          next++;
+        }
+      } else if (".^$+)]}".indexOf(c) < 0) {
+        run.append(c);
+        literal = true;
+      }
+      if (!literal) {
+        best = longer(best, run);
+        run.setLength(0);
+      }
+      i = next;
+    }
+    best = longer(best, run);
+    return best.isEmpty() ? null : best;
+  }
+
+  private static String longer(String best, StringBuilder run) {
+    return run.length() > best.length() ? run.toString() : best;
+  }
+
+  /**
+   * @return the index after the group or class starting at the index,
+   * -1 if unclear
+   */
+  private static int skipNested(String regex, int start) {
+    char open = regex.charAt(start);
+    char close = open == '(' ? ')' : ']';
+    if (open == '[' && (regex.startsWith("[]", start)
+      || regex.startsWith("[^]", start))) {
+      return -1;
+    }
+    int depth = 0;
+    for (int i = start; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (open == '(' && c == '[') {
+        return -1;
+      } else if (c == open) {
+        depth++;
+      } else if (c == close && --depth == 0) {
+        return i + 1;
+      }
+    }
+    return -1;
+  }
 }
+
@@ -11,8 +11,16 @@ public class Post implements HasId {
   private final String snippet;
   private final boolean read;
   private final Feed feed;
+  private final String displayTitle;
+  private final String displaySnippet;
   public Post(long theId, String theLocation, Date theDate, String theTitle,
     String theSnippet, boolean theRead, Feed theFeed) {
+    this(theId, theLocation, theDate, theTitle, theSnippet, theRead, theFeed,
+      null, null);
+  }
+  public Post(long theId, String theLocation, Date theDate, String theTitle,
+    String theSnippet, boolean theRead, Feed theFeed,
+    String theDisplayTitle, String theDisplaySnippet) {
     id = theId;
     location = theLocation;
     date = theDate == null ? null : (Date) theDate.clone();
@@ -20,14 +28,29 @@ public class Post implements HasId {
     snippet = theSnippet;
     read = theRead;
     feed = theFeed;
+    displayTitle = theDisplayTitle;
+    displaySnippet = theDisplaySnippet;
   }
   public Post(long theId, Post from) {
     this(theId, from.location, from.date, 
-      from.title, from.snippet, from.read, from.feed);
+      from.title, from.snippet, from.read, from.feed,
+      from.displayTitle, from.displaySnippet);
   }
   public Post(boolean theRead, Post from) {
     this(from.id, from.location, from.date,
-            from.title, from.snippet, theRead, from.feed);
+            from.title, from.snippet, theRead, from.feed,
+            from.displayTitle, from.displaySnippet);
+  }
+
+  /**
+   * @return the post with its display texts, computed unless present
+   */
+  public Post withDisplayText() {
+    if (displayTitle != null && displaySnippet != null) {
+      return this;
+    }
+    return new Post(id, location, date, title, snippet, read, feed,
+      DisplayText.title(title), DisplayText.snippet(snippet, title));
   }
 
   public String getLocation() {
@@ -46,6 +69,21 @@ public class Post implements HasId {
     return snippet;
   }
 
+  /**
+   * @return the title as pages show it, <code>null</code> if not computed
+   */
+  public String getDisplayTitle() {
+    return displayTitle;
+  }
+
+  /**
+   * @return the shortened snippet as pages show it, <code>null</code> if
+   * not computed
+   */
+  public String getDisplaySnippet() {
+    return displaySnippet;
+  }
+
   public long getId() {
     return id;
   }
@@ -0,0 +1,50 @@
+package fiets.model;
+
+import java.util.Date;
+
+/**
+ * Position in a list of posts ordered by date and ID, i.e. the last post of
+ * a page. Written as <code>&lt;date millis&gt;-&lt;id&gt;</code> in URLs.
+ */
+// immutable
+public class PostCursor {
+  private final long date;
+  private final long id;
+  public PostCursor(long theDate, long theId) {
+    date = theDate;
+    id = theId;
+  }
+
+  public static PostCursor of(Post post) {
+    return new PostCursor(post.getDate().getTime(), post.getId());
+  }
+
+  /**
+   * @return the cursor, <code>null</code> for no text
+   * @throws IllegalArgumentException if the text is no cursor
+   */
+  public static PostCursor parse(String text) {
+    if (text == null || text.isEmpty()) {
+      return null;
+    }
+    int dash = text.lastIndexOf('-');
+    try {
+      return new PostCursor(Long.parseLong(text.substring(0, dash)),
+        Long.parseLong(text.substring(dash + 1)));
+    } catch (NumberFormatException | IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Not a post cursor: " + text, e);
+    }
+  }
+
+  public Date getDate() {
+    return new Date(date);
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  @Override public String toString() {
+    return date + "-" + id;
+  }
+}
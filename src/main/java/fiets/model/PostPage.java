@@ -0,0 +1,28 @@
+package fiets.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of posts along with the cursor to the next one.
+ */
+// immutable
+public class PostPage {
+  private final List<Post> posts;
+  private final PostCursor next;
+  public PostPage(List<Post> thePosts, PostCursor theNext) {
+    posts = Collections.unmodifiableList(thePosts);
+    next = theNext;
+  }
+
+  public List<Post> getPosts() {
+    return posts;
+  }
+
+  /**
+   * @return where the next page starts, <code>null</code> on the last page
+   */
+  public PostCursor getNext() {
+    return next;
+  }
+}
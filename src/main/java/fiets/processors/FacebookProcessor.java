@@ -3,10 +3,12 @@ package fiets.processors;
 import fiets.Filterer;
 import fiets.model.Feed;
 import fiets.model.Post;
+import fiets.sources.FeedContent;
 import jodd.jerry.Jerry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
@@ -17,7 +19,7 @@ public class FacebookProcessor implements FeedProcessor {
 
   private static final String FB_HOST = "www.facebook.com";
 
-  @Override public boolean canHandle(Feed feed, String content) {
+  @Override public boolean canHandle(Feed feed, FeedContent content) {
     try {
       return new URL(feed.getLocation()).getHost().equals(FB_HOST);
     } catch (MalformedURLException e) {
@@ -26,15 +28,16 @@ public class FacebookProcessor implements FeedProcessor {
     }
   }
 
-  @Override public String parseTitle(Feed feed, String content) {
-    return "Facebook - " + Jerry.jerry(content).find("title").text();
+  @Override public String parseTitle(Feed feed, FeedContent content)
+    throws IOException {
+    return "Facebook - " + Jerry.jerry(content.text()).find("title").text();
   }
 
   @Override public List<Post> parsePosts(
-          Feed feed, String content) {
+          Feed feed, FeedContent content) throws IOException {
     List<Post> result = new ArrayList<>();
     Set<String> doubleUrlsInOneTake = new HashSet<>();
-    Jerry jerry = Jerry.jerry(content);
+    Jerry jerry = Jerry.jerry(content.text());
     int maxLevel = findMaxHLevel(jerry);
     Jerry titles = jerry.find("h" + maxLevel);
     titles.forEach(title -> {
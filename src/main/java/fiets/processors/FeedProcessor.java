@@ -5,10 +5,15 @@ import java.util.List;
 import fiets.Filterer;
 import fiets.model.Feed;
 import fiets.model.Post;
+import fiets.sources.FeedContent;
 
 public interface FeedProcessor {
-  boolean canHandle(Feed feed, String content);
-  List<Post> parsePosts(Feed feed, String content)
+  /**
+   * @param content only its {@link FeedContent#prefix()} may be inspected,
+   * the content itself is left to the processor that handles it
+   */
+  boolean canHandle(Feed feed, FeedContent content);
+  List<Post> parsePosts(Feed feed, FeedContent content)
     throws Exception;
-  String parseTitle(Feed feed, String content) throws Exception;
+  String parseTitle(Feed feed, FeedContent content) throws Exception;
 }
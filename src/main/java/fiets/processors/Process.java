@@ -1,5 +1,6 @@
 package fiets.processors;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.LinkedList;
@@ -12,6 +13,7 @@ import fiets.Filterer;
 import fiets.model.Feed;
 import fiets.model.Filter;
 import fiets.model.Post;
+import fiets.sources.FeedContent;
 import fiets.sources.FeedSource;
 import fiets.sources.HttpFeedSource;
 
@@ -26,20 +28,38 @@ public class Process {
   }
 
   public static List<Post> parsePosts(Feed feed) throws Exception {
-    String input = PROCESS.preprocess(feed);
-    return PROCESS.getParser(feed, input).parsePosts(feed, input);
+    return parsePosts(feed, fetch(feed));
+  }
+
+  /**
+   * Fetch the feed content, conditionally if the feed carries validators.
+   * @return content or <code>null</code> if no source handles the feed
+   */
+  public static FeedContent fetch(Feed feed) throws IOException {
+    return PROCESS.preprocess(feed);
+  }
+
+  /**
+   * Parse the posts straight from the content stream and close it.
+   */
+  public static List<Post> parsePosts(Feed feed, FeedContent content)
+    throws Exception {
+    try (content) {
+      return PROCESS.getParser(feed, content).parsePosts(feed, content);
+    }
   }
 
   public static String parseTitle(Feed feed) throws Exception {
-    String input = PROCESS.preprocess(feed);
-    return PROCESS.getParser(feed, input).parseTitle(feed, input);
+    try (FeedContent content = PROCESS.preprocess(feed)) {
+      return PROCESS.getParser(feed, content).parseTitle(feed, content);
+    }
   }
 
   private static final Logger log = LogManager.getLogger();
   private final List<FeedProcessor> processors = new LinkedList<>();
   private final List<FeedSource> sources = new LinkedList<>();
 
-  private String preprocess(Feed feed) {
+  private FeedContent preprocess(Feed feed) throws IOException {
     for (FeedSource pre : sources) {
       if (pre.canHandle(feed)) {
         return pre.process(feed);
@@ -48,13 +68,13 @@ public class Process {
     return null;
   }
 
-  private FeedProcessor getParser(Feed feed, String findFor) {
+  private FeedProcessor getParser(Feed feed, FeedContent findFor) {
     for (FeedProcessor f : processors) {
       if (f.canHandle(feed, findFor)) {
         return f;
       }
     }
-    log.debug(findFor);
+    log.debug(findFor == null ? null : findFor.prefix());
     throw new IllegalArgumentException(
       "No matching parser found for " + feed.getLocation());
   }
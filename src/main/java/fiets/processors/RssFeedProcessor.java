@@ -1,69 +1,58 @@
 package fiets.processors;
 
 import java.io.IOException;
-import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPathExpressionException;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
-import fiets.Filterer;
 import fiets.model.Feed;
 import fiets.model.Post;
-import fiets.processors.xml.Dom;
-import fiets.processors.xml.Xpath;
+import fiets.processors.xml.Stax;
+import fiets.sources.FeedContent;
 import fiets.sources.HttpFeedSource;
 
 public class RssFeedProcessor implements FeedProcessor {
 
   private static final Logger log = LogManager.getLogger();
+  private static final Set<String> ITEM_CHILDREN =
+    Set.of("title", "link", "guid", "description", "pubDate");
 
-  @Override public boolean canHandle(Feed feed, String content) {
-    if (!HttpFeedSource.isHttpSource(feed) || content == null) {
+  @Override public boolean canHandle(Feed feed, FeedContent content) {
+    if (!HttpFeedSource.isHttpSource(feed) || content == null
+      || content.prefix() == null) {
       return false;
     }
-    return content.contains("<rss") || content.contains("<RDF");
+    String prefix = content.prefix();
+    return prefix.contains("<rss") || prefix.contains("<RDF");
   }
 
-  @Override public String parseTitle(Feed feed, String content)
-    throws SAXException, IOException,
-    ParserConfigurationException, XPathExpressionException {
-    Document doc = Dom.parse(content);
-    return Xpath.xpathAsString(doc, "//channel/title").orElse("-no-title");
+  @Override public String parseTitle(Feed feed, FeedContent content)
+    throws IOException, XMLStreamException {
+    return Stax.childText(content.reader(), "channel", false, "title")
+      .orElse("");
   }
 
   @Override public List<Post> parsePosts(
-    Feed feed, String content)
-    throws XPathExpressionException, SAXException,
-      IOException, ParserConfigurationException {
-    Document doc = Dom.parse(content);
-    NodeList items = Xpath.xpathAsNodes(doc, "//item");
-    List<Post> result = new ArrayList<>();
-    int num = items.getLength();
-    if (num > 0) {
-      for (int i = 0; i < num; i++) {
-        Node item = items.item(i);
-        String title = Xpath.xpathAsString(item, "title").orElse("-no title");
-        String link = Xpath.xpathAsString(item, "link").orElse("-no-link-");
-        if (link.trim().length() == 0) {
-          link = Xpath.xpathAsString(item, "guid").orElse("-no-guid");
-        }
-        String description = Xpath.xpathAsString(item, "description").orElse("");
-        Date date = Xpath.xpathAsString(item, "pubDate")
-            .map(Xml::parseDate)
-            .orElse(new Date());
-        Post post = new Post(0L, link, date, title, description, false, feed);
-        result.add(post);
+    Feed feed, FeedContent content) throws IOException, XMLStreamException {
+    List<Stax.Element> items = Stax.elements(
+      content.reader(), "item", ITEM_CHILDREN, null, null);
+    List<Post> result = new ArrayList<>(items.size());
+    for (Stax.Element item : items) {
+      String title = item.text("title");
+      String link = item.text("link");
+      if (link.trim().length() == 0) {
+        link = item.text("guid");
       }
+      String description = item.text("description");
+      Date date = Xml.parseDate(item.text("pubDate"));
+      Post post = new Post(0L, link, date, title, description, false, feed);
+      result.add(post);
     }
     return result;
   }
@@ -17,7 +17,11 @@ public final class Dom {
 
   public static Document parse(InputSource source)
     throws SAXException, IOException, ParserConfigurationException {
-    DocumentBuilder builder = DOM_FACTORY.newDocumentBuilder();
+    DocumentBuilder builder;
+    // Feeds are parsed concurrently, the factory itself is not thread-safe.
+    synchronized (DOM_FACTORY) {
+      builder = DOM_FACTORY.newDocumentBuilder();
+    }
     return builder.parse(source);
   }
 
@@ -0,0 +1,252 @@
+package fiets.processors.xml;
+
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming (StAX) convenience stuff. Names are matched the way the XPath
+ * implementation of the JDK does on a non-namespace-aware DOM: elements
+ * looked up anywhere in the document (<code>//name</code>) by their qualified
+ * name, children, root elements and attributes by their local part, i.e.
+ * prefixes are ignored.
+ */
+public final class Stax {
+  private static final XMLInputFactory FACTORY = createFactory();
+  private static final StringBuilder NO_CAPTURE = new StringBuilder(0);
+
+  /**
+   * Selected direct children of an element, collected while streaming.
+   */
+  public static final class Element {
+    private final int depth;
+    private final Set<String> wanted;
+    private final String attributeOf;
+    private final String attribute;
+    private final Map<String, StringBuilder> texts = new HashMap<>();
+    private String attributeValue;
+
+    private Element(int theDepth, Set<String> theWanted,
+      String theAttributeOf, String theAttribute) {
+      depth = theDepth;
+      wanted = theWanted;
+      attributeOf = theAttributeOf;
+      attribute = theAttribute;
+    }
+
+    /**
+     * @return text content of the first child with that name, empty if
+     * there is no such child (like XPath <code>string()</code>)
+     */
+    public String text(String child) {
+      StringBuilder sb = texts.get(child);
+      return sb == null ? "" : sb.toString();
+    }
+
+    /**
+     * @return the attribute of the first child that has it, empty if none
+     * has it (like XPath <code>string(child/@attribute)</code>)
+     */
+    public String attribute() {
+      return attributeValue == null ? "" : attributeValue;
+    }
+  }
+
+  /**
+   * Collect all elements with the given name, in document order, no matter
+   * where they are located.
+   * @param children names of direct children whose text is collected
+   * @param attributeOf name of direct children to take an attribute from,
+   * may be <code>null</code>
+   * @param attribute name of the attribute to take
+   */
+  public static List<Element> elements(Reader in, String name,
+    Set<String> children, String attributeOf, String attribute)
+    throws XMLStreamException {
+    List<Element> result = new ArrayList<>();
+    Deque<Element> open = new ArrayDeque<>();
+    List<StringBuilder> capturing = new ArrayList<>();
+    Deque<StringBuilder> captureStack = new ArrayDeque<>();
+    XMLStreamReader r = createReader(in);
+    try {
+      int depth = 0;
+      while (r.hasNext()) {
+        switch (r.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            depth++;
+            String qname = r.getLocalName();
+            String local = localPart(qname);
+            StringBuilder capture = null;
+            Element parent = open.peek();
+            if (parent != null && parent.depth == depth - 1) {
+              if (parent.wanted.contains(local)
+                && !parent.texts.containsKey(local)) {
+                capture = new StringBuilder();
+                parent.texts.put(local, capture);
+              }
+              if (local.equals(parent.attributeOf)
+                && parent.attributeValue == null) {
+                parent.attributeValue = attributeValue(r, parent.attribute);
+              }
+            }
+            captureStack.push(capture == null ? NO_CAPTURE : capture);
+            if (capture != null) {
+              capturing.add(capture);
+            }
+            if (qname.equals(name)) {
+              Element e = new Element(depth, children, attributeOf, attribute);
+              result.add(e);
+              open.push(e);
+            }
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            StringBuilder ended = captureStack.pop();
+            if (ended != NO_CAPTURE) {
+              capturing.remove(capturing.size() - 1);
+            }
+            if (!open.isEmpty() && open.peek().depth == depth) {
+              open.pop();
+            }
+            depth--;
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            if (!capturing.isEmpty()) {
+              appendText(r, capturing);
+            }
+            break;
+          default:
+            break;
+        }
+      }
+    } finally {
+      r.close();
+    }
+    return result;
+  }
+
+  /**
+   * @return text content of the first child named <code>child</code> of an
+   * element named <code>parent</code> anywhere in the document
+   * (<code>//parent/child</code>), or of the root element if
+   * <code>parentIsRoot</code> is set (<code>/parent/child</code>). Stops
+   * reading as soon as the child is complete.
+   */
+  public static Optional<String> childText(Reader in,
+    String parent, boolean parentIsRoot, String child)
+    throws XMLStreamException {
+    XMLStreamReader r = createReader(in);
+    try {
+      int depth = 0;
+      Deque<String> names = new ArrayDeque<>();
+      StringBuilder capture = null;
+      int captureDepth = 0;
+      while (r.hasNext()) {
+        switch (r.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            depth++;
+            String qname = r.getLocalName();
+            if (capture == null && localPart(qname).equals(child)
+              && isParent(names.peek(), parent, parentIsRoot, depth)) {
+              capture = new StringBuilder();
+              captureDepth = depth;
+            }
+            names.push(qname);
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            if (capture != null && depth == captureDepth) {
+              return Optional.of(capture.toString());
+            }
+            names.pop();
+            depth--;
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            if (capture != null) {
+              capture.append(
+                r.getTextCharacters(), r.getTextStart(), r.getTextLength());
+            }
+            break;
+          default:
+            break;
+        }
+      }
+      return Optional.empty();
+    } finally {
+      r.close();
+    }
+  }
+
+  private static boolean isParent(
+    String qname, String parent, boolean parentIsRoot, int childDepth) {
+    if (qname == null) {
+      return false;
+    } else if (parentIsRoot) {
+      return childDepth == 2 && localPart(qname).equals(parent);
+    } else {
+      return qname.equals(parent);
+    }
+  }
+
+  private static void appendText(
+    XMLStreamReader r, List<StringBuilder> capturing) {
+    char[] chars = r.getTextCharacters();
+    int start = r.getTextStart();
+    int len = r.getTextLength();
+    for (StringBuilder sb : capturing) {
+      sb.append(chars, start, len);
+    }
+  }
+
+  private static String attributeValue(XMLStreamReader r, String name) {
+    String prefixed = null;
+    int num = r.getAttributeCount();
+    for (int i = 0; i < num; i++) {
+      String prefix = r.getAttributePrefix(i);
+      if (name.equals(r.getAttributeLocalName(i))) {
+        if (prefix == null || prefix.isEmpty()) {
+          return r.getAttributeValue(i);
+        } else if (prefixed == null && !"xmlns".equals(prefix)) {
+          prefixed = r.getAttributeValue(i);
+        }
+      }
+    }
+    return prefixed;
+  }
+
+  private static String localPart(String qname) {
+    int colon = qname.indexOf(':');
+    return colon < 0 ? qname : qname.substring(colon + 1);
+  }
+
+  private static XMLStreamReader createReader(Reader in)
+    throws XMLStreamException {
+    // Feeds are parsed concurrently, the factory is not guaranteed to be
+    // thread-safe.
+    synchronized (FACTORY) {
+      return FACTORY.createXMLStreamReader(in);
+    }
+  }
+
+  private static XMLInputFactory createFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    return factory;
+  }
+
+  private Stax() {}
+}
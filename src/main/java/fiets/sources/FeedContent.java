@@ -0,0 +1,209 @@
+package fiets.sources;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Content a {@link FeedSource} fetched for a feed, along with the cache
+ * validators the source reported for it. The content is a byte stream that
+ * is read once; only its beginning is buffered so processors can sniff the
+ * format via {@link #prefix()}. The charset is taken from the byte order
+ * mark, the Content-Type or the XML declaration, in that order, and
+ * defaults to UTF-8.
+ */
+public class FeedContent implements Closeable {
+  private static final int PREFIX_BYTES = 8192;
+  private static final Pattern CONTENT_TYPE_CHARSET =
+    Pattern.compile("(?i);\\s*charset\\s*=\\s*[\"']?([^\"';\\s]+)");
+  private static final Pattern XML_ENCODING = Pattern.compile(
+    "^<\\?xml[^>]*?encoding\\s*=\\s*[\"']([A-Za-z0-9._:-]+)[\"']");
+
+  private final InputStream stream;
+  private final Charset charset;
+  private final int bomLength;
+  private final String prefix;
+  private final boolean notModified;
+  private final String etag;
+  private final String lastModified;
+
+  private FeedContent(InputStream theStream, String contentType,
+    boolean theNotModified, String theEtag, String theLastModified)
+    throws IOException {
+    notModified = theNotModified;
+    etag = theEtag;
+    lastModified = theLastModified;
+    if (theStream == null) {
+      stream = null;
+      charset = StandardCharsets.UTF_8;
+      bomLength = 0;
+      prefix = null;
+      return;
+    }
+    stream = new BufferedInputStream(theStream, PREFIX_BYTES);
+    stream.mark(PREFIX_BYTES);
+    byte[] head = stream.readNBytes(PREFIX_BYTES);
+    stream.reset();
+    Charset bomCharset = bomCharset(head);
+    bomLength = bomLength(head);
+    charset = bomCharset != null ? bomCharset
+      : declaredCharset(contentType, head);
+    prefix = new String(
+      head, bomLength, head.length - bomLength, charset).trim();
+  }
+
+  /**
+   * Content from a byte stream. Takes ownership of the stream.
+   * @param contentType Content-Type as reported by the source, may be
+   * <code>null</code>
+   */
+  public static FeedContent of(InputStream stream, String contentType,
+    String etag, String lastModified) throws IOException {
+    return new FeedContent(stream, contentType, false, etag, lastModified);
+  }
+
+  public static FeedContent of(String text) {
+    try {
+      return new FeedContent(
+        new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)),
+        "text/xml; charset=UTF-8", false, null, null);
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot happen in memory.", e);
+    }
+  }
+
+  /**
+   * Content did not change since the response the validators belong to.
+   */
+  public static FeedContent notModified(String etag, String lastModified) {
+    try {
+      return new FeedContent(null, null, true, etag, lastModified);
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot happen without content.", e);
+    }
+  }
+
+  /**
+   * @return the trimmed beginning of the content, to determine its format;
+   * <code>null</code> if not modified
+   */
+  public String prefix() {
+    return prefix;
+  }
+
+  /**
+   * @return the content as character stream, to be read once
+   */
+  public Reader reader() throws IOException {
+    if (stream == null) {
+      throw new IllegalStateException("Content was not modified.");
+    }
+    stream.skipNBytes(bomLength);
+    return new InputStreamReader(stream, charset);
+  }
+
+  /**
+   * @return the whole (trimmed) content; only for processors that cannot
+   * work on a stream
+   */
+  public String text() throws IOException {
+    if (stream == null) {
+      return null;
+    }
+    stream.skipNBytes(bomLength);
+    return new String(stream.readAllBytes(), charset).trim();
+  }
+
+  public Charset getCharset() {
+    return charset;
+  }
+
+  public boolean isNotModified() {
+    return notModified;
+  }
+
+  public String getEtag() {
+    return etag;
+  }
+
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  @Override public void close() throws IOException {
+    if (stream != null) {
+      stream.close();
+    }
+  }
+
+  private static Charset bomCharset(byte[] head) {
+    if (startsWith(head, 0xEF, 0xBB, 0xBF)) {
+      return StandardCharsets.UTF_8;
+    } else if (startsWith(head, 0xFE, 0xFF)) {
+      return StandardCharsets.UTF_16BE;
+    } else if (startsWith(head, 0xFF, 0xFE)) {
+      return StandardCharsets.UTF_16LE;
+    }
+    return null;
+  }
+
+  private static int bomLength(byte[] head) {
+    if (startsWith(head, 0xEF, 0xBB, 0xBF)) {
+      return 3;
+    } else if (startsWith(head, 0xFE, 0xFF) || startsWith(head, 0xFF, 0xFE)) {
+      return 2;
+    }
+    return 0;
+  }
+
+  private static boolean startsWith(byte[] head, int... bom) {
+    if (head.length < bom.length) {
+      return false;
+    }
+    for (int i = 0; i < bom.length; i++) {
+      if ((head[i] & 0xFF) != bom[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Charset declaredCharset(String contentType, byte[] head) {
+    if (contentType != null) {
+      Matcher m = CONTENT_TYPE_CHARSET.matcher(contentType);
+      if (m.find()) {
+        Charset cs = charset(m.group(1));
+        if (cs != null) {
+          return cs;
+        }
+      }
+    }
+    String start = new String(head, 0, Math.min(head.length, 256),
+      StandardCharsets.ISO_8859_1).trim();
+    Matcher m = XML_ENCODING.matcher(start);
+    if (m.find()) {
+      Charset cs = charset(m.group(1));
+      if (cs != null) {
+        return cs;
+      }
+    }
+    return StandardCharsets.UTF_8;
+  }
+
+  private static Charset charset(String name) {
+    try {
+      return Charset.forName(name.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+}
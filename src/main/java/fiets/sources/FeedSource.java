@@ -1,8 +1,10 @@
 package fiets.sources;
 
+import java.io.IOException;
+
 import fiets.model.Feed;
 
 public interface FeedSource {
   boolean canHandle(Feed feed);
-  String process(Feed feed);
+  FeedContent process(Feed feed) throws IOException;
 }
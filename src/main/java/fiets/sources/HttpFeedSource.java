@@ -1,56 +1,172 @@
 package fiets.sources;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
+import java.net.Socket;
+import java.net.URI;
 import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
 import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
 
-import jodd.util.StringUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import fiets.model.Feed;
-import jodd.http.HttpRequest;
-import jodd.http.HttpResponse;
 
 public class HttpFeedSource implements FeedSource {
   public static final String UTF8_BOM = "\uFEFF";
   private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:81.0) Gecko/20100101 Firefox/81.0";
+  private static final Duration TIMEOUT = Duration.ofSeconds(10);
+  private static final long MAX_BODY_SECONDS = 120;
   private static final Logger log = LogManager.getLogger();
-  
-  @Override public String process(Feed feed) {
-    return readUrlContent(feed.getLocation());
+  private static final HttpClient CLIENT = createClient();
+  private static final ScheduledExecutorService WATCHDOG =
+    Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "fiets-http-watchdog");
+      t.setDaemon(true);
+      return t;
+    });
+
+  @Override public FeedContent process(Feed feed) throws IOException {
+    return readUrlContent(feed);
   }
 
-  public static String readUrlContent(String url) {
-    HttpRequest req = HttpRequest.get(url)
-            .timeout(10000)
-            .connectionTimeout(10000)
-            .trustAllCerts(true)
-            .followRedirects(true)
-            .acceptEncoding("UTF-8");
-    req.header("User-Agent", USER_AGENT);
-    HttpResponse rsp = req.send();
+  /**
+   * Open the feed content as a stream. If the feed carries validators of an
+   * earlier response, the request is conditional and a 304 answer yields
+   * {@link FeedContent#notModified(String, String)}.
+   */
+  public static FeedContent readUrlContent(Feed feed) throws IOException {
+    String url = feed.getLocation();
+    HttpRequest.Builder req;
+    try {
+      req = HttpRequest.newBuilder(URI.create(url.trim()));
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid URL " + url, e);
+    }
+    req.timeout(TIMEOUT)
+      .header("User-Agent", USER_AGENT)
+      .header("Accept-Encoding", "gzip");
+    if (feed.getEtag() != null) {
+      req.header("If-None-Match", feed.getEtag());
+    }
+    if (feed.getLastModified() != null) {
+      req.header("If-Modified-Since", feed.getLastModified());
+    }
+    HttpResponse<InputStream> rsp;
+    try {
+      rsp = CLIENT.send(req.build(), BodyHandlers.ofInputStream());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted fetching " + url);
+    }
     int status = rsp.statusCode();
+    String etag = rsp.headers().firstValue("ETag").orElse(null);
+    String lastModified =
+      rsp.headers().firstValue("Last-Modified").orElse(null);
+    if (status == 304) {
+      rsp.body().close();
+      log.debug("Feed {} not modified.", url);
+      return FeedContent.notModified(
+        etag == null ? feed.getEtag() : etag,
+        lastModified == null ? feed.getLastModified() : lastModified);
+    }
     if (status != 200) {
       log.error("Unexpected status for {} : {}", url, status);
     }
-    fixCharset(rsp);
-    String text = rsp.bodyText();
-    if (text.startsWith(UTF8_BOM)) {
-      text = text.substring(1);
+    InputStream body = withWatchdog(rsp.body(), url);
+    if ("gzip".equalsIgnoreCase(
+      rsp.headers().firstValue("Content-Encoding").orElse(""))) {
+      body = new GZIPInputStream(body);
     }
-    return text.trim();
+    return FeedContent.of(body,
+      rsp.headers().firstValue("Content-Type").orElse(null),
+      etag, lastModified);
   }
 
-  private static void fixCharset(HttpResponse rsp) {
-    String cs = rsp.charset();
-    if (cs != null && cs.startsWith("\"")) {
-      rsp.charset(StringUtil.removeQuotes(cs));
+  /**
+   * The client only times out until the headers arrive. A body that
+   * trickles in forever is cut off after {@value #MAX_BODY_SECONDS} seconds.
+   */
+  private static InputStream withWatchdog(InputStream body, String url) {
+    ScheduledFuture<?> timeout = WATCHDOG.schedule(() -> {
+      log.error("Reading {} took too long, aborting.", url);
+      try {
+        body.close();
+      } catch (IOException e) {
+        log.debug("Could not abort {}.", url, e);
+      }
+    }, MAX_BODY_SECONDS, TimeUnit.SECONDS);
+    return new FilterInputStream(body) {
+      @Override public void close() throws IOException {
+        timeout.cancel(false);
+        super.close();
+      }
+    };
+  }
+
+  private static HttpClient createClient() {
+    return HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1)
+      .connectTimeout(TIMEOUT)
+      .followRedirects(HttpClient.Redirect.ALWAYS)
+      .sslContext(trustAllContext())
+      .build();
+  }
+
+  /**
+   * Feeds are public content, certificates are not checked (as before with
+   * jodd's trustAllCerts).
+   */
+  private static SSLContext trustAllContext() {
+    TrustManager trustAll = new X509ExtendedTrustManager() {
+      @Override public void checkClientTrusted(
+        X509Certificate[] chain, String authType) {}
+      @Override public void checkServerTrusted(
+        X509Certificate[] chain, String authType) {}
+      @Override public void checkClientTrusted(
+        X509Certificate[] chain, String authType, Socket socket) {}
+      @Override public void checkServerTrusted(
+        X509Certificate[] chain, String authType, Socket socket) {}
+      @Override public void checkClientTrusted(
+        X509Certificate[] chain, String authType, SSLEngine engine) {}
+      @Override public void checkServerTrusted(
+        X509Certificate[] chain, String authType, SSLEngine engine) {}
+      @Override public X509Certificate[] getAcceptedIssuers() {
+        return new X509Certificate[0];
+      }
+    };
+    try {
+      SSLContext ctx = SSLContext.getInstance("TLS");
+      ctx.init(null, new TrustManager[] { trustAll }, new SecureRandom());
+      return ctx;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Cannot initialize TLS.", e);
     }
   }
 
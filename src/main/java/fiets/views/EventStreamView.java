@@ -0,0 +1,25 @@
+package fiets.views;
+
+import java.io.InputStream;
+
+/**
+ * An endless stream of server-sent events.
+ */
+public class EventStreamView implements View<InputStream> {
+
+  public static final String MIME_TYPE = "text/event-stream";
+
+  private final InputStream events;
+
+  public EventStreamView(InputStream theEvents) {
+    events = theEvents;
+  }
+
+  @Override public String getMimeType() {
+    return MIME_TYPE;
+  }
+
+  @Override public InputStream getContent() {
+    return events;
+  }
+}
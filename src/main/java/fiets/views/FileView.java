@@ -1,56 +1,39 @@
 package fiets.views;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
-import fiets.Server;
 import fiets.SessionDecorator;
 
+/**
+ * A static asset, served from memory, see {@link StaticAssets}.
+ */
 public class FileView implements View<InputStream> {
 
-  private final InputStream stream;
-  private final String mimeType;
-
-  public FileView(SessionDecorator sd) throws FileNotFoundException {
-    String path = sd.getPath();
-    mimeType = determineMimeType(path);
-    File localFile = new File(path);
-    if (localFile.exists()) {
-      stream = new FileInputStream(localFile);
-    } else {
-      stream = Server.class.getResourceAsStream("/META-INF/resources/" + path);
-    }
-    if (stream == null) {
-      throw new FileNotFoundException(path);
-    }
-  }
+  private final StaticAssets.Lookup lookup;
 
-  private String determineMimeType(String path) {
-    if (path.endsWith(".css")) {
-      return "text/css";
-    } else if (path.endsWith(".js")) {
-      return "application/javascript";
-    } else if (path.endsWith(".map")) {
-      return "application/json";
-    } else if (path.endsWith(".png")) {
-      return "image/png";
-    } else if (path.endsWith(".ico")) {
-      return "image/x-icon";
-    } else if (path.endsWith(".webmanifest")) {
-      return "application/manifest+json";
-    } else {
-      throw new IllegalArgumentException("Unknown filetype to serve: " + path);
-    }
+  public FileView(SessionDecorator sd) throws IOException {
+    lookup = StaticAssets.lookup(sd.getPath());
   }
 
   @Override public String getMimeType() {
-    return mimeType;
+    return lookup.getAsset().getMimeType();
   }
 
   @Override public InputStream getContent() {
-    return stream;
+    return new ByteArrayInputStream(lookup.getAsset().getData());
+  }
+
+  public StaticAssets.Asset getAsset() {
+    return lookup.getAsset();
   }
 
+  /**
+   * @return <code>true</code> if requested by its current fingerprint, so
+   * the response may be cached for good
+   */
+  public boolean isImmutable() {
+    return lookup.isCurrent();
+  }
 }
@@ -1,13 +1,24 @@
 package fiets.views;
 
+import fiets.http.Status;
 import jodd.json.JsonObject;
 
 public class JsonView implements View<String> {
 
   private final JsonObject json;
+  private final Status status;
 
   public JsonView(JsonObject theJson) {
+    this(theJson, Status.OK);
+  }
+
+  public JsonView(JsonObject theJson, Status theStatus) {
     json = theJson;
+    status = theStatus;
+  }
+
+  @Override public Status getStatus() {
+    return status;
   }
 
   @Override public String getMimeType() {
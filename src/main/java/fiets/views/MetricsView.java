@@ -0,0 +1,17 @@
+package fiets.views;
+
+import fiets.metrics.Metrics;
+
+/**
+ * All metrics for Prometheus to scrape.
+ */
+public class MetricsView implements View<String> {
+
+  @Override public String getMimeType() {
+    return Metrics.MIME_TYPE;
+  }
+
+  @Override public String getContent() {
+    return Metrics.scrape();
+  }
+}
@@ -3,8 +3,13 @@ package fiets.views;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Locale;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -21,8 +26,13 @@ public final class Pages {
   };
 
   private static final Logger log = LogManager.getLogger();
-  private static final String HEADER_TEMPLATE = getResource("html/header.html");
-  private static final String FOOTER_TEMPLATE = getResource("html/footer.html");
+  private static final Pattern STATIC_ASSET =
+    Pattern.compile("([\"'])/(static/[^\"'?#]+)([\"'])");
+  private static final Set<String> STATIC_ASSETS = new LinkedHashSet<>();
+  private static final String HEADER_TEMPLATE =
+    fingerprinted(getResource("html/header.html"));
+  private static final String FOOTER_TEMPLATE =
+    fingerprinted(getResource("html/footer.html"));
   private static final String EDIT_FILTER_TEMPLATE = getResource("html/edit-filter.html");
 
   public static String getResource(String name) {
@@ -36,18 +46,40 @@ public final class Pages {
     }
   }
 
+  /**
+   * @return the paths of the static assets the pages refer to, e.g.
+   * <code>static/styles.css</code>
+   */
+  public static Set<String> staticAssets() {
+    return Collections.unmodifiableSet(STATIC_ASSETS);
+  }
+
+  /**
+   * Refer to the static assets in the template by their fingerprinted paths.
+   */
+  private static String fingerprinted(String template) {
+    return STATIC_ASSET.matcher(template).replaceAll(m -> {
+      STATIC_ASSETS.add(m.group(2));
+      return Matcher.quoteReplacement(m.group(1) + '/'
+        + StaticAssets.fingerprinted(m.group(2)) + m.group(3));
+    });
+  }
+
   public static String headerTemplate(Name name,
     String title, int unread, int bookmarks) {
-    return HEADER_TEMPLATE
+    String header = HEADER_TEMPLATE
       .replace("%TITLE%", title)
       .replace("%UNREAD_COUNT%",
-        unread == -1 ? "" : String.format(
-          " (<span class='unread-count'>%d</span>)", unread))
+        unread == -1 ? ""
+          : " (<span class='unread-count'>" + unread + "</span>)")
       .replace("%BOOKMARKS_COUNT%",
-        bookmarks == -1 ? "" : String.format(
-          " (<span class='bookmark-count'>%d</span>)", bookmarks))
-      .replace(name.activeMarker(), "active")
-      .replaceAll("%.*?_ACTIVE%", "");
+        bookmarks == -1 ? ""
+          : " (<span class='bookmark-count'>" + bookmarks + "</span>)")
+      .replace(name.activeMarker(), "active");
+    for (Name other : Name.values()) {
+      header = header.replace(other.activeMarker(), "");
+    }
+    return header;
   }
 
   public static String footerTemplate(String footerLinks) {
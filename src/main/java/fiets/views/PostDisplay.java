@@ -1,17 +1,20 @@
 package fiets.views;
 
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.Locale;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-import org.jsoup.Jsoup;
-
+import fiets.model.DisplayText;
 import fiets.model.Post;
 
+/**
+ * Texts of a post as pages show them. Posts loaded from the database come
+ * with their title and snippet prepared, others get them computed here.
+ */
 public class PostDisplay {
-  private static final Logger log = LogManager.getLogger();
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter
+    .ofPattern("dd-MMM-yy", Locale.ENGLISH).withZone(ZoneId.systemDefault());
 
   private final Post post;
 
@@ -20,19 +23,18 @@ public class PostDisplay {
   }
 
   public String getTitle() {
-    return cleanup(post.getTitle());
+    String title = post.getDisplayTitle();
+    return title == null ? DisplayText.title(post.getTitle()) : title;
   }
 
   public String getShortenedTitle() {
-    return shorten(getTitle(), 90);
+    return DisplayText.shortTitle(getTitle());
   }
  
   public String getShortenedSnippet() {
-    String snippet = post.getSnippet();
-    if (snippet == null || snippet.trim().length() == 0) {
-      snippet = post.getTitle();
-    }
-    return shorten(cleanup(snippet), 330);
+    String snippet = post.getDisplaySnippet();
+    return snippet == null
+      ? DisplayText.snippet(post.getSnippet(), post.getTitle()) : snippet;
   }
 
   public String getDate() {
@@ -40,71 +42,19 @@ public class PostDisplay {
   }
 
   public static String fmtDate(Date date) {
-    return date == null ? "--" :
-      new SimpleDateFormat("dd-MMM-yy", Locale.ENGLISH).format(date);
+    return date == null ? "--" : DATE_FORMAT.format(date.toInstant());
   }
 
   public String getFeedTitle() {
-    return cleanup(post.getFeed().getTitle());
+    return DisplayText.cleanup(post.getFeed().getTitle());
   }
 
   public String getMobileFeedTitle() {
-    String title = getFeedTitle();
-    if (title.length() <= 10) {
-      return title;
-    }
-
-    String[] words = title.split("\\s+");
-    if (words.length == 0) {
-      return title;
-    }
-
-    String firstWord = words[0];
-    if (firstWord.length() > 10) {
-      return shortenFirstWord(firstWord);
-    }
-
-    StringBuilder shortened = new StringBuilder(firstWord);
-    for (int i = 1; i < words.length; i++) {
-      String next = words[i];
-      if (shortened.length() + 1 + next.length() > 10) {
-        return shortened.toString();
-      }
-      shortened.append(' ').append(next);
-    }
-    return shortened.toString();
+    return DisplayText.mobileFeedTitle(getFeedTitle());
   }
 
   public String getLocation() {
-    return cleanup(post.getLocation());
-  }
-
-  private static String shorten(String text, int maxLength) {
-    if (text.length() > maxLength) {
-      text = text.substring(0, maxLength-1) + " [&hellip;]";
-    }
-    return text;
-  }
-
-  private static String shortenFirstWord(String word) {
-    int maxChars = Math.min(word.length(), 10);
-    for (int i = 0; i < maxChars; i++) {
-      char c = word.charAt(i);
-      if (!Character.isLetterOrDigit(c)) {
-        return word.substring(0, i);
-      }
-    }
-    return word.substring(0, maxChars);
-  }
-
-  private static String cleanup(String text) {
-    try {
-      return Jsoup.parse(text).text()
-              .replace("'", "&apos;").replace("\"", "&quot;");
-    } catch (RuntimeException e) {
-      log.error("Parser error: " + e, e);
-      return text;
-    }
+    return DisplayText.cleanup(post.getLocation());
   }
 
 }
@@ -1,10 +1,22 @@
 package fiets.views;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import fiets.model.Post;
+import fiets.model.PostCursor;
+import fiets.model.PostPage;
 import fiets.views.Pages.Name;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -12,18 +24,31 @@ import org.apache.logging.log4j.Logger;
 public class PostsHtmlView implements View<String> {
 
   private static final Logger log = LogManager.getLogger();
-  private static final int DEFAULT_PAGE_SIZE = 20;
+  public static final int DEFAULT_PAGE_SIZE = 20;
+  private static final int WRITE_BUFFER = 16 * 1024;
 
   private final List<Post> posts;
+  private final PostCursor next;
   private final int unreadCount;
   private final Set<Long> bookmarked;
   private Name pageName;
+  /** Full and mobile title per feed ID, to prepare them once per page. */
+  private final Map<Long, String[]> feedTitles = new HashMap<>();
 
   public PostsHtmlView(
     Name thePageName,
     List<Post> thePosts, Set<Long> theBookmarked, int theUnreadCount) {
+    this(thePageName, new PostPage(
+      thePosts == null ? Collections.emptyList() : thePosts, null),
+      theBookmarked, theUnreadCount);
+  }
+
+  public PostsHtmlView(
+    Name thePageName,
+    PostPage thePage, Set<Long> theBookmarked, int theUnreadCount) {
     pageName = thePageName;
-    posts = thePosts == null ? Collections.emptyList() : thePosts;
+    posts = thePage.getPosts();
+    next = thePage.getNext();
     bookmarked = theBookmarked == null ? Collections.emptySet() : theBookmarked;
     unreadCount = theUnreadCount;
   }
@@ -33,23 +58,76 @@ public class PostsHtmlView implements View<String> {
   }
 
   @Override public String getContent() {
-    StringBuilder sb = new StringBuilder()
-      .append(header())
-      .append(String.format(
-        "<ul class='list-group posts-list' data-page-size='%d'>",
-        DEFAULT_PAGE_SIZE));
+    StringWriter out = new StringWriter(8192 + posts.size() * 1024);
+    try {
+      render(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toString();
+  }
+
+  @Override public boolean isStreaming() {
+    return true;
+  }
+
+  /**
+   * Write the page post by post; the header is flushed right away, so it
+   * reaches the browser before the posts are rendered.
+   */
+  @Override public void writeTo(OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(
+      new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER);
+    render(writer);
+    writer.flush();
+  }
+
+  private void render(Writer out) throws IOException {
+    out.write(header());
+    out.write("<ul class='list-group posts-list' data-page-size='");
+    out.write(Integer.toString(DEFAULT_PAGE_SIZE));
+    out.write("' data-view='");
+    out.write(pageName.name());
+    out.write("' data-next='");
+    out.write(next == null ? "" : next.toString());
+    out.write("'>");
+    out.flush();
+    StringBuilder sb = new StringBuilder(2048);
     for (Post p : posts) {
-      try {
-        sb.append(post(p));
-      } catch (RuntimeException e) {
-        log.warn(String.format("Could not render post %s", safePostId(p)), e);
-        sb.append(errorPost(p));
-      }
+      sb.setLength(0);
+      item(sb, p);
+      out.append(sb);
     }
-    return sb.append("</ul>")
-            .append(Pages.editFilterTemplate())
-            .append(Pages.footerTemplate(markReadLink()))
-            .toString();
+    out.write("</ul>");
+    out.write(Pages.editFilterTemplate());
+    out.write(Pages.footerTemplate(
+      pageName == Name.unread ? markReadLink() : moreLink()));
+  }
+
+  /**
+   * @return just the list items of the posts, to append to a page
+   */
+  public String getItems() {
+    StringBuilder sb = new StringBuilder(posts.size() * 1024);
+    for (Post p : posts) {
+      item(sb, p);
+    }
+    return sb.toString();
+  }
+
+  private void item(StringBuilder sb, Post p) {
+    int length = sb.length();
+    try {
+      post(sb, p);
+    } catch (RuntimeException e) {
+      log.warn("Could not render post {}", safePostId(p), e);
+      sb.setLength(length);
+      errorPost(sb, p);
+    }
+  }
+
+  public PostCursor getNext() {
+    return next;
   }
 
   private static String safePostId(Post p) {
@@ -59,30 +137,35 @@ public class PostsHtmlView implements View<String> {
     return String.valueOf(p.getId());
   }
 
-  private String post(Post p) {
+  private void post(StringBuilder sb, Post p) {
     PostDisplay display = new PostDisplay(p);
-    return String.format(
-      "<li class='list-group-item post %s' data-post-id='%d' data-read='%s'>"
-      + "<div class='post-meta'>"
-      + "<small class='post-date'>%s</small>"
-      + "<span class='meta-separator'>|</span>"
-      + "<small class='feed-title-full'>%s</small>"
-      + "<small class='feed-title-mobile'>%s</small>"
-      + "<span class='post-actions'>"
-      + addFilterLink(p)
-      + bookmarkLink(p)
-      + removeBookmarkLink(p)
-      + "</span>"
-      + "</div>"
-      + "<h3 title='%s'><a href='%s' target='_blank'>%s</a></h3>"
-      + "<div>%s</div></li>",
-      isBookmarked(p) ? "bookmarked" : "",
-      p.getId(),
-      p.isRead(),
-      display.getDate(), display.getFeedTitle(), display.getMobileFeedTitle(),
-      display.getTitle(), p.getLocation(),
-      display.getShortenedTitle(),
-      display.getShortenedSnippet());
+    String[] feedTitle = feedTitles.computeIfAbsent(p.getFeed().getId(),
+      id -> new String[] {
+        display.getFeedTitle(), display.getMobileFeedTitle() });
+    sb.append("<li class='list-group-item post ")
+      .append(isBookmarked(p) ? "bookmarked" : "")
+      .append("' data-post-id='").append(p.getId())
+      .append("' data-read='").append(p.isRead()).append("'>")
+      .append("<div class='post-meta'>")
+      .append("<small class='post-date'>").append(display.getDate())
+      .append("</small>")
+      .append("<span class='meta-separator'>|</span>")
+      .append("<small class='feed-title-full'>").append(feedTitle[0])
+      .append("</small>")
+      .append("<small class='feed-title-mobile'>").append(feedTitle[1])
+      .append("</small>")
+      .append("<span class='post-actions'>")
+      .append(addFilterLink(p))
+      .append(bookmarkLink(p))
+      .append(removeBookmarkLink(p))
+      .append("</span>")
+      .append("</div>")
+      .append("<h3 title='").append(display.getTitle())
+      .append("'><a href='").append(p.getLocation())
+      .append("' target='_blank'>").append(display.getShortenedTitle())
+      .append("</a></h3>")
+      .append("<div>").append(display.getShortenedSnippet())
+      .append("</div></li>");
   }
 
   private String addFilterLink(Post p) {
@@ -90,16 +173,14 @@ public class PostsHtmlView implements View<String> {
   }
 
   private String bookmarkLink(Post p) {
-    return String.format(
-      "<a href='%s' class='add-bookmark btn btn-link btn-sm' role='button'>"
-      + "<span class='label-full'>+Bookmark</span><span class='label-short'>+Mark</span></a>",
-      bookmarkUrl(p.getId()));
+    return "<a href='" + bookmarkUrl(p.getId())
+      + "' class='add-bookmark btn btn-link btn-sm' role='button'>"
+      + "<span class='label-full'>+Bookmark</span><span class='label-short'>+Mark</span></a>";
   }
   private String removeBookmarkLink(Post p) {
-    return String.format(
-      "<a href='%s' class='remove-bookmark btn btn-link btn-sm' role='button'>"
-      + "<span class='label-full'>-Bookmark</span><span class='label-short'>-Mark</span></a>",
-      removeBookmarkUrl(p.getId()));
+    return "<a href='" + removeBookmarkUrl(p.getId())
+      + "' class='remove-bookmark btn btn-link btn-sm' role='button'>"
+      + "<span class='label-full'>-Bookmark</span><span class='label-short'>-Mark</span></a>";
   }
 
   private boolean isBookmarked(Post p) {
@@ -115,13 +196,21 @@ public class PostsHtmlView implements View<String> {
       return "";
     } else {
       List<Post> postsToMark = unreadPostsToShow();
-      return String.format(
-        "<a class='mark-read-action' data-total-unread='%d' href='%s'>"
-        + "<small>Mark %d of %d read</small></a>",
-        unreadCount, markReadUrl(postsToMark), postsToMark.size(), unreadCount);
+      return "<a class='mark-read-action' data-total-unread='" + unreadCount
+        + "' href='" + markReadUrl(postsToMark) + "'><small>Mark "
+        + postsToMark.size() + " of " + unreadCount + " read</small></a>";
     }
   }
 
+  private String moreLink() {
+    if (next == null) {
+      return "";
+    }
+    String path = pageName == Name.bookmarks ? "/bookmarks" : "/show-read";
+    return "<a class='more-posts-action' href='" + path + "?after=" + next
+      + "'><small>More posts</small></a>";
+  }
+
   private int unreadCount() {
     return (int) posts.stream().filter(p -> !p.isRead()).count();
   }
@@ -145,32 +234,26 @@ public class PostsHtmlView implements View<String> {
     return "/remove-bookmark?post=" + id;
   }
 
-  private String errorPost(Post p) {
+  private void errorPost(StringBuilder sb, Post p) {
     boolean bookmarkedPost = p != null && isBookmarked(p);
-    String classes = String.format(
-      "list-group-item post error%s",
-      bookmarkedPost ? " bookmarked" : "");
-    StringBuilder builder = new StringBuilder(String.format(
-      "<li class='%s'><small>Could not render post %s</small>",
-      classes, safePostId(p)));
+    sb.append("<li class='list-group-item post error")
+      .append(bookmarkedPost ? " bookmarked" : "")
+      .append("'><small>Could not render post ").append(safePostId(p))
+      .append("</small>");
     if (bookmarkedPost) {
-      builder.append(" <span class='post-actions'>")
-             .append(removeBookmarkLink(p))
-             .append("</span>");
+      sb.append(" <span class='post-actions'>")
+        .append(removeBookmarkLink(p))
+        .append("</span>");
     }
-    return builder.append("</li>").toString();
+    sb.append("</li>");
   }
 
   private String header() {
-    if (unreadCount > 0) {
-      return Pages.headerTemplate(pageName, String.format(
-        "%d of %d posts - Fiets", displayedPostsCount(), unreadCount),
-        unreadCount, bookmarked.size());
-    } else {
-      return Pages.headerTemplate(pageName,
-        String.format("%d posts - Fiets", displayedPostsCount()),
-        unreadCount, bookmarked.size());
-    }
+    String title = unreadCount > 0
+      ? displayedPostsCount() + " of " + unreadCount + " posts - Fiets"
+      : displayedPostsCount() + " posts - Fiets";
+    return Pages.headerTemplate(
+      pageName, title, unreadCount, bookmarked.size());
   }
 
   private int displayedPostsCount() {
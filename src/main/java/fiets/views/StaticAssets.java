@@ -0,0 +1,208 @@
+package fiets.views;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import fiets.Gzip;
+import fiets.ResponseCache;
+import fiets.Server;
+
+/**
+ * The static assets, read once from the working directory or the classpath
+ * and kept in memory along with their compressed variant. Pages refer to
+ * them by fingerprinted URLs, which contain a hash of the content and thus
+ * change with it, so browsers may keep them forever.
+ */
+public final class StaticAssets {
+
+  private static final Logger log = LogManager.getLogger();
+  private static final Pattern FINGERPRINTED =
+    Pattern.compile("(.+)\\.([0-9a-f]{8})(\\.[A-Za-z0-9]+)");
+  private static final Map<String, Asset> ASSETS = new ConcurrentHashMap<>();
+
+  // immutable
+  public static class Asset {
+    private final String path;
+    private final String mimeType;
+    private final byte[] data;
+    private final byte[] gzipped;
+    private final String etag;
+
+    private Asset(String thePath, String theMimeType, byte[] theData) {
+      path = thePath;
+      mimeType = theMimeType;
+      data = theData;
+      gzipped = Gzip.isWorthIt(mimeType, data.length)
+        ? Gzip.compress(data) : null;
+      etag = ResponseCache.etag(data);
+    }
+
+    public String getMimeType() {
+      return mimeType;
+    }
+
+    public byte[] getData() {
+      return data;
+    }
+
+    /**
+     * @return the compressed data, <code>null</code> if not worth it
+     */
+    public byte[] getGzipped() {
+      return gzipped;
+    }
+
+    public String getEtag() {
+      return etag;
+    }
+
+    /**
+     * @return 8 hex digits derived from the content
+     */
+    public String getFingerprint() {
+      return etag.substring(1, 9);
+    }
+
+    /**
+     * @return the path with the fingerprint before the extension, e.g.
+     * <code>static/styles.0a1b2c3d.css</code>
+     */
+    public String getFingerprintedPath() {
+      int dot = path.lastIndexOf('.');
+      return path.substring(0, dot) + '.' + getFingerprint()
+        + path.substring(dot);
+    }
+  }
+
+  // immutable
+  public static class Lookup {
+    private final Asset asset;
+    private final boolean current;
+
+    private Lookup(Asset theAsset, boolean theCurrent) {
+      asset = theAsset;
+      current = theCurrent;
+    }
+
+    public Asset getAsset() {
+      return asset;
+    }
+
+    /**
+     * @return <code>true</code> if it was requested by the fingerprint of
+     * its current content, which never changes
+     */
+    public boolean isCurrent() {
+      return current;
+    }
+  }
+
+  /**
+   * Load the assets ahead of the first request.
+   */
+  public static void preload(Collection<String> paths) {
+    long plain = 0;
+    long compressed = 0;
+    for (String path : paths) {
+      try {
+        Asset asset = get(path);
+        plain += asset.data.length;
+        compressed += asset.gzipped == null
+          ? asset.data.length : asset.gzipped.length;
+      } catch (IOException | IllegalArgumentException e) {
+        log.warn("Could not load asset {}: {}", path, e.getMessage());
+      }
+    }
+    log.info("Loaded {} assets with {} bytes, {} bytes compressed.",
+      ASSETS.size(), plain, compressed);
+  }
+
+  /**
+   * @param path the path of an asset, optionally fingerprinted
+   */
+  public static Lookup lookup(String path) throws IOException {
+    Asset asset = ASSETS.get(path);
+    if (asset != null) {
+      return new Lookup(asset, false);
+    }
+    Matcher m = FINGERPRINTED.matcher(path);
+    if (m.matches()) {
+      asset = get(m.group(1) + m.group(3));
+      return new Lookup(asset, asset.getFingerprint().equals(m.group(2)));
+    }
+    return new Lookup(get(path), false);
+  }
+
+  /**
+   * @return the fingerprinted path of an asset, the path itself if it
+   * cannot be loaded
+   */
+  public static String fingerprinted(String path) {
+    try {
+      return get(path).getFingerprintedPath();
+    } catch (IOException | IllegalArgumentException e) {
+      log.warn("Could not fingerprint asset {}: {}", path, e.getMessage());
+      return path;
+    }
+  }
+
+  private static Asset get(String path) throws IOException {
+    Asset asset = ASSETS.get(path);
+    if (asset == null) {
+      String mimeType = determineMimeType(path);
+      try (InputStream in = open(path)) {
+        asset = new Asset(path, mimeType, in.readAllBytes());
+      }
+      Asset loaded = ASSETS.putIfAbsent(path, asset);
+      if (loaded != null) {
+        asset = loaded;
+      }
+    }
+    return asset;
+  }
+
+  private static InputStream open(String path) throws FileNotFoundException {
+    InputStream stream;
+    File localFile = new File(path);
+    if (localFile.exists()) {
+      stream = new FileInputStream(localFile);
+    } else {
+      stream = Server.class.getResourceAsStream("/META-INF/resources/" + path);
+    }
+    if (stream == null) {
+      throw new FileNotFoundException(path);
+    }
+    return stream;
+  }
+
+  private static String determineMimeType(String path) {
+    if (path.endsWith(".css")) {
+      return "text/css";
+    } else if (path.endsWith(".js")) {
+      return "application/javascript";
+    } else if (path.endsWith(".map")) {
+      return "application/json";
+    } else if (path.endsWith(".png")) {
+      return "image/png";
+    } else if (path.endsWith(".ico")) {
+      return "image/x-icon";
+    } else if (path.endsWith(".webmanifest")) {
+      return "application/manifest+json";
+    } else {
+      throw new IllegalArgumentException("Unknown filetype to serve: " + path);
+    }
+  }
+
+  private StaticAssets() {}
+}
@@ -1,6 +1,40 @@
 package fiets.views;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import fiets.http.Status;
+
 public interface View<ContentType> {
   String getMimeType();
   ContentType getContent();
+
+  default Status getStatus() {
+    return Status.OK;
+  }
+
+  /**
+   * @return <code>true</code> if the view renders its content in parts with
+   * {@link #writeTo(OutputStream)}, so it can be sent while rendering
+   */
+  default boolean isStreaming() {
+    return false;
+  }
+
+  /**
+   * Write the content, text as UTF-8. Streaming views write each part as
+   * soon as it is rendered, the others render all of it first.
+   */
+  default void writeTo(OutputStream out) throws IOException {
+    Object content = getContent();
+    if (content instanceof InputStream) {
+      try (InputStream in = (InputStream) content) {
+        in.transferTo(out);
+      }
+    } else {
+      out.write(String.valueOf(content).getBytes(StandardCharsets.UTF_8));
+    }
+  }
 }
@@ -37,6 +37,26 @@ function updateUnreadCount(unread, visibleCount) {
   updateTitleCounts(visible, unread);
 }
 
+function fetchMorePosts($postList, next, done) {
+  $.ajax({
+    dataType: 'json',
+    url: '/more-posts',
+    data: {
+      view: $postList.data('view'),
+      after: next,
+      num: $postList.data('page-size')
+    },
+    cache: false
+  })
+  .done(function (data, textStatus, jqXHR) {
+    done($(data.html).filter('.post').toArray(), data.next || '');
+  })
+  .fail(function(jqXHR, textStatus, errorThrown) {
+    console.log(textStatus + " - " + errorThrown);
+    alert(textStatus);
+  });
+}
+
 function initPostPager() {
   var $postList = $('.posts-list');
   var $markRead = $('.mark-read-action');
@@ -51,15 +71,39 @@ function initPostPager() {
   }
 
   var postsCache = $postList.find('.post').detach().toArray();
+  var next = String($postList.data('next') || '');
+  var loading = false;
 
   function visiblePosts() {
     return postsCache.slice(0, pageSize);
   }
 
+  // Keep the following page at hand, so marking a page read can show the
+  // next one right away.
+  function prefetch() {
+    if (loading || next === '' || postsCache.length >= 2 * pageSize) {
+      return;
+    }
+    loading = true;
+    fetchMorePosts($postList, next, function (posts, theNext) {
+      loading = false;
+      var wasShort = postsCache.length < pageSize;
+      postsCache = postsCache.concat(posts);
+      next = theNext;
+      if (wasShort) {
+        renderVisiblePosts();
+      } else {
+        prefetch();
+      }
+    });
+  }
+
   function updateMarkReadLink() {
     var postsToMark = visiblePosts();
     if (postsToMark.length === 0) {
-      $postList.append('<li class="list-group-item"><small>No more posts.</small></li>');
+      if (!loading) {
+        $postList.append('<li class="list-group-item"><small>No more posts.</small></li>');
+      }
       $markRead.addClass('disabled').attr('aria-disabled', 'true');
       $markRead.find('small').text('No more posts to mark');
       return;
@@ -84,6 +128,7 @@ function initPostPager() {
     });
     updateMarkReadLink();
     updateUnreadCount(totalUnread, visiblePosts().length);
+    prefetch();
   }
 
   renderVisiblePosts();
@@ -115,22 +160,90 @@ function initPostPager() {
   });
 }
 
-setInterval(function () {
+function initMorePosts() {
+  var $postList = $('.posts-list');
+  var $more = $('.more-posts-action');
+  if ($postList.length === 0 || $more.length === 0) {
+    return;
+  }
+
+  var next = String($postList.data('next') || '');
+  var loading = false;
+
+  $more.on('click', function (evt) {
+    evt.preventDefault();
+    if (loading || next === '') {
+      return;
+    }
+    loading = true;
+    fetchMorePosts($postList, next, function (posts, theNext) {
+      loading = false;
+      $postList.append(posts);
+      next = theNext;
+      if (next === '') {
+        $more.remove();
+      }
+    });
+  });
+}
+
+function initCountEvents() {
+  if (typeof EventSource === 'undefined') {
+    return;
+  }
+  // Reconnects by itself and gets the current counts again then.
+  var source = new EventSource('/events');
+  source.addEventListener('counts', function (evt) {
+    var data = JSON.parse(evt.data);
+    updateUnreadCount(data.unread_count);
+    $('.bookmark-count').text(data.bookmark_count);
+  });
+}
+
+function followJob(url, $link) {
   $.ajax({
-    dataType: "json",
-    url: "/counts",
-    cache: false
+    url: url,
+    cache: false,
+    dataType: 'json'
   })
-  .done(function (data, textStatus, jqXHR) {
-    updateUnreadCount(data.unread_count);
+  .done(function (job) {
+    if (job.state === 'queued' || job.state === 'running') {
+      $link.text('Updating ' + job.feeds_done + '/' + job.feeds_total);
+      setTimeout(function () {
+        followJob(url, $link);
+      }, 1000);
+    } else if (job.state === 'done' && job.feeds_failed === 0) {
+      $link.text('Updated');
+    } else {
+      var feed = job.feeds.length > 0 ? job.feeds[0] : {};
+      $link.text('Failed').attr('title', feed.error || job.errors.join(' '));
+    }
   })
   .fail(function(jqXHR, textStatus, errorThrown) {
     console.log(textStatus + " - " + errorThrown);
-    alert(textStatus);
+    $link.text('Update');
   });
-}, 30000);
+}
 
 $('body')
+.on('click', '.feed-actions .update-feed', function (evt) {
+  evt.preventDefault();
+  var $link = $(this);
+  $.ajax({
+    url: $link.attr('href'),
+    cache: false,
+    dataType: 'json'
+  })
+  .done(function (data, textStatus, jqXHR) {
+    $link.text('Updating');
+    followJob(data.url, $link);
+  })
+  .fail(function(jqXHR, textStatus, errorThrown) {
+    console.log(textStatus + " - " + errorThrown);
+    var retry = jqXHR.getResponseHeader('Retry-After');
+    alert(retry ? 'Busy, please try again in ' + retry + ' s.' : textStatus);
+  });
+})
 .on('click', '.post-actions .add-bookmark,.post-actions .remove-bookmark', function (evt) {
   evt.preventDefault();
   var $link = $(this);
@@ -162,6 +275,7 @@ $('body')
   var title = link.closest('h3').attr('title');
   $('#filter-url').val(url);
   $('#filter-title').val(title);
+  $('#filter-apply').prop('checked', false);
   $('#add-filter').show();
   $('#edit-filter').hide();
   var modal = getEditFilterModal();
@@ -181,6 +295,7 @@ $('body')
   $('#filter-url-match').val(urlMatch);
   $('#filter-title').val(title);
   $('#filter-title-match').val(titleMatch);
+  $('#filter-apply').prop('checked', false);
   $('#edit-filter').show();
   $('#add-filter').hide();
   var modal = getEditFilterModal();
@@ -190,6 +305,13 @@ $('body')
 })
 ;
 
+function showFilterApplied(data) {
+  if ($('#filter-apply').prop('checked') && data) {
+    alert('The filter marked ' + data.marked + ' unread '
+      + (data.marked === 1 ? 'post' : 'posts') + ' read.');
+  }
+}
+
 $('#add-filter').click(function () {
   var form = $('#edit-filter-modal form');
   $.ajax({
@@ -202,6 +324,7 @@ $('#add-filter').click(function () {
       if (modal) {
         modal.hide();
       }
+      showFilterApplied(data);
   })
   .fail(function(jqXHR, textStatus, errorThrown) {
     console.log(textStatus + " - " + errorThrown);
@@ -220,6 +343,7 @@ $('#edit-filter').click(function () {
       if (modal) {
         modal.hide();
       }
+      showFilterApplied(data);
    })
    .fail(function(jqXHR, textStatus, errorThrown) {
      console.log(textStatus + " - " + errorThrown);
@@ -238,4 +362,6 @@ $('.bookmarklet').each(function () {
 
 $(function () {
   initPostPager();
+  initMorePosts();
+  initCountEvents();
 });
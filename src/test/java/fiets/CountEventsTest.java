@@ -0,0 +1,68 @@
+package fiets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import fiets.db.Database;
+
+public class CountEventsTest {
+
+  @Test
+  public void sendsCurrentCountsAndChanges() throws Exception {
+    CountEvents events = new CountEvents();
+    events.publish(3, 10, 1);
+    try (InputStream in = events.subscribe()) {
+      assertEquals(1, events.getSubscriberCount());
+      assertEquals("retry: 5000\n\n", next(in));
+      assertEquals("id: 1\nevent: counts\ndata: "
+        + "{\"unread_count\":3,\"full_count\":10,\"bookmark_count\":1}\n\n",
+        next(in));
+
+      events.publish(3, 10, 1);
+      events.publish(2, 10, 1);
+      assertEquals("id: 2\nevent: counts\ndata: "
+        + "{\"unread_count\":2,\"full_count\":10,\"bookmark_count\":1}\n\n",
+        next(in));
+    }
+    assertEquals(0, events.getSubscriberCount());
+  }
+
+  @Test
+  public void publishesChangesOfThePosts() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:events")) {
+      FeedService fs = new FeedService(db);
+      try (InputStream in = fs.subscribeCounts()) {
+        next(in);
+        assertTrue(next(in).contains("\"unread_count\":0,\"full_count\":0"));
+
+        try (Connection conn = db.writeConnection();
+          PreparedStatement ps = conn.prepareStatement(
+            "INSERT INTO post (id,date,location,snippet,title,read) VALUES "
+            + "(1,CURRENT_TIMESTAMP(),'http://example.com/1','','One',false)")) {
+          ps.executeUpdate();
+        }
+        fs.reconcileCounts();
+        assertTrue(next(in).contains("\"unread_count\":1,\"full_count\":1"));
+        fs.markPostsRead(Arrays.asList(1L));
+        assertTrue(next(in).contains("\"unread_count\":0,\"full_count\":1"));
+        fs.bookmarkPost(1L);
+        assertTrue(next(in).contains("\"bookmark_count\":1"));
+      }
+    }
+  }
+
+  private static String next(InputStream in) throws IOException {
+    byte[] buffer = new byte[1024];
+    int num = in.read(buffer);
+    return new String(buffer, 0, num, StandardCharsets.UTF_8);
+  }
+}
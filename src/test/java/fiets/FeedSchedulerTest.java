@@ -0,0 +1,67 @@
+package fiets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import fiets.db.Database;
+
+public class FeedSchedulerTest {
+
+  private static final long MIN = TimeUnit.MINUTES.toMillis(15);
+  private static final long MAX = TimeUnit.DAYS.toMillis(1);
+
+  @Test
+  public void pollsTwicePerGapBetweenPostsWithinTheBounds() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:interval")) {
+      FeedScheduler scheduler =
+        new FeedScheduler(new FeedService(db), MIN, MAX);
+      assertEquals(MAX, scheduler.interval(0));
+      assertEquals(MAX, scheduler.interval(-1));
+      assertEquals("One post a month", MAX, scheduler.interval(1));
+      assertEquals("Two posts a day", TimeUnit.HOURS.toMillis(6),
+        scheduler.interval(60));
+      assertEquals("Hundreds a day", MIN, scheduler.interval(30 * 24 * 10));
+    }
+  }
+
+  @Test
+  public void jittersByATenthAtMost() {
+    long interval = TimeUnit.HOURS.toMillis(1);
+    long least = Long.MAX_VALUE;
+    long most = Long.MIN_VALUE;
+    for (int i = 0; i < 10_000; i++) {
+      long jittered = FeedScheduler.jitter(interval);
+      least = Math.min(least, jittered);
+      most = Math.max(most, jittered);
+    }
+    assertTrue(least >= interval * 9 / 10);
+    assertTrue(most <= interval * 11 / 10);
+    assertTrue("Spread out", most - least > interval / 10);
+  }
+
+  @Test
+  public void putsDueFeedsBackWhenTheDatabaseFails() throws Exception {
+    Database db = new Database("jdbc:h2:mem:retry");
+    FeedScheduler scheduler = new FeedScheduler(new FeedService(db), MIN, MAX);
+    db.close();
+    long before = System.currentTimeMillis();
+    try {
+      scheduler.update(Collections.singletonList(7L));
+      fail("Updated without a database");
+    } catch (SQLException expected) {
+      // Put back below.
+    }
+    Long at = scheduler.dueAt(7L);
+    assertNotNull("Feed is queued again", at);
+    assertTrue(at >= before + MIN);
+    assertTrue(at <= System.currentTimeMillis() + MIN);
+  }
+}
@@ -0,0 +1,138 @@
+package fiets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fiets.model.Filter;
+import fiets.model.FilterMatch;
+import fiets.model.Post;
+
+public class FiltererTest {
+
+  private static final String[] REGEXES = {
+    "a.*", ".*b", "(ab)+c?", "[bc]*", ".*ca.*", "", ".*\\bab\\b.*",
+    "ab+c.*", "(a|b)ca", "a?bc?a.*", ".*c{2}a", "[^a]\\.?b.*"
+  };
+
+  @Test
+  public void matchesLikeTheFiltersOneByOne() {
+    Random random = new Random(7);
+    for (int round = 0; round < 50; round++) {
+      List<Filter> filters = new ArrayList<>();
+      for (int i = 0; i < 1 + random.nextInt(40); i++) {
+        FilterMatch urlMatch = match(random);
+        FilterMatch titleMatch = match(random);
+        filters.add(new Filter(i, pattern(random, urlMatch), urlMatch,
+          pattern(random, titleMatch), titleMatch, 0));
+      }
+      Filterer ff = new Filterer(filters);
+      for (int p = 0; p < 200; p++) {
+        Post post = post(text(random, 8), text(random, 8));
+        assertEquals(post + " with " + filters.size() + " filters",
+          firstMatch(filters, post), ff.firstMatch(post));
+      }
+    }
+  }
+
+  @Test
+  public void countsTheFirstMatchingFilter() {
+    Filter first = new Filter(1, "", FilterMatch.IGNORE,
+      "news", FilterMatch.CONTAINS, 0);
+    Filter second = new Filter(2, "http://example.com/",
+      FilterMatch.STARTS_WITH, "", FilterMatch.IGNORE, 3);
+    Filter broken = new Filter(3, "(", FilterMatch.REGEX,
+      "", FilterMatch.IGNORE, 0);
+    Filterer ff = new Filterer(Arrays.asList(broken, first, second));
+    assertFalse(ff.isAllowed(post("Good news", "http://example.com/1")));
+    assertFalse(ff.isAllowed(post("Other", "http://example.com/2")));
+    assertTrue(ff.isAllowed(post("Other", "http://example.org/3")));
+    assertFalse(ff.isAllowed(post("news", "http://example.com/4")));
+    Map<Long, Long> expected = new HashMap<>();
+    expected.put(1L, 2L);
+    expected.put(2L, 1L);
+    assertEquals(expected, ff.getMatchCounts());
+    assertEquals(-1, ff.firstMatch(post(null, "http://example.org/5")));
+  }
+
+  @Test
+  public void countsMatchesInParallel() throws Exception {
+    Filterer ff = new Filterer(Arrays.asList(new Filter(1, "",
+      FilterMatch.IGNORE, "news", FilterMatch.CONTAINS, 0)));
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 10000; i++) {
+          ff.isAllowed(post(i % 2 == 0 ? "news" : "other", ""));
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(Collections.singletonMap(1L, 40000L), ff.getMatchCounts());
+  }
+
+  @Test
+  public void findsTextThatRegexesNeed() {
+    assertEquals("news", FilterMatch.requiredLiteral(".*\\bnews\\b.*"));
+    assertEquals("://example.com/",
+      FilterMatch.requiredLiteral("https?://example\\.com/.*"));
+    assertEquals("ab", FilterMatch.requiredLiteral("x?abc*d"));
+    assertEquals("foo", FilterMatch.requiredLiteral("(bar)+foo[a-z]{2}"));
+    assertNull(FilterMatch.requiredLiteral("foo|bar"));
+    assertNull(FilterMatch.requiredLiteral("(?i)foo"));
+    assertNull(FilterMatch.requiredLiteral("\\x41bc"));
+    assertNull(FilterMatch.requiredLiteral(".*"));
+  }
+
+  private static int firstMatch(List<Filter> filters, Post post) {
+    for (int i = 0; i < filters.size(); i++) {
+      Filter f = filters.get(i);
+      if (f.getTitleMatch().matches(f.getTitle(), post.getTitle())
+        && f.getUrlMatch().matches(f.getUrl(), post.getLocation())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static FilterMatch match(Random random) {
+    FilterMatch[] all = FilterMatch.values();
+    return all[random.nextInt(all.length)];
+  }
+
+  private static String pattern(Random random, FilterMatch match) {
+    if (match == FilterMatch.REGEX) {
+      return REGEXES[random.nextInt(REGEXES.length)];
+    }
+    return text(random, 3);
+  }
+
+  /**
+   * @return a short text of few letters, so that patterns overlap a lot
+   */
+  private static String text(Random random, int maxLength) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = random.nextInt(maxLength + 1); i > 0; i--) {
+      sb.append((char) ('a' + random.nextInt(3)));
+    }
+    return sb.toString();
+  }
+
+  private static Post post(String title, String location) {
+    return new Post(0, location, null, title, "", false, null);
+  }
+}
@@ -0,0 +1,98 @@
+package fiets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import fiets.http.Response;
+import fiets.model.Feed;
+import fiets.model.Post;
+import fiets.views.JsonView;
+import fiets.views.Pages;
+import fiets.views.Pages.Name;
+import fiets.views.PostsHtmlView;
+import fiets.views.StaticAssets;
+import jodd.json.JsonObject;
+
+public class GzipTest {
+
+  @Test
+  public void compressesTextAboveTheThreshold() throws Exception {
+    JsonObject json = new JsonObject();
+    for (int i = 0; i < 200; i++) {
+      json.put("item" + i, "Some text of item " + i);
+    }
+    String content = json.toString();
+    assertTrue(content.length() > Gzip.MIN_BYTES);
+
+    Response rsp = Server.respond(new JsonView(json), true);
+    assertEquals("gzip", rsp.getHeader("Content-Encoding"));
+    assertEquals("Accept-Encoding", rsp.getHeader("Vary"));
+    assertEquals(content, gunzip(rsp.getData()));
+
+    rsp = Server.respond(new JsonView(json), false);
+    assertNull(rsp.getHeader("Content-Encoding"));
+    assertEquals(content, read(rsp.getData()));
+
+    rsp = Server.respond(new JsonView(Server.jsonOk()), true);
+    assertNull("Too short to compress", rsp.getHeader("Content-Encoding"));
+  }
+
+  @Test
+  public void compressesStreamedPages() throws Exception {
+    List<Post> posts = new ArrayList<>();
+    Feed feed = new Feed(1L, "http://example.com/feed", "Feed", null, "OK");
+    for (int i = 0; i < 100; i++) {
+      posts.add(new Post(i + 1L, "http://example.com/" + i, new Date(),
+        "Title " + i, "Snippet " + i, false, feed));
+    }
+    PostsHtmlView view = new PostsHtmlView(
+      Name.unread, posts, Collections.emptySet(), posts.size());
+    String content = view.getContent();
+    Response rsp = Server.respond(view, true);
+    assertEquals("gzip", rsp.getHeader("Content-Encoding"));
+    assertEquals(content, gunzip(rsp.getData()));
+  }
+
+  @Test
+  public void decidesByMimeType() {
+    assertTrue(Gzip.isCompressible("text/html"));
+    assertTrue(Gzip.isCompressible("application/javascript"));
+    assertTrue(Gzip.isCompressible("application/manifest+json"));
+    assertFalse(Gzip.isCompressible("image/png"));
+    assertFalse(Gzip.isCompressible("text/event-stream"));
+    assertFalse(Gzip.isWorthIt("text/html", Gzip.MIN_BYTES - 1));
+    assertTrue(Gzip.isWorthIt("text/html", Gzip.MIN_BYTES));
+  }
+
+  @Test
+  public void findsTheStaticAssetsOfThePages() {
+    assertTrue(Pages.staticAssets().contains("static/styles.css"));
+    assertTrue(Pages.staticAssets().contains("static/jquery.min.js"));
+    String header = Pages.headerTemplate(Name.unread, "Title", 0, 0);
+    assertTrue(header.contains(
+      "href=\"/" + StaticAssets.fingerprinted("static/styles.css") + "\""));
+  }
+
+  private static String gunzip(InputStream in) throws IOException {
+    return read(new GZIPInputStream(in));
+  }
+
+  private static String read(InputStream in) throws IOException {
+    try (in) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package fiets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import fiets.model.Feed;
+import jodd.json.JsonArray;
+import jodd.json.JsonObject;
+
+public class JobsTest {
+
+  @Test
+  public void reportsTheProgressOfEachFeed() throws Exception {
+    RefreshCoordinator rc = new RefreshCoordinator((f, u, p) -> {}, 2, 0);
+    Jobs jobs = new Jobs(10);
+    CountDownLatch finish = new CountDownLatch(1);
+    Feed ok = feed(1);
+    Feed broken = feed(2);
+    Job job = jobs.submit("update", rc.admit(), j -> {
+      j.pending(Arrays.asList(ok, broken));
+      j.fetching(ok);
+      j.refreshed(ok, null);
+      j.refreshed(broken, new IOException("Gone"));
+      finish.await(5, TimeUnit.SECONDS);
+    });
+    assertSame(job, jobs.get(job.getId()));
+    assertSame(job, jobs.getUnfinished("update"));
+    assertEquals(1, rc.getHeavyCount());
+
+    finish.countDown();
+    waitFor(job);
+    assertNull(jobs.getUnfinished("update"));
+    assertEquals(0, rc.getHeavyCount());
+    JsonObject json = job.toJson();
+    assertEquals("done", json.getString("state"));
+    assertEquals(2, (int) json.getInteger("feeds_total"));
+    assertEquals(1, (int) json.getInteger("feeds_done"));
+    assertEquals(1, (int) json.getInteger("feeds_failed"));
+    JsonArray feeds = json.getJsonArray("feeds");
+    assertEquals("done", feeds.getJsonObject(0).getString("state"));
+    assertTrue(feeds.getJsonObject(0).containsKey("millis"));
+    assertEquals("Gone", feeds.getJsonObject(1).getString("error"));
+  }
+
+  @Test
+  public void reportsFailedJobs() throws Exception {
+    RefreshCoordinator rc = new RefreshCoordinator((f, u, p) -> {}, 2, 0);
+    Jobs jobs = new Jobs(1);
+    Job first = jobs.submit("add-feed", rc.admit(), j -> {
+      throw new IllegalStateException("Broken");
+    });
+    waitFor(first);
+    assertEquals(Job.State.failed, first.getState());
+    assertEquals(0, rc.getHeavyCount());
+    assertEquals("Broken",
+      first.toJson().getJsonArray("errors").getString(0));
+
+    Job second = jobs.submit("add-feed", rc.admit(), j -> {});
+    waitFor(second);
+    assertNull("Only the latest job is kept", jobs.get(first.getId()));
+    assertEquals(0, rc.getHeavyCount());
+  }
+
+  private static void waitFor(Job job) throws InterruptedException {
+    for (int i = 0; i < 500 && !job.isFinished(); i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(job.isFinished());
+  }
+
+  private static Feed feed(long id) {
+    return new Feed(id, "http://example.com/" + id, "Feed " + id, null, "OK");
+  }
+}
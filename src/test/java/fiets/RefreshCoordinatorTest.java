@@ -0,0 +1,140 @@
+package fiets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import fiets.http.Status;
+import fiets.model.Feed;
+
+public class RefreshCoordinatorTest {
+
+  @Test
+  public void coalescesRefreshesOfTheSameFeeds() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    List<Long> refreshed = Collections.synchronizedList(new ArrayList<>());
+    RefreshCoordinator rc = new RefreshCoordinator((feeds, urgent, p) -> {
+      for (Feed feed : feeds) {
+        refreshed.add(feed.getId());
+      }
+      started.countDown();
+      await(finish);
+    }, 1, 0);
+
+    List<Feed> all = Arrays.asList(feed(1), feed(2));
+    Thread first = Thread.ofVirtual().start(() -> refresh(rc, all));
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    assertEquals(2, rc.getRefreshingCount());
+    // Joins without taking the only slot.
+    List<Feed> joined = Collections.synchronizedList(new ArrayList<>());
+    Thread second = Thread.ofVirtual().start(() -> {
+      RefreshCoordinator.Slot slot = rc.admit(all);
+      try {
+        rc.refresh(all, true, new RefreshProgress() {
+          @Override public void joined(Feed feed) {
+            joined.add(feed);
+          }
+        });
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      } finally {
+        slot.close();
+      }
+    });
+    second.join(200);
+    assertTrue("Waits for the refresh in progress", second.isAlive());
+    assertEquals(all, joined);
+
+    finish.countDown();
+    first.join();
+    second.join();
+    assertEquals(Arrays.asList(1L, 2L), refreshed);
+    assertEquals(0, rc.getRefreshingCount());
+    assertEquals(0, rc.getHeavyCount());
+  }
+
+  @Test
+  public void turnsAwayHeavyWorkWhenSaturated() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    RefreshCoordinator rc = new RefreshCoordinator((feeds, urgent, p) -> {
+      started.countDown();
+      await(finish);
+    }, 1, 0);
+    Thread busy = Thread.ofVirtual().start(
+      () -> refresh(rc, Collections.singletonList(feed(1))));
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    try {
+      rc.admit(Collections.singletonList(feed(2)));
+      fail("Expected to be turned away.");
+    } catch (OverloadedException e) {
+      assertEquals(Status.SERVICE_UNAVAILABLE, e.getStatus());
+      assertTrue(e.getRetryAfterSeconds() >= 1);
+    }
+    finish.countDown();
+    busy.join();
+    rc.admit(Collections.singletonList(feed(2))).close();
+  }
+
+  @Test
+  public void limitsTheRateOfUpdatingAll() throws Exception {
+    int[] calls = new int[1];
+    RefreshCoordinator rc = new RefreshCoordinator(
+      (feeds, urgent, p) -> calls[0]++, 2, TimeUnit.MINUTES.toMillis(1));
+    List<Feed> all = Arrays.asList(feed(1), feed(2));
+    RefreshCoordinator.Slot first = rc.admitAll(all);
+    try {
+      rc.refresh(all);
+    } finally {
+      first.close();
+    }
+    try {
+      rc.admitAll(all);
+      fail("Expected to be turned away.");
+    } catch (OverloadedException e) {
+      assertEquals(Status.TOO_MANY_REQUESTS, e.getStatus());
+      assertTrue(e.getRetryAfterSeconds() > 50);
+    }
+    RefreshCoordinator.Slot second = rc.admit(all);
+    try {
+      rc.refresh(all);
+    } finally {
+      second.close();
+    }
+    assertEquals(2, calls[0]);
+    assertEquals(0, rc.getHeavyCount());
+  }
+
+  private static void refresh(RefreshCoordinator rc, List<Feed> feeds) {
+    RefreshCoordinator.Slot slot = rc.admit(feeds);
+    try {
+      rc.refresh(feeds, true, RefreshProgress.NONE);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    } finally {
+      slot.close();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static Feed feed(long id) {
+    return new Feed(id, "http://example.com/" + id, "Feed " + id, null, "OK");
+  }
+}
@@ -0,0 +1,82 @@
+package fiets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import fiets.model.Feed;
+
+public class RefreshEngineTest {
+
+  @Test
+  public void fetchesUrgentFeedsFirst() throws Exception {
+    RefreshEngine engine = new RefreshEngine(1, 10);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    List<Long> fetched = Collections.synchronizedList(new ArrayList<>());
+    RefreshEngine.Fetcher<Long> fetcher = feed -> {
+      fetched.add(feed.getId());
+      if (feed.getId() == 1L) {
+        started.countDown();
+        finish.await(5, TimeUnit.SECONDS);
+      }
+      return feed.getId();
+    };
+    RefreshEngine.Sink<Long> sink = (feed, id) -> {};
+
+    Thread first = Thread.ofVirtual().start(() -> engine.refresh(
+      Collections.singletonList(feed(1)), false, fetcher, sink));
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    Thread background = Thread.ofVirtual().start(() -> engine.refresh(
+      Arrays.asList(feed(2), feed(3)), false, fetcher, sink));
+    awaitWaiting(engine, 2);
+    // Waits for the only slot, behind the background feeds.
+    Thread urgent = Thread.ofVirtual().start(() -> engine.refresh(
+      Collections.singletonList(feed(4)), true, fetcher, sink));
+    awaitWaiting(engine, 3);
+    finish.countDown();
+    first.join();
+    background.join();
+    urgent.join();
+
+    assertEquals(4, fetched.size());
+    assertEquals(Long.valueOf(1), fetched.get(0));
+    assertEquals(Long.valueOf(4), fetched.get(1));
+  }
+
+  @Test
+  public void forgetsHostsNoLongerFetchedFrom() throws Exception {
+    RefreshEngine engine = new RefreshEngine(2, 1);
+    List<Feed> feeds = Arrays.asList(feed(1), feed(2), feed(3), feed(1));
+    RefreshEngine.Report report = engine.refresh(feeds, feed -> {
+      if (feed.getId() == 3L) {
+        throw new IllegalStateException("Broken");
+      }
+      return feed.getId();
+    }, (feed, id) -> {});
+    assertEquals(1, report.getFailed());
+    assertEquals(0, engine.getHostCount());
+  }
+
+  private static void awaitWaiting(RefreshEngine engine, int count)
+    throws InterruptedException {
+    long end = System.currentTimeMillis() + 5000;
+    while (engine.getWaitingCount() < count) {
+      assertTrue("Fetches waiting", System.currentTimeMillis() < end);
+      Thread.sleep(10);
+    }
+  }
+
+  private static Feed feed(long id) {
+    return new Feed(id, "http://host" + id + ".example.com/feed",
+      "Feed " + id, null, "OK");
+  }
+}
@@ -0,0 +1,91 @@
+package fiets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import fiets.db.Database;
+import fiets.model.FilterMatch;
+
+public class ResponseCacheTest {
+
+  @Test
+  public void servesEntriesOfTheCurrentVersionOnly() {
+    ResponseCache cache = new ResponseCache(2);
+    ResponseCache.Entry entry = cache.put("a", 1, "text/html", bytes("A"));
+    assertSame(entry, cache.get("a", 1));
+    assertNull(cache.get("a", 2));
+    assertNull(cache.get("b", 1));
+
+    // A slow rendering of an older version does not replace a newer one.
+    ResponseCache.Entry newer = cache.put("a", 3, "text/html", bytes("A3"));
+    cache.put("a", 2, "text/html", bytes("A2"));
+    assertSame(newer, cache.get("a", 3));
+
+    cache.put("b", 3, "text/html", bytes("B"));
+    cache.get("a", 3);
+    cache.put("c", 3, "text/html", bytes("C"));
+    assertEquals(2, cache.size());
+    assertNull("Least recently used is dropped", cache.get("b", 3));
+    assertSame(newer, cache.get("a", 3));
+  }
+
+  @Test
+  public void etagsFollowTheContent() {
+    ResponseCache cache = new ResponseCache(4);
+    ResponseCache.Entry a = cache.put("a", 1, "text/html", bytes("same"));
+    ResponseCache.Entry b = cache.put("b", 2, "text/html", bytes("same"));
+    ResponseCache.Entry c = cache.put("c", 2, "text/html", bytes("other"));
+    assertEquals(a.getEtag(), b.getEtag());
+    assertNotEquals(a.getEtag(), c.getEtag());
+
+    assertTrue(a.isMatchedBy(a.getEtag()));
+    assertTrue(a.isMatchedBy("\"x\", W/" + a.getEtag()));
+    assertTrue(a.isMatchedBy("*"));
+    assertFalse(a.isMatchedBy(c.getEtag()));
+    assertFalse(a.isMatchedBy(null));
+  }
+
+  @Test
+  public void etagsStartWithTheChecksum() {
+    String etag = ResponseCache.etag(bytes("x"));
+    assertTrue(etag, etag.matches("\"[0-9a-f]{8}-1\""));
+    assertEquals(etag.substring(0, 11) + "-gzip\"",
+      ResponseCache.gzipEtag(etag));
+    assertTrue(ResponseCache.matches(etag, etag));
+    assertFalse(ResponseCache.matches(ResponseCache.gzipEtag(etag), etag));
+  }
+
+  @Test
+  public void dataVersionChangesWithTheData() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:version")) {
+      FeedService fs = new FeedService(db);
+      long version = fs.getDataVersion();
+      fs.getUnreadPage(null, 10);
+      fs.getAllFeedInfos();
+      assertEquals(version, fs.getDataVersion());
+
+      fs.markPostsRead(Collections.singletonList(1L));
+      long marked = fs.getDataVersion();
+      assertTrue(marked > version);
+      fs.bookmarkPost(1L);
+      assertTrue(fs.getDataVersion() > marked);
+      long bookmarked = fs.getDataVersion();
+      fs.addFilter(
+        "example.com", FilterMatch.IGNORE, "", FilterMatch.IGNORE, false);
+      assertTrue(fs.getDataVersion() > bookmarked);
+    }
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,45 @@
+package fiets.bench;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Minimal harness for the benchmarks: runs a task repeatedly after a warm-up
+ * and reports time and heap allocation per run, measured for the current
+ * thread.
+ */
+public final class Bench {
+
+  public interface Task {
+    void run() throws Exception;
+  }
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  /**
+   * @return nanoseconds per run
+   */
+  public static double measure(String name, int warmup, int runs, Task task)
+    throws Exception {
+    for (int i = 0; i < warmup; i++) {
+      task.run();
+    }
+    long allocBefore = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < runs; i++) {
+      task.run();
+    }
+    long nanos = System.nanoTime() - start;
+    long alloc = allocatedBytes() - allocBefore;
+    double perRun = nanos / (double) runs;
+    System.out.printf("%-40s %12.1f us/op %12.1f ops/s %12d bytes/op%n",
+      name, perRun / 1000d, 1e9d / perRun, alloc / runs);
+    return perRun;
+  }
+
+  public static long allocatedBytes() {
+    return THREADS.getCurrentThreadAllocatedBytes();
+  }
+
+  private Bench() {}
+}
@@ -0,0 +1,87 @@
+package fiets.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fiets.Filterer;
+import fiets.model.Filter;
+import fiets.model.FilterMatch;
+import fiets.model.Post;
+
+/**
+ * Filters a cycle's worth of posts with growing numbers of filters of all
+ * kinds, one filter after the other (as before) and compiled, and reports
+ * the time per post as well as the time to compile the filters.
+ *
+ * Usage: FilterBenchmark [posts] [runs]
+ */
+public class FilterBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int num = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    List<Post> posts = RenderBenchmark.posts(num);
+    for (int count : new int[] {10, 100, 1000}) {
+      List<Filter> filters = filters(count);
+      double oneByOne = Bench.measure(count + " filters, one by one",
+        runs, runs, () -> {
+          for (Post post : posts) {
+            oneByOne(filters, post);
+          }
+        });
+      Bench.measure(count + " filters, compiling", runs, runs,
+        () -> new Filterer(filters));
+      Filterer ff = new Filterer(filters);
+      double compiled = Bench.measure(count + " filters, compiled",
+        runs, runs, () -> {
+          for (Post post : posts) {
+            ff.isAllowed(post);
+          }
+        });
+      System.out.printf("%d filters: %.2f us vs %.2f us per post (%.0fx)%n",
+        count, oneByOne / num / 1000d, compiled / num / 1000d,
+        oneByOne / compiled);
+    }
+  }
+
+  private static boolean oneByOne(List<Filter> filters, Post post) {
+    for (Filter f : filters) {
+      if (f.getTitleMatch().matches(f.getTitle(), post.getTitle())
+        && f.getUrlMatch().matches(f.getUrl(), post.getLocation())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return filters of all kinds, a few of them matching some posts
+   */
+  private static List<Filter> filters(int count) {
+    List<Filter> filters = new ArrayList<>(count);
+    FilterMatch[] matches = {
+      FilterMatch.CONTAINS, FilterMatch.CONTAINS, FilterMatch.STARTS_WITH,
+      FilterMatch.ENDS_WITH, FilterMatch.REGEX
+    };
+    for (int i = 0; i < count; i++) {
+      FilterMatch match = matches[i % matches.length];
+      String word = "word" + i;
+      String title;
+      switch (match) {
+        case REGEX:
+          title = ".*\\b" + word + "\\b.*";
+          break;
+        case STARTS_WITH:
+          title = "Title of <b>post</b> " + i + "9 ";
+          break;
+        default:
+          title = word;
+      }
+      String url = i % 7 == 0 ? "http://example.com/post/" + i : "";
+      FilterMatch urlMatch = url.isEmpty() ? FilterMatch.IGNORE
+        : FilterMatch.STARTS_WITH;
+      filters.add(new Filter(i, url, urlMatch, title, match, 0));
+    }
+    return filters;
+  }
+}
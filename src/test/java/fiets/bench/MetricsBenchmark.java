@@ -0,0 +1,69 @@
+package fiets.bench;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import fiets.db.Database;
+import fiets.metrics.Counter;
+import fiets.metrics.Histogram;
+import fiets.metrics.Metrics;
+
+/**
+ * Measures what recording metrics costs: a counter, a histogram and a
+ * short query on the bare H2 connection against one through the pooled
+ * connections of {@link Database}, prepared as is and timed.
+ *
+ * Usage: MetricsBenchmark [runs]
+ */
+public class MetricsBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int runs = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    Counter counter = Metrics.counter("bench_total", "Benchmark.");
+    Histogram histogram = Metrics.histogram("bench_seconds", "Benchmark.");
+    Bench.measure("counter", runs, runs, counter::inc);
+    Bench.measure("histogram", runs, runs,
+      () -> histogram.recordSince(System.nanoTime()));
+    Bench.measure("nanoTime", runs, runs, System::nanoTime);
+
+    String url = "jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1";
+    int queries = runs / 10;
+    try (Connection raw = DriverManager.getConnection(url, "sa", "");
+      Database db = new Database(url, 1)) {
+      Bench.measure("query, bare", queries, queries, () -> query(raw));
+      Bench.measure("query, pooled", queries, queries, () -> {
+        try (Connection conn = db.readConnection()) {
+          query(conn);
+        }
+      });
+      Bench.measure("query, pooled and timed", queries, queries, () -> {
+        try (Connection conn = db.readConnection()) {
+          timedQuery(conn);
+        }
+      });
+    }
+    System.out.println(Metrics.scrape().length() + " bytes exposed");
+  }
+
+  private static void query(Connection conn) throws Exception {
+    try (PreparedStatement ps = conn.prepareStatement("SELECT ?")) {
+      run(ps);
+    }
+  }
+
+  private static void timedQuery(Connection conn) throws Exception {
+    try (PreparedStatement ps =
+      Database.prepare(conn, "MetricsBenchmark.timedQuery", "SELECT ?")) {
+      run(ps);
+    }
+  }
+
+  private static void run(PreparedStatement ps) throws Exception {
+    ps.setInt(1, 1);
+    try (ResultSet rs = ps.executeQuery()) {
+      rs.next();
+    }
+  }
+}
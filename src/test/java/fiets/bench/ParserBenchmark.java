@@ -0,0 +1,64 @@
+package fiets.bench;
+
+import java.util.List;
+
+import fiets.model.Feed;
+import fiets.model.Post;
+import fiets.processors.AtomFeedProcessor;
+import fiets.processors.DomFeedReference;
+import fiets.processors.RssFeedProcessor;
+import fiets.sources.FeedContent;
+
+/**
+ * Compares the streaming RSS/Atom processors with the former DOM and XPath
+ * based parsing in throughput and allocation.
+ *
+ * Usage: ParserBenchmark [items] [runs]
+ */
+public class ParserBenchmark {
+
+  private static final Feed FEED =
+    new Feed(1L, "http://example.com/feed", "Example", null, "OK");
+
+  public static void main(String[] args) throws Exception {
+    int items = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+    String rss = RefreshBenchmark.rss("/bench", items);
+    String atom = atom(items);
+    System.out.printf("RSS %d KB, Atom %d KB, %d items each%n",
+      rss.length() / 1024, atom.length() / 1024, items);
+
+    RssFeedProcessor rssProcessor = new RssFeedProcessor();
+    AtomFeedProcessor atomProcessor = new AtomFeedProcessor();
+    double rssDom = Bench.measure("rss dom+xpath", 5, runs,
+      () -> check(DomFeedReference.rssPosts(FEED, rss), items));
+    double rssStax = Bench.measure("rss stax", 5, runs,
+      () -> check(rssProcessor.parsePosts(FEED, FeedContent.of(rss)), items));
+    double atomDom = Bench.measure("atom dom+xpath", 5, runs,
+      () -> check(DomFeedReference.atomPosts(FEED, atom), items));
+    double atomStax = Bench.measure("atom stax", 5, runs,
+      () -> check(atomProcessor.parsePosts(FEED, FeedContent.of(atom)), items));
+    System.out.printf("speedup rss %.1fx, atom %.1fx%n",
+      rssDom / rssStax, atomDom / atomStax);
+  }
+
+  private static void check(List<Post> posts, int items) {
+    if (posts.size() != items) {
+      throw new IllegalStateException("Unexpected number of posts.");
+    }
+  }
+
+  private static String atom(int items) {
+    StringBuilder sb = new StringBuilder(
+      "<?xml version='1.0' encoding='utf-8'?>"
+      + "<feed xmlns='http://www.w3.org/2005/Atom'><title>Bench</title>");
+    for (int i = 0; i < items; i++) {
+      sb.append("<entry><title>Entry ").append(i).append("</title>")
+        .append("<link rel='alternate' href='http://example.net/")
+        .append(i).append("'/><updated>2020-01-06T10:00:00Z</updated>")
+        .append("<content type='html'>&lt;p&gt;Some text ").append(i)
+        .append("&lt;/p&gt;</content></entry>");
+    }
+    return sb.append("</feed>").toString();
+  }
+}
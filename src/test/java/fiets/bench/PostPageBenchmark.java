@@ -0,0 +1,73 @@
+package fiets.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import fiets.db.Database;
+import fiets.db.FeedDao;
+import fiets.db.PostDao;
+import fiets.model.Feed;
+import fiets.model.Post;
+import fiets.model.PostCursor;
+import fiets.model.PostPage;
+import fiets.views.Pages.Name;
+import fiets.views.PostsHtmlView;
+
+/**
+ * Renders the unread page the way it used to (all unread posts) and as a
+ * keyset page, both the first one and one from the middle of the list, for
+ * several numbers of unread posts.
+ *
+ * Usage: PostPageBenchmark [runs] [unread,...]
+ */
+public class PostPageBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    String sizes = args.length > 1 ? args[1] : "1000,50000";
+    int num = PostsHtmlView.DEFAULT_PAGE_SIZE;
+    for (String size : sizes.split(",")) {
+      int unread = Integer.parseInt(size.trim());
+      Path dir = Files.createTempDirectory("fiets-bench");
+      try (Database db = new Database(
+        "jdbc:h2:" + dir.resolve("bench" + unread).toAbsolutePath())) {
+        new FeedDao(db);
+        PostDao pd = new PostDao(db);
+        seed(pd, unread);
+        PostCursor middle = PostCursor.of(
+          pd.getUnreadPage(null, unread / 2).getPosts().get(unread / 2 - 1));
+
+        Bench.measure("all, " + unread + " unread", 1, runs, () ->
+          render(new PostPage(pd.getUnreadPosts(0), null)));
+        Bench.measure("first page, " + unread + " unread", 2, runs, () ->
+          render(pd.getUnreadPage(null, num)));
+        Bench.measure("middle page, " + unread + " unread", 2, runs, () ->
+          render(pd.getUnreadPage(middle, num)));
+      }
+    }
+  }
+
+  private static void render(PostPage page) {
+    new PostsHtmlView(Name.unread, page, Collections.emptySet(), 0)
+      .getContent();
+  }
+
+  private static void seed(PostDao pd, int num) throws Exception {
+    long start = System.currentTimeMillis() - num * 60000L;
+    for (int from = 0; from < num; from += 1000) {
+      List<Post> chunk = new ArrayList<>();
+      for (int i = from; i < Math.min(num, from + 1000); i++) {
+        // Some posts share their date, like items of one feed often do.
+        chunk.add(new Post(0L, "http://example.com/post/" + i,
+          new Date(start + (i / 3) * 60000L), "Post number " + i,
+          "Some text of post " + i, false, null));
+      }
+      pd.savePosts(chunk, new Feed(
+        1L + from / 1000, "http://example.com/feed", "Feed", null, "OK"));
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package fiets.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import fiets.RefreshEngine;
+import fiets.model.Feed;
+import fiets.model.Post;
+import fiets.processors.Process;
+
+/**
+ * Compares the sequential refresh loop with {@link RefreshEngine}.
+ * Feeds are served by a local stub server that answers with a fixed latency.
+ * The stub is reachable via several loopback addresses, so the per-host limit
+ * applies just like with real feeds on different hosts.
+ *
+ * Usage: RefreshBenchmark [feeds] [hosts] [latencyMillis]
+ */
+public class RefreshBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int feeds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    int hosts = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    int latency = args.length > 2 ? Integer.parseInt(args[2]) : 150;
+
+    HttpServer server = startStub(latency);
+    try {
+      List<Feed> list = feeds(feeds, hosts, server.getAddress().getPort());
+      // Warm up class loading, XML parser and HTTP client.
+      Process.parsePosts(list.get(0));
+
+      long start = System.nanoTime();
+      int posts = 0;
+      for (Feed feed : list) {
+        posts += Process.parsePosts(feed).size();
+      }
+      long sequential = (System.nanoTime() - start) / 1_000_000L;
+      System.out.printf(
+        "sequential: %d feeds, %d posts in %d ms%n", feeds, posts, sequential);
+
+      RefreshEngine engine = new RefreshEngine();
+      List<Integer> counted = new ArrayList<>();
+      RefreshEngine.Report report = engine.refresh(list, Process::parsePosts,
+        (Feed feed, List<Post> result) -> counted.add(result.size()));
+      System.out.printf("engine:     %s, %d posts%n", report,
+        counted.stream().mapToInt(Integer::intValue).sum());
+      System.out.printf("speedup:    %.1fx%n",
+        sequential / (double) Math.max(1L, report.getWallMillis()));
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  private static List<Feed> feeds(int num, int hosts, int port) {
+    List<Feed> feeds = new ArrayList<>();
+    for (int i = 0; i < num; i++) {
+      String url = String.format(
+        "http://127.0.0.%d:%d/feed/%d", i % hosts + 1, port, i);
+      feeds.add(new Feed(i + 1, url, "Feed " + i, null, "OK"));
+    }
+    return feeds;
+  }
+
+  private static HttpServer startStub(int latency) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext("/feed", exchange -> serve(exchange, latency));
+    server.start();
+    return server;
+  }
+
+  private static void serve(HttpExchange exchange, int latency)
+    throws IOException {
+    try {
+      Thread.sleep(latency);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    byte[] body = rss(exchange.getRequestURI().getPath(), 20)
+      .getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set(
+      "Content-Type", "application/rss+xml; charset=UTF-8");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  static String rss(String path, int items) {
+    StringBuilder sb = new StringBuilder(
+      "<?xml version='1.0' encoding='UTF-8'?><rss version='2.0'><channel>"
+      + "<title>Stub ").append(path).append("</title>");
+    for (int i = 0; i < items; i++) {
+      sb.append("<item><title>Post ").append(i).append(" of ").append(path)
+        .append("</title><link>http://example.com").append(path).append('/')
+        .append(i).append("</link><description>Some &lt;b&gt;text&lt;/b&gt; ")
+        .append(i).append("</description>")
+        .append("<pubDate>Mon, 06 Jan 2020 10:00:00 +0000</pubDate></item>");
+    }
+    return sb.append("</channel></rss>").toString();
+  }
+}
@@ -0,0 +1,64 @@
+package fiets.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import fiets.model.Feed;
+import fiets.model.Post;
+import fiets.views.Pages.Name;
+import fiets.views.PostsHtmlView;
+
+/**
+ * Renders a page of posts whose display texts have to be computed from the
+ * markup (as posts were stored before they were precomputed) and one of
+ * posts that come with them (as stored now), in time per post.
+ *
+ * Usage: RenderBenchmark [postsPerPage] [runs]
+ */
+public class RenderBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int num = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    List<Post> raw = posts(num);
+    List<Post> prepared = new ArrayList<>(num);
+    for (Post post : raw) {
+      prepared.add(post.withDisplayText());
+    }
+    double before = Bench.measure("computed, " + num + " posts", runs / 10,
+      runs, () -> render(raw));
+    double after = Bench.measure("precomputed, " + num + " posts", runs / 10,
+      runs, () -> render(prepared));
+    System.out.printf("per post: computed %.1f us, precomputed %.1f us%n",
+      before / num / 1000d, after / num / 1000d);
+  }
+
+  private static void render(List<Post> posts) {
+    new PostsHtmlView(Name.unread, posts, Collections.emptySet(), posts.size())
+      .getContent();
+  }
+
+  static List<Post> posts(int num) {
+    List<Feed> feeds = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      feeds.add(new Feed(i + 1L, "http://example.com/feed/" + i,
+        "Example &amp; Co. News Feed " + i, null, "OK"));
+    }
+    List<Post> posts = new ArrayList<>(num);
+    for (int i = 0; i < num; i++) {
+      StringBuilder snippet = new StringBuilder("<div class='entry'>");
+      for (int p = 0; p < 4; p++) {
+        snippet.append("<p>Paragraph ").append(p).append(" of post ").append(i)
+          .append(" with <a href='http://example.com/'>a link</a>, ")
+          .append("<em>emphasis</em> &amp; an &quot;entity&quot;.</p>");
+      }
+      snippet.append("<img src='http://example.com/image.png'/></div>");
+      posts.add(new Post(i + 1L, "http://example.com/post/" + i,
+        new Date(), "Title of <b>post</b> " + i + " &ndash; it's news",
+        snippet.toString(), false, feeds.get(i % feeds.size())));
+    }
+    return posts;
+  }
+}
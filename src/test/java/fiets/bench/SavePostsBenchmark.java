@@ -0,0 +1,90 @@
+package fiets.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import fiets.db.Database;
+import fiets.db.FeedDao;
+import fiets.db.PostDao;
+import fiets.model.Feed;
+import fiets.model.Post;
+
+/**
+ * Compares ingesting posts one by one via {@link PostDao#savePost(Post, Feed)}
+ * (autocommit, per-post lookups) with the batched
+ * {@link PostDao#savePosts(List, Feed)}, in rows per second. Each refresh
+ * carries half already known and half new posts, like a typical feed. The
+ * database is a file database in a temporary directory, like the real one.
+ *
+ * Usage: SavePostsBenchmark [postsPerFeed] [runs] [existing,...]
+ */
+public class SavePostsBenchmark {
+
+  private static int counter;
+
+  public static void main(String[] args) throws Exception {
+    int perFeed = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    String sizes = args.length > 2 ? args[2] : "10000,100000";
+    for (String size : sizes.split(",")) {
+      int existing = Integer.parseInt(size.trim());
+      Path dir = Files.createTempDirectory("fiets-bench");
+      try (Database db = new Database(
+        "jdbc:h2:" + dir.resolve("bench" + existing).toAbsolutePath())) {
+        new FeedDao(db);
+        PostDao pd = new PostDao(db);
+        List<Post> known = seed(pd, existing);
+        Feed feed = new Feed(1L, "http://example.com/feed", "Bench", null, "OK");
+
+        double legacy = Bench.measure("legacy, " + existing + " existing",
+          2, runs, () -> {
+            for (Post post : refresh(known, perFeed)) {
+              pd.savePost(post, feed);
+            }
+          });
+        double bulk = Bench.measure("bulk, " + existing + " existing",
+          2, runs, () -> pd.savePosts(refresh(known, perFeed), feed));
+        System.out.printf("%d existing: legacy %.0f rows/s, bulk %.0f rows/s%n",
+          existing, rows(perFeed, legacy), rows(perFeed, bulk));
+      }
+    }
+  }
+
+  private static double rows(int perFeed, double nanosPerRun) {
+    return perFeed * 1e9d / nanosPerRun;
+  }
+
+  private static List<Post> seed(PostDao pd, int num) throws Exception {
+    List<Post> all = new ArrayList<>(num);
+    for (int from = 0; from < num; from += 1000) {
+      List<Post> chunk = new ArrayList<>();
+      for (int i = from; i < Math.min(num, from + 1000); i++) {
+        chunk.add(post());
+      }
+      pd.savePosts(chunk, new Feed(
+        2L + from / 1000, "http://example.com/seed", "Seed", null, "OK"));
+      all.addAll(chunk);
+    }
+    return all;
+  }
+
+  private static List<Post> refresh(List<Post> known, int perFeed) {
+    List<Post> posts = new ArrayList<>(perFeed);
+    for (int i = 0; i < perFeed / 2; i++) {
+      posts.add(known.get((counter * 31 + i * 997) % known.size()));
+    }
+    while (posts.size() < perFeed) {
+      posts.add(post());
+    }
+    return posts;
+  }
+
+  private static Post post() {
+    int n = counter++;
+    return new Post(0L, "http://example.com/post/" + n, new Date(),
+      "Post number " + n, "Some text of post " + n, false, null);
+  }
+}
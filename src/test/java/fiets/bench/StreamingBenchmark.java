@@ -0,0 +1,97 @@
+package fiets.bench;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import fiets.Server;
+import fiets.http.Transport;
+import fiets.model.Post;
+import fiets.views.Pages.Name;
+import fiets.views.PostsHtmlView;
+import fiets.views.View;
+
+/**
+ * Serves a large posts page rendered as a whole (as before) and streamed,
+ * and reports time to first byte and to the last byte over HTTP, as well as
+ * the allocation of rendering a page and the bytes held at once.
+ *
+ * Usage: StreamingBenchmark [posts] [runs] [nano|jdk]
+ */
+public class StreamingBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int num = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    Transport transport = Transport.create(args.length > 2 ? args[2] : "nano");
+    List<Post> posts = new ArrayList<>(num);
+    for (Post post : RenderBenchmark.posts(num)) {
+      posts.add(post.withDisplayText());
+    }
+    PostsHtmlView view = new PostsHtmlView(
+      Name.read, posts, Collections.emptySet(), 0);
+    View<String> whole = new View<>() {
+      @Override public String getMimeType() {
+        return view.getMimeType();
+      }
+      @Override public String getContent() {
+        return view.getContent();
+      }
+    };
+
+    transport.start(0, request ->
+      Server.respond(request.getUri().equals("/stream") ? view : whole));
+    try {
+      HttpClient client = HttpClient.newHttpClient();
+      String base = "http://127.0.0.1:" + transport.getPort();
+      for (String path : new String[] {"/whole", "/stream"}) {
+        fetch(client, base + path, runs / 10);
+        long[] times = fetch(client, base + path, runs);
+        System.out.printf("%-8s %d posts: first byte %8.1f us, "
+          + "last byte %8.1f us%n", path, num,
+          times[0] / 1000d / runs, times[1] / 1000d / runs);
+      }
+    } finally {
+      transport.stop();
+    }
+
+    int pageBytes = view.getContent().getBytes(StandardCharsets.UTF_8).length;
+    Bench.measure("whole, " + num + " posts", runs / 10, runs, () ->
+      OutputStream.nullOutputStream().write(
+        whole.getContent().getBytes(StandardCharsets.UTF_8)));
+    Bench.measure("streamed, " + num + " posts", runs / 10, runs, () ->
+      view.writeTo(OutputStream.nullOutputStream()));
+    System.out.printf("held at once: whole %d bytes (page as String and "
+      + "bytes), streamed only the pipe and write buffers (< 128 KB)%n",
+      view.getContent().length() * 2 + pageBytes);
+  }
+
+  /**
+   * @return summed nanoseconds to the first and to the last body byte
+   */
+  private static long[] fetch(HttpClient client, String url, int runs)
+    throws Exception {
+    HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+      .header("Accept-Encoding", "identity").build();
+    long[] times = new long[2];
+    for (int i = 0; i < runs; i++) {
+      long start = System.nanoTime();
+      HttpResponse<InputStream> rsp = client.send(
+        request, HttpResponse.BodyHandlers.ofInputStream());
+      try (InputStream in = rsp.body()) {
+        in.read();
+        times[0] += System.nanoTime() - start;
+        in.transferTo(OutputStream.nullOutputStream());
+        times[1] += System.nanoTime() - start;
+      }
+    }
+    return times;
+  }
+}
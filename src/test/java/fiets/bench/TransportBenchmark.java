@@ -0,0 +1,150 @@
+package fiets.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fiets.Server;
+import fiets.http.Response;
+import fiets.http.Status;
+import fiets.http.Transport;
+import fiets.model.Post;
+import fiets.views.Pages.Name;
+import fiets.views.PostsHtmlView;
+
+/**
+ * Load test of the transports: clients on virtual threads request a posts
+ * page over keep-alive connections for a while, at several numbers of
+ * concurrent clients. Each request waits for some milliseconds first, like
+ * one waiting for the database, then gets a page rendered ahead. Reports
+ * throughput, latency percentiles and the peak of platform threads, which
+ * grows with the connections for NanoHTTPD. Clients and server share the
+ * machine, so the numbers compare the transports rather than measure
+ * either one.
+ *
+ * Usage: TransportBenchmark [seconds] [waitMillis] [clients...]
+ */
+public class TransportBenchmark {
+
+  private static final ThreadMXBean THREADS =
+    ManagementFactory.getThreadMXBean();
+
+  public static void main(String[] args) throws Exception {
+    int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+    int waitMillis = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+    int[] clients = args.length > 2
+      ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt)
+        .toArray()
+      : new int[] {1, 16, 64, 256};
+
+    List<Post> posts = new ArrayList<>();
+    for (Post post : RenderBenchmark.posts(50)) {
+      posts.add(post.withDisplayText());
+    }
+    byte[] page = new PostsHtmlView(
+      Name.unread, posts, Collections.emptySet(), posts.size())
+      .getContent().getBytes(StandardCharsets.UTF_8);
+
+    for (String name : new String[] {"nano", "jdk"}) {
+      Transport transport = Transport.create(name);
+      transport.start(0, request -> {
+        try {
+          Thread.sleep(waitMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return Server.error(Status.INTERNAL_ERROR, "Interrupted", e);
+        }
+        return Response.fixed(Status.OK, "text/html", page);
+      });
+      try {
+        URI uri = URI.create(
+          "http://127.0.0.1:" + transport.getPort() + "/unread");
+        // Warms up both sides.
+        load(uri, 16, 2);
+        for (int num : clients) {
+          THREADS.resetPeakThreadCount();
+          long[] latencies = load(uri, num, seconds);
+          Arrays.sort(latencies);
+          System.out.printf("%-15s %4d clients: %9.1f req/s, p50 %8.2f ms, "
+            + "p99 %8.2f ms, peak platform threads %4d%n",
+            transport, num, latencies.length / (double) seconds,
+            percentile(latencies, 0.5), percentile(latencies, 0.99),
+            THREADS.getPeakThreadCount());
+        }
+      } finally {
+        transport.stop();
+      }
+    }
+  }
+
+  /**
+   * @return the nanoseconds of the successful requests
+   */
+  private static long[] load(URI uri, int clients, int seconds)
+    throws Exception {
+    ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    HttpClient client = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1).executor(executor).build();
+    HttpRequest request = HttpRequest.newBuilder(uri).build();
+    long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+    AtomicInteger errors = new AtomicInteger();
+    List<Future<long[]>> results = new ArrayList<>();
+    for (int i = 0; i < clients; i++) {
+      results.add(executor.submit(() -> {
+        long[] times = new long[1024];
+        int num = 0;
+        while (System.nanoTime() < deadline) {
+          long start = System.nanoTime();
+          try {
+            HttpResponse<Void> rsp = client.send(request,
+              HttpResponse.BodyHandlers.ofByteArrayConsumer(b -> {}));
+            if (rsp.statusCode() != 200) {
+              errors.incrementAndGet();
+              continue;
+            }
+          } catch (Exception e) {
+            errors.incrementAndGet();
+            continue;
+          }
+          if (num == times.length) {
+            times = Arrays.copyOf(times, num * 2);
+          }
+          times[num++] = System.nanoTime() - start;
+        }
+        return Arrays.copyOf(times, num);
+      }));
+    }
+    long[] all = new long[0];
+    for (Future<long[]> result : results) {
+      long[] times = result.get();
+      int offset = all.length;
+      all = Arrays.copyOf(all, offset + times.length);
+      System.arraycopy(times, 0, all, offset, times.length);
+    }
+    executor.shutdownNow();
+    if (errors.get() > 0) {
+      System.out.printf("%d requests failed%n", errors.get());
+    }
+    return all;
+  }
+
+  private static double percentile(long[] sorted, double p) {
+    if (sorted.length == 0) {
+      return Double.NaN;
+    }
+    return sorted[(int) Math.min(sorted.length - 1, sorted.length * p)]
+      / 1e6d;
+  }
+}
@@ -0,0 +1,147 @@
+package fiets.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import fiets.FeedService;
+import fiets.model.Feed;
+import fiets.views.Pages.Name;
+import fiets.views.PostsHtmlView;
+
+/**
+ * Pages are rendered from the read connections while an ingest cycle holds
+ * the write connection.
+ */
+public class DatabaseConcurrencyTest {
+
+  private static final int FEEDS = 20;
+  private static final int ITEMS = 50;
+
+  @Test
+  public void rendersPagesDuringIngest() throws Exception {
+    HttpServer stub = startStub();
+    try (Database db = new Database("jdbc:h2:mem:concurrency", 2)) {
+      FeedService fs = new FeedService(db);
+      List<String> urls = new ArrayList<>();
+      for (int i = 0; i < FEEDS; i++) {
+        urls.add(String.format("http://127.0.0.1:%d/feed/%d",
+          stub.getAddress().getPort(), i));
+      }
+      List<Feed> feeds = fs.addFeeds(urls);
+      assertEquals(FEEDS, feeds.size());
+
+      AtomicBoolean ingesting = new AtomicBoolean(true);
+      Queue<Integer> seen = new ConcurrentLinkedQueue<>();
+      ExecutorService exec = Executors.newFixedThreadPool(4);
+      try {
+        List<Future<?>> renders = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+          renders.add(exec.submit(() -> {
+            do {
+              PostsHtmlView view = new PostsHtmlView(Name.unread,
+                fs.getUnreadPosts(0), fs.getBookmarks(), fs.getUnreadCount());
+              assertTrue(view.getContent().contains("</html>"));
+              seen.add(fs.getUnreadPosts(0).size());
+            } while (ingesting.get());
+            return null;
+          }));
+        }
+        try {
+          fs.updateFeedPosts(feeds);
+        } finally {
+          ingesting.set(false);
+        }
+        for (Future<?> render : renders) {
+          render.get(30, TimeUnit.SECONDS);
+        }
+      } finally {
+        exec.shutdownNow();
+      }
+
+      assertFalse(seen.isEmpty());
+      for (int size : seen) {
+        assertEquals("Saw a feed half saved: " + size, 0, size % ITEMS);
+      }
+      assertEquals(FEEDS * ITEMS, fs.getUnreadCount());
+    } finally {
+      stub.stop(0);
+    }
+  }
+
+  @Test
+  public void readsDoNotWaitForOpenWriteTransaction() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:isolation", 2)) {
+      FeedService fs = new FeedService(db);
+      try (Connection conn = db.writeConnection()) {
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement(
+          "INSERT INTO post (date,location,snippet,title,read) "
+          + "VALUES (CURRENT_TIMESTAMP(),'http://example.com/1','','One',false)")) {
+          ps.executeUpdate();
+        }
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+          Future<Integer> count = exec.submit(
+            () -> fs.getUnreadPosts(0).size());
+          assertEquals(Integer.valueOf(0), count.get(10, TimeUnit.SECONDS));
+        } finally {
+          exec.shutdownNow();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+      }
+      assertEquals(1, fs.getUnreadPosts(0).size());
+    }
+  }
+
+  private static HttpServer startStub() throws IOException {
+    HttpServer server = HttpServer.create(
+      new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(Executors.newFixedThreadPool(4));
+    server.createContext("/feed", DatabaseConcurrencyTest::serve);
+    server.start();
+    return server;
+  }
+
+  private static void serve(HttpExchange exchange) throws IOException {
+    String path = exchange.getRequestURI().getPath();
+    StringBuilder sb = new StringBuilder(
+      "<?xml version='1.0' encoding='UTF-8'?><rss version='2.0'><channel>"
+      + "<title>Stub ").append(path).append("</title>");
+    for (int i = 0; i < ITEMS; i++) {
+      sb.append("<item><title>Post ").append(i).append(" of ").append(path)
+        .append("</title><link>http://example.com").append(path).append('/')
+        .append(i).append("</link><description>Text</description>")
+        .append("<pubDate>Mon, 06 Jan 2020 10:00:00 +0000</pubDate></item>");
+    }
+    byte[] body = sb.append("</channel></rss>").toString()
+      .getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/rss+xml");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
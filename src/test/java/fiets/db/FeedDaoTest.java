@@ -0,0 +1,46 @@
+package fiets.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import fiets.model.Feed;
+import fiets.model.Post;
+
+public class FeedDaoTest {
+
+  @Test
+  public void countsRecentPostsOfTheGivenFeedsOnly() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:countposts")) {
+      FeedDao dao = new FeedDao(db);
+      PostDao pd = new PostDao(db);
+      Feed one = feed(1L);
+      Feed two = feed(2L);
+      Feed three = feed(3L);
+      pd.savePost(post("http://example.com/1", new Date(2000L)), one);
+      pd.savePost(post("http://example.com/2", new Date(3000L)), one);
+      pd.savePost(post("http://example.com/old", new Date(0L)), one);
+      pd.savePost(post("http://example.com/3", new Date(2000L)), two);
+      pd.savePost(post("http://example.com/4", new Date(2000L)), three);
+
+      Map<Long, Integer> expected = new HashMap<>();
+      expected.put(1L, 2);
+      expected.put(2L, 1);
+      assertEquals(expected,
+        dao.countPostsSince(new Date(1000L), Arrays.asList(1L, 2L, 4L)));
+    }
+  }
+
+  private static Feed feed(long id) {
+    return new Feed(id, "http://example.com/feed" + id, "Feed", null, "OK");
+  }
+
+  private static Post post(String location, Date date) {
+    return new Post(0L, location, date, location, "", false, null);
+  }
+}
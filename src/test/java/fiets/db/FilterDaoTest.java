@@ -0,0 +1,39 @@
+package fiets.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import fiets.model.Filter;
+import fiets.model.FilterMatch;
+
+public class FilterDaoTest {
+
+  @Test
+  public void addsMatchCountsToThoseSaved() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:filters")) {
+      FilterDao dao = new FilterDao(db, new FeedDao(db));
+      for (String title : new String[] { "a", "b", "c" }) {
+        dao.saveFilter(new Filter(0, "", FilterMatch.IGNORE,
+          title, FilterMatch.CONTAINS, 0));
+      }
+      List<Filter> filters = dao.getAllFilters();
+      Map<Long, Long> counts = new HashMap<>();
+      counts.put(filters.get(0).getId(), 2L);
+      counts.put(filters.get(2).getId(), 5L);
+      dao.addMatchCounts(counts);
+      counts.remove(filters.get(0).getId());
+      dao.addMatchCounts(counts);
+      dao.addMatchCounts(new HashMap<>());
+
+      filters = dao.getAllFilters();
+      assertEquals(2, filters.get(0).getMatchCount());
+      assertEquals(0, filters.get(1).getMatchCount());
+      assertEquals(10, filters.get(2).getMatchCount());
+    }
+  }
+}
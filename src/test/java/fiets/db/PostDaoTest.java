@@ -0,0 +1,521 @@
+package fiets.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import fiets.model.DisplayText;
+import fiets.model.Feed;
+import fiets.model.FeedInfo;
+import fiets.model.Filter;
+import fiets.model.FilterMatch;
+import fiets.model.Post;
+import fiets.model.PostCursor;
+import fiets.model.PostPage;
+import fiets.views.PostDisplay;
+
+/**
+ * Checks that the batched {@link PostDao#savePosts(List, Feed)} leaves the
+ * database in the same state as saving the posts one by one, and that the
+ * counters and feed stats follow the changes.
+ */
+public class PostDaoTest {
+
+  private static final Feed FEED =
+    new Feed(1L, "http://example.com/feed", "Example", null, "OK");
+  private static final Feed OTHER =
+    new Feed(2L, "http://example.com/other", "Other", null, "OK");
+
+  @Test
+  public void savePostsMatchesSavingOneByOne() throws Exception {
+    try (Database single = new Database("jdbc:h2:mem:single");
+      Database bulk = new Database("jdbc:h2:mem:bulk")) {
+      new FeedDao(single);
+      new FeedDao(bulk);
+      PostDao singleDao = new PostDao(single);
+      PostDao bulkDao = new PostDao(bulk);
+      for (Post post : existing()) {
+        singleDao.savePost(post, OTHER);
+        bulkDao.savePost(post, OTHER);
+      }
+
+      for (Post post : incoming()) {
+        singleDao.savePost(post, FEED);
+      }
+      bulkDao.savePosts(incoming(), FEED);
+
+      assertEquals(rows(single, "SELECT id,location,title FROM post"),
+        rows(bulk, "SELECT id,location,title FROM post"));
+      assertEquals(rows(single, "SELECT post,feed FROM postfeed"),
+        rows(bulk, "SELECT post,feed FROM postfeed"));
+    }
+  }
+
+  @Test
+  public void savePostsIsIdempotent() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:idempotent")) {
+      PostDao pd = new PostDao(db);
+      pd.savePosts(incoming(), FEED);
+      List<String> posts = rows(db, "SELECT id,location,title FROM post");
+      List<String> postFeeds = rows(db, "SELECT post,feed FROM postfeed");
+      pd.savePosts(incoming(), FEED);
+      assertEquals(posts, rows(db, "SELECT id,location,title FROM post"));
+      assertEquals(postFeeds, rows(db, "SELECT post,feed FROM postfeed"));
+    }
+  }
+
+  @Test
+  public void titlesAreComparedNormalized() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:normalized")) {
+      new FeedDao(db);
+      PostDao pd = new PostDao(db);
+      Post saved = pd.savePost(post("http://example.com/a", "Some  Title"), FEED);
+      Post same = pd.savePost(
+        post("http://example.com/b", " some title\n"), FEED);
+      assertEquals(saved.getId(), same.getId());
+      pd.savePosts(Arrays.asList(
+        post("http://example.com/c", "SOME TITLE"),
+        post("http://example.com/d", "Other"),
+        post("http://example.com/e", "other ")), OTHER);
+      assertEquals(Arrays.asList("1|Some  Title|", "2|Other|"),
+        rows(db, "SELECT id,title FROM post"));
+    }
+  }
+
+  @Test
+  public void keysOfOldPostsAreBackfilled() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:backfill")) {
+      new FeedDao(db);
+      new PostDao(db);
+      try (Connection conn = db.writeConnection();
+        PreparedStatement ps = conn.prepareStatement(
+          "INSERT INTO post (date,location,snippet,title,read) "
+          + "VALUES (?,?,'',?,false)")) {
+        for (int i = 0; i < 2500; i++) {
+          ps.setTimestamp(1, Database.toTimestamp(new Date(0L)));
+          ps.setString(2, "http://example.com/" + i);
+          ps.setString(3, "Title " + i);
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+      PostDao pd = new PostDao(db);
+      assertEquals(Arrays.asList("0|0|"), rows(db,
+        "SELECT COUNT(*),COUNT(*) FROM post WHERE titlehash IS NULL"));
+      assertEquals(1000L + 1L,
+        pd.loadPostByLocation("http://example.com/1000").getId());
+      assertEquals(2000L + 1L,
+        pd.savePost(post("http://example.com/new", "title 2000"), FEED).getId());
+    }
+  }
+
+  @Test
+  public void countersFollowChanges() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:counters")) {
+      new FeedDao(db);
+      PostDao pd = new PostDao(db);
+      pd.savePosts(incoming(), FEED);
+      assertCounts(db, pd);
+      Post single = pd.savePost(post("http://example.com/5", "Five"), OTHER);
+      pd.savePost(post("http://example.com/5", "Five"), FEED);
+      assertCounts(db, pd);
+      pd.markPostRead(single.getId());
+      pd.markPostRead(single.getId());
+      assertCounts(db, pd);
+      pd.markPostsRead(Arrays.asList(1L, 2L, single.getId()));
+      assertCounts(db, pd);
+      pd.markPostUnread(2L);
+      pd.markPostUnread(2L);
+      assertCounts(db, pd);
+      pd.bookmarkPost(1L);
+      pd.bookmarkPost(3L);
+      pd.removeBookmarkPost(3L);
+      assertCounts(db, pd);
+      pd.deletePost(2L);
+      pd.deletePost(single.getId());
+      assertCounts(db, pd);
+      pd.markAllRead(new Date());
+      assertCounts(db, pd);
+      pd.markPostUnread(1L);
+      pd.deletePostsOfFeed(FEED.getId());
+      assertCounts(db, pd);
+      assertEquals(0, pd.getFullCount());
+    }
+  }
+
+  @Test
+  public void filtersAreAppliedToUnreadPosts() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:applyfilter")) {
+      new FeedDao(db);
+      PostDao pd = new PostDao(db);
+      pd.savePosts(Arrays.asList(
+        post("http://example.com/a/1", "Sale: 100% off"),
+        post("http://example.com/a/2", "Sale: 1000 items"),
+        post("http://example.com/b/3", "Sports news"),
+        post("http://example.com/b/4", "More sports"),
+        post("http://example.org/5", "Sports_news")), FEED);
+      pd.markPostRead(3L);
+
+      Filter percent = new Filter(1L, "", FilterMatch.IGNORE,
+        "100%", FilterMatch.CONTAINS, 0);
+      assertEquals(1, pd.markFilteredRead(percent, p -> fail(p)));
+      Filter regex = new Filter(2L,
+        "http://example.com/", FilterMatch.STARTS_WITH,
+        ".*[Ss]ports.*", FilterMatch.REGEX, 0);
+      List<Long> checked = new ArrayList<>();
+      assertEquals(1, pd.markFilteredRead(regex, p -> {
+        checked.add(p.getId());
+        return p.getTitle().matches(regex.getTitle());
+      }));
+      assertEquals(Arrays.asList(4L), checked);
+      assertEquals(Arrays.asList(2L, 5L),
+        ids(db, "SELECT id FROM post WHERE read=false ORDER BY id"));
+      assertCounts(db, pd);
+      assertFeedStats(db);
+    }
+  }
+
+  @Test
+  public void reconcileCorrectsDrift() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:drift")) {
+      new FeedDao(db);
+      PostDao pd = new PostDao(db);
+      pd.savePosts(incoming(), FEED);
+      try (Connection conn = db.writeConnection();
+        PreparedStatement ps = conn.prepareStatement(
+          "UPDATE post SET read=true")) {
+        ps.executeUpdate();
+      }
+      assertEquals(4, pd.getUnreadCount());
+      pd.reconcileCounts();
+      assertEquals(0, pd.getUnreadCount());
+      assertCounts(db, pd);
+    }
+  }
+
+  @Test
+  public void feedStatsFollowChanges() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:feedstats")) {
+      FeedDao fd = new FeedDao(db);
+      fd.saveFeed(new Feed(0L, FEED.getLocation(), "Example", null, "OK"));
+      fd.saveFeed(new Feed(0L, OTHER.getLocation(), "Other", null, "OK"));
+      fd.saveFeed(new Feed(0L, "http://example.com/empty", "Empty", null, "OK"));
+      PostDao pd = new PostDao(db);
+      assertFeedStats(db);
+      pd.savePosts(incoming(), FEED);
+      Post late = pd.savePost(
+        post("http://example.com/5", "Five", new Date(100000L)), OTHER);
+      pd.savePost(post("http://example.com/5", "Five"), FEED);
+      Post six = pd.savePost(
+        post("http://example.com/6", "Six", new Date(50000L)), OTHER);
+      assertFeedStats(db);
+      pd.markPostRead(late.getId());
+      pd.markPostsRead(Arrays.asList(1L, 2L, late.getId()));
+      pd.markPostUnread(2L);
+      assertFeedStats(db);
+      pd.savePost(new Post(late.getId(), late.getLocation(), new Date(0L),
+        late.getTitle(), "", false, null), OTHER);
+      assertFeedStats(db);
+      pd.deletePost(six.getId());
+      assertFeedStats(db);
+      pd.deletePost(late.getId());
+      assertFeedStats(db);
+      pd.markAllRead(new Date());
+      try (Connection conn = db.writeConnection();
+        PreparedStatement ps = conn.prepareStatement(
+          "UPDATE post SET lastaccess=? WHERE id=1")) {
+        ps.setTimestamp(1, Database.toTimestamp(new Date(0L)));
+        ps.executeUpdate();
+      }
+      pd.deleteOutdated();
+      assertFeedStats(db);
+      pd.deletePostsOfFeed(FEED.getId());
+      fd.deleteFeed(FEED.getId());
+      assertFeedStats(db);
+    }
+  }
+
+  @Test
+  public void feedStatsAreBuiltForExistingPosts() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:feedstatsbuild")) {
+      FeedDao fd = new FeedDao(db);
+      fd.saveFeed(new Feed(0L, FEED.getLocation(), "Example", null, "OK"));
+      fd.saveFeed(new Feed(0L, OTHER.getLocation(), "Other", null, "OK"));
+      PostDao pd = new PostDao(db);
+      pd.savePosts(incoming(), FEED);
+      pd.savePosts(existing(), OTHER);
+      pd.markPostRead(1L);
+      try (Connection conn = db.writeConnection();
+        PreparedStatement ps = conn.prepareStatement(
+          "DELETE FROM feedstats")) {
+        ps.executeUpdate();
+      }
+      new PostDao(db);
+      assertFeedStats(db);
+    }
+  }
+
+  @Test
+  public void deleteOutdatedWorksInChunks() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:retention")) {
+      new FeedDao(db);
+      PostDao pd = new PostDao(db);
+      List<Post> posts = new ArrayList<>();
+      for (int i = 0; i < 2500; i++) {
+        posts.add(post("http://example.com/" + i, "Post " + i));
+      }
+      pd.savePosts(posts, FEED);
+      pd.savePosts(posts.subList(0, 10), OTHER);
+      // Old read posts, except for every tenth, which stays unread.
+      try (Connection conn = db.writeConnection();
+        PreparedStatement ps = conn.prepareStatement(
+          "UPDATE post SET lastaccess=?,read=MOD(id,10)<>0")) {
+        ps.setTimestamp(1, Database.toTimestamp(new Date(0L)));
+        ps.executeUpdate();
+      }
+      pd.reconcileCounts();
+      pd.bookmarkPost(1L);
+      pd.bookmarkPost(2001L);
+      // Left behind by earlier deletes.
+      try (Connection conn = db.writeConnection();
+        PreparedStatement ps = conn.prepareStatement(
+          "INSERT INTO postfeed (post,feed) VALUES (5000,1)")) {
+        ps.executeUpdate();
+      }
+
+      assertEquals(2500 - 250 - 2, pd.deleteOutdated());
+      assertEquals(Arrays.asList("252|250|"), rows(db,
+        "SELECT COUNT(*),COUNT(CASE WHEN read=false THEN 1 END) FROM post"));
+      assertEquals(Arrays.asList("0|0|"), rows(db, "SELECT COUNT(*),0 "
+        + "FROM postfeed LEFT JOIN post ON post.id=postfeed.post "
+        + "WHERE post.id IS NULL"));
+      assertCounts(db, pd);
+      assertEquals(0, pd.deleteOutdated());
+    }
+  }
+
+  @Test
+  public void deleteOutdatedSkipsGapsBetweenIds() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:retentiongaps")) {
+      new FeedDao(db);
+      PostDao pd = new PostDao(db);
+      pd.savePosts(Arrays.asList(post("http://example.com/1", "One"),
+        post("http://example.com/2", "Two"),
+        post("http://example.com/3", "Three")), FEED);
+      try (Connection conn = db.writeConnection();
+        PreparedStatement posts = conn.prepareStatement(
+          "UPDATE post SET id=id*1000000,lastaccess=?,read=true");
+        PreparedStatement links = conn.prepareStatement(
+          "UPDATE postfeed SET post=post*1000000")) {
+        posts.setTimestamp(1, Database.toTimestamp(new Date(0L)));
+        posts.executeUpdate();
+        links.executeUpdate();
+      }
+      pd.reconcileCounts();
+
+      long version = db.getVersion();
+      assertEquals(3, pd.deleteOutdated());
+      assertEquals("One transaction", version + 1, db.getVersion());
+      assertEquals(Arrays.asList("0|0|"), rows(db,
+        "SELECT (SELECT COUNT(*) FROM post),COUNT(*) FROM postfeed"));
+    }
+  }
+
+  @Test
+  public void displayTextIsStoredAndBackfilled() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:display")) {
+      new FeedDao(db);
+      PostDao pd = new PostDao(db);
+      Post post = new Post(0L, "http://example.com/1", new Date(0L),
+        "A <b>bold</b> &amp; \"quoted\" title",
+        "<p>Some <em>text</em></p>", false, null);
+      pd.savePosts(Arrays.asList(post, post("http://example.com/2", "Two")),
+        FEED);
+      List<String> stored = rows(db,
+        "SELECT id,displaytitle,displaysnippet FROM post");
+      assertEquals(Arrays.asList(
+        "1|A bold & &quot;quoted&quot; title|Some text|", "2|Two|Two|"),
+        stored);
+      Post loaded = pd.getUnreadPage(null, 1).getPosts().get(0);
+      assertEquals(DisplayText.title(post.getTitle()),
+        loaded.getDisplayTitle());
+      assertEquals(new PostDisplay(post).getShortenedSnippet(),
+        new PostDisplay(loaded).getShortenedSnippet());
+
+      try (Connection conn = db.writeConnection();
+        PreparedStatement ps = conn.prepareStatement(
+          "UPDATE post SET displaytitle=NULL,displaysnippet=NULL")) {
+        ps.executeUpdate();
+      }
+      assertEquals(2, pd.backfillDisplayText());
+      assertEquals(stored, rows(db,
+        "SELECT id,displaytitle,displaysnippet FROM post"));
+      assertEquals(0, pd.backfillDisplayText());
+    }
+  }
+
+  @Test
+  public void pagesContinueAfterCursor() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:pages")) {
+      new FeedDao(db);
+      PostDao pd = new PostDao(db);
+      List<Post> posts = new ArrayList<>();
+      for (int i = 0; i < 25; i++) {
+        // Three posts per date, to page through equal dates.
+        posts.add(post("http://example.com/" + i, "Post " + i,
+          new Date((i % 9) * 1000L)));
+      }
+      pd.savePosts(posts, FEED);
+      List<Long> read = new ArrayList<>();
+      for (long id = 1; id <= 25; id += 2) {
+        read.add(id);
+        pd.bookmarkPost(id + 1);
+      }
+      pd.markPostsRead(read);
+
+      assertEquals(
+        ids(db, "SELECT id FROM post WHERE read=false ORDER BY date,id"),
+        pageIds(after -> pd.getUnreadPage(after, 4)));
+      assertEquals(
+        ids(db, "SELECT id FROM post WHERE read=true "
+          + "ORDER BY date DESC,id DESC"),
+        pageIds(after -> pd.getReadPage(after, 4)));
+      assertEquals(
+        // 26 does not exist, it is listed first
+        ids(db, "SELECT bookmarkedpost.post FROM bookmarkedpost "
+          + "LEFT JOIN post ON post.id=bookmarkedpost.post "
+          + "ORDER BY post.date,bookmarkedpost.post"),
+        pageIds(after -> pd.getBookmarkedPage(after, 5)));
+      assertEquals(12, pd.getUnreadPage(null, 12).getPosts().size());
+      assertEquals(null, pd.getUnreadPage(null, 12).getNext());
+    }
+  }
+
+  private interface Pager {
+    PostPage page(PostCursor after) throws Exception;
+  }
+
+  private static List<Long> pageIds(Pager pager) throws Exception {
+    List<Long> ids = new ArrayList<>();
+    PostCursor after = null;
+    do {
+      PostPage page = pager.page(after);
+      for (Post post : page.getPosts()) {
+        ids.add(post.getId());
+      }
+      after = page.getNext();
+    } while (after != null);
+    return ids;
+  }
+
+  private static List<Long> ids(Database db, String query) throws Exception {
+    List<Long> ids = new ArrayList<>();
+    try (Connection conn = db.readConnection();
+      PreparedStatement ps = conn.prepareStatement(query)) {
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          ids.add(rs.getLong(1));
+        }
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Compare the feed stats with aggregating all posts, the way the feeds page
+   * used to.
+   */
+  private static void assertFeedStats(Database db) throws Exception {
+    assertEquals(rows(db, "SELECT feed.id,"
+        + "COUNT(CASE WHEN post.read=0 THEN 1 END),"
+        + "COUNT(CASE WHEN post.read=1 THEN 1 END),"
+        + "MAX(post.date) "
+        + "FROM feed "
+        + "LEFT JOIN postfeed ON feed.id=postfeed.feed "
+        + "LEFT JOIN post ON postfeed.post=post.id "
+        + "GROUP BY feed.id"),
+      rows(db, "SELECT feed.id,"
+        + "COALESCE(feedstats.unread,0),COALESCE(feedstats.read,0),"
+        + "feedstats.lastpost "
+        + "FROM feed LEFT JOIN feedstats ON feed.id=feedstats.feed"));
+    List<String> infos = new ArrayList<>();
+    for (FeedInfo info : new FeedDao(db).getAllFeedInfos()) {
+      infos.add(info.getFeed().getId() + "|" + info.getNumUnread() + "|"
+        + info.getNumRead() + "|");
+    }
+    assertEquals(rows(db, "SELECT feed.id,"
+        + "COUNT(CASE WHEN post.read=0 THEN 1 END),"
+        + "COUNT(CASE WHEN post.read=1 THEN 1 END) "
+        + "FROM feed "
+        + "LEFT JOIN postfeed ON feed.id=postfeed.feed "
+        + "LEFT JOIN post ON postfeed.post=post.id "
+        + "GROUP BY feed.id"), infos);
+  }
+
+  private static void assertCounts(Database db, PostDao pd) throws Exception {
+    assertEquals(rows(db, "SELECT COUNT(*),0 FROM post WHERE read=false"),
+      Arrays.asList(pd.getUnreadCount() + "|0|"));
+    assertEquals(rows(db, "SELECT COUNT(*),0 FROM post"),
+      Arrays.asList(pd.getFullCount() + "|0|"));
+    assertEquals(rows(db, "SELECT COUNT(*),0 FROM bookmarkedpost"),
+      Arrays.asList(pd.getBookmarksCount() + "|0|"));
+  }
+
+  private static boolean fail(Post post) {
+    throw new AssertionError("Checked in SQL: " + post);
+  }
+
+  private static List<Post> existing() {
+    return Arrays.asList(
+      post("http://example.com/1", "One"),
+      post("http://example.com/2", "Two"));
+  }
+
+  private static List<Post> incoming() {
+    return Arrays.asList(
+      // known location, new title
+      post("http://example.com/1", "One, edited"),
+      // new location, known title
+      post("http://example.com/2b", "Two"),
+      post("http://example.com/3", "Three"),
+      // duplicates within the same refresh
+      post("http://example.com/3", "Three again"),
+      post("http://example.com/3b", "Three"),
+      post("http://example.com/4", "Four"));
+  }
+
+  private static Post post(String location, String title) {
+    return post(location, title, new Date(0L));
+  }
+
+  private static Post post(String location, String title, Date date) {
+    return new Post(0L, location, date, title, "", false, null);
+  }
+
+  private static List<String> rows(Database db, String query)
+    throws Exception {
+    List<String> rows = new ArrayList<>();
+    try (Connection conn = db.readConnection();
+      PreparedStatement ps = conn.prepareStatement(query + " ORDER BY 1,2")) {
+      try (ResultSet rs = ps.executeQuery()) {
+        int columns = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+          StringBuilder sb = new StringBuilder();
+          for (int i = 1; i <= columns; i++) {
+            sb.append(rs.getString(i)).append('|');
+          }
+          rows.add(sb.toString());
+        }
+      }
+    }
+    return rows;
+  }
+}
@@ -0,0 +1,108 @@
+package fiets.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class TransportTest {
+
+  private static final Handler ECHO = request -> {
+    try {
+      if (request.getMethod().equals("POST")) {
+        request.parseBody();
+      }
+    } catch (Exception e) {
+      return Response.fixed(Status.BAD_REQUEST, "text/plain", e.toString());
+    }
+    switch (request.getUri()) {
+      case "/unchanged":
+        return Response.fixed(Status.NOT_MODIFIED, "text/plain", new byte[0]);
+      case "/streamed":
+        return Response.streamed(Status.OK, "text/plain", out -> {
+          for (int i = 0; i < 3; i++) {
+            out.write(("part " + i + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+          }
+        }).addHeader("X-Kind", "streamed");
+      default:
+        return Response.fixed(Status.OK, "text/plain",
+          request.getUri() + " " + new TreeMap<>(request.getParameters())
+          + " " + request.getHeader("x-test"));
+    }
+  };
+
+  @Test
+  public void nanoHttpd() throws Exception {
+    assertServes(Transport.create("nano"));
+  }
+
+  @Test
+  public void jdkHttpServer() throws Exception {
+    assertServes(Transport.create("jdk"));
+  }
+
+  @Test
+  public void jdkHttpServerDoesNotRenderHeadResponses() throws Exception {
+    AtomicBoolean rendered = new AtomicBoolean();
+    Transport transport = Transport.create("jdk");
+    transport.start(0, request -> Response.streamed(Status.OK, "text/plain",
+      out -> rendered.set(true)));
+    try {
+      HttpResponse<String> rsp = HttpClient.newHttpClient().send(
+        HttpRequest.newBuilder(URI.create(
+          "http://127.0.0.1:" + transport.getPort() + "/page"))
+        .method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+        HttpResponse.BodyHandlers.ofString());
+      assertEquals(200, rsp.statusCode());
+      Thread.sleep(100);
+      assertFalse(rendered.get());
+    } finally {
+      transport.stop();
+    }
+  }
+
+  private static void assertServes(Transport transport) throws Exception {
+    transport.start(0, ECHO);
+    try {
+      HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1).build();
+      String base = "http://127.0.0.1:" + transport.getPort();
+
+      HttpResponse<String> rsp = client.send(HttpRequest.newBuilder(
+        URI.create(base + "/p%C3%A4th?a=1&a=2&b=%C3%A4+x&flag"))
+        .header("X-Test", "yes").build(),
+        HttpResponse.BodyHandlers.ofString());
+      assertEquals(200, rsp.statusCode());
+      assertEquals("/päth {a=[1, 2], b=[ä x], flag=[]} yes", rsp.body());
+
+      rsp = client.send(HttpRequest.newBuilder(URI.create(base + "/form?a=1"))
+        .header("Content-Type", "application/x-www-form-urlencoded")
+        .POST(HttpRequest.BodyPublishers.ofString("b=2&c=%26")).build(),
+        HttpResponse.BodyHandlers.ofString());
+      assertEquals("/form {a=[1], b=[2], c=[&]} null", rsp.body());
+
+      rsp = client.send(HttpRequest.newBuilder(URI.create(base + "/streamed"))
+        .build(), HttpResponse.BodyHandlers.ofString());
+      assertEquals("part 0\npart 1\npart 2\n", rsp.body());
+      assertEquals("streamed", rsp.headers().firstValue("X-Kind").get());
+      assertEquals("chunked",
+        rsp.headers().firstValue("Transfer-Encoding").get());
+
+      rsp = client.send(HttpRequest.newBuilder(URI.create(base + "/unchanged"))
+        .build(), HttpResponse.BodyHandlers.ofString());
+      assertEquals(304, rsp.statusCode());
+      assertEquals("", rsp.body());
+    } finally {
+      transport.stop();
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package fiets.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fiets.db.Database;
+
+public class MetricsTest {
+
+  @Test
+  public void histogramKnowsQuantilesToAFewPercent() {
+    Histogram h = new Histogram();
+    Random random = new Random(42);
+    long[] values = new long[10000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = 1000 + (long) (random.nextDouble() * 100_000_000L);
+      h.record(values[i]);
+    }
+    Arrays.sort(values);
+    assertEquals(values.length, h.getCount());
+    for (double q : new double[] { 0.5, 0.9, 0.99 }) {
+      long exact = values[(int) Math.ceil(q * values.length) - 1];
+      long estimate = h.getQuantile(q);
+      assertTrue(q + ": " + estimate + " for " + exact,
+        estimate >= exact && estimate <= exact * 1.07);
+    }
+    for (int i = 0; i < 600; i++) {
+      assertTrue(Histogram.lowest(i) <= Histogram.highest(i));
+      assertEquals(i, Histogram.index(Histogram.lowest(i)));
+      assertEquals(i, Histogram.index(Histogram.highest(i)));
+    }
+  }
+
+  @Test
+  public void scrapesInTheTextFormat() {
+    Metrics.counter("test_total", "Counted.", "kind", "a\"b").add(3);
+    Histogram h = Metrics.histogram("test_seconds", "Timed.", "route", "x");
+    h.record(2_000_000L);
+    h.record(20_000_000L);
+    h.record(400_000_000_000L);
+    Metrics.gauge("test_gauge", "Read.", () -> 7);
+    String text = Metrics.scrape();
+    assertTrue(text, text.contains("# TYPE test_total counter\n"
+      + "test_total{kind=\"a\\\"b\"} 3.0\n"));
+    assertTrue(text, text.contains("# TYPE test_gauge gauge\ntest_gauge 7.0\n"));
+    assertTrue(text, text.contains(
+      "test_seconds_bucket{route=\"x\",le=\"0.001\"} 0\n"
+      + "test_seconds_bucket{route=\"x\",le=\"0.0025\"} 1\n"));
+    assertTrue(text, text.contains(
+      "test_seconds_bucket{route=\"x\",le=\"0.025\"} 2\n"));
+    assertTrue(text, text.contains(
+      "test_seconds_bucket{route=\"x\",le=\"300.0\"} 2\n"
+      + "test_seconds_bucket{route=\"x\",le=\"+Inf\"} 3\n"
+      + "test_seconds_sum{route=\"x\"} 400.022\n"
+      + "test_seconds_count{route=\"x\"} 3\n"));
+  }
+
+  @Test
+  public void bucketsNeverCountValuesAboveTheirBound() {
+    Histogram h = Metrics.histogram("test_bound_seconds", "Timed.");
+    h.record(90_000_000L);
+    h.record(103_000_000L);
+    String text = Metrics.scrape();
+    assertTrue(text, text.contains(
+      "test_bound_seconds_bucket{le=\"0.1\"} 1\n"
+      + "test_bound_seconds_bucket{le=\"0.25\"} 2\n"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refusesToChangeTheTypeOfAMetric() {
+    Metrics.counter("test_clash", "Counted.");
+    Metrics.histogram("test_clash", "Timed.");
+  }
+
+  @Test
+  public void timesStatementsByTheMethodPreparingThem() throws Exception {
+    try (Database db = new Database("jdbc:h2:mem:metrics", 1);
+      Connection conn = db.readConnection()) {
+      try (PreparedStatement ps =
+        Database.prepare(conn, "MetricsTest.queryOnce", "SELECT 1")) {
+        ps.executeQuery().close();
+      }
+      try (PreparedStatement ps =
+        Database.prepare(conn, "MetricsTest.queryTwice", "SELECT 1")) {
+        ps.executeQuery().close();
+        ps.executeQuery().close();
+      }
+    }
+    assertEquals(1, Metrics.histogram("fiets_db_statement_seconds", "",
+      "method", "MetricsTest.queryOnce").getCount());
+    assertEquals(2, Metrics.histogram("fiets_db_statement_seconds", "",
+      "method", "MetricsTest.queryTwice").getCount());
+  }
+}
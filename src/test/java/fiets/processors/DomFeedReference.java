@@ -0,0 +1,72 @@
+package fiets.processors;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import fiets.model.Feed;
+import fiets.model.Post;
+import fiets.processors.xml.Dom;
+import fiets.processors.xml.Xpath;
+
+/**
+ * The former DOM and XPath based parsing of RSS and Atom feeds, kept as
+ * reference for the streaming implementation.
+ */
+public final class DomFeedReference {
+
+  public static String rssTitle(String content) throws Exception {
+    Document doc = Dom.parse(content);
+    return Xpath.xpathAsString(doc, "//channel/title").orElse("-no-title");
+  }
+
+  public static List<Post> rssPosts(Feed feed, String content) throws Exception {
+    Document doc = Dom.parse(content);
+    NodeList items = Xpath.xpathAsNodes(doc, "//item");
+    List<Post> result = new ArrayList<>();
+    int num = items.getLength();
+    for (int i = 0; i < num; i++) {
+      Node item = items.item(i);
+      String title = Xpath.xpathAsString(item, "title").orElse("-no title");
+      String link = Xpath.xpathAsString(item, "link").orElse("-no-link-");
+      if (link.trim().length() == 0) {
+        link = Xpath.xpathAsString(item, "guid").orElse("-no-guid");
+      }
+      String description = Xpath.xpathAsString(item, "description").orElse("");
+      Date date = Xpath.xpathAsString(item, "pubDate")
+          .map(Xml::parseDate)
+          .orElse(new Date());
+      result.add(new Post(0L, link, date, title, description, false, feed));
+    }
+    return result;
+  }
+
+  public static String atomTitle(String content) throws Exception {
+    Document doc = Dom.parse(content);
+    return Xpath.xpathAsString(doc, "/feed/title").orElse("-no title-");
+  }
+
+  public static List<Post> atomPosts(Feed feed, String content) throws Exception {
+    Document doc = Dom.parse(content);
+    NodeList items = Xpath.xpathAsNodes(doc, "//entry");
+    List<Post> result = new ArrayList<>();
+    int num = items.getLength();
+    for (int i = 0; i < num; i++) {
+      Node item = items.item(i);
+      String title = Xpath.xpathAsString(item, "title").orElse("-no title-");
+      String link = Xpath.xpathAsString(item, "link/@href").orElse("-unknown-link-");
+      String description = Xpath.xpathAsString(item, "content").orElse("");
+      Date date = Xpath.xpathAsString(item, "updated")
+          .map(dateString -> Xml.parseDate(dateString))
+          .orElse(new Date());
+      result.add(new Post(0l, link, date, title, description, false, feed));
+    }
+    return result;
+  }
+
+  private DomFeedReference() {}
+}
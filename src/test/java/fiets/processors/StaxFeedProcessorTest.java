@@ -0,0 +1,126 @@
+package fiets.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+import fiets.model.Feed;
+import fiets.model.Post;
+import fiets.sources.FeedContent;
+
+/**
+ * Checks that the streaming processors produce the same posts as the former
+ * DOM and XPath based ones for a corpus of feeds.
+ */
+public class StaxFeedProcessorTest {
+
+  private static final Feed FEED =
+    new Feed(1L, "http://example.com/feed", "Example", null, "OK");
+
+  @Test
+  public void rssMatchesDomReference() throws Exception {
+    for (String name : new String[] { "rss2.xml", "rdf.xml" }) {
+      String content = corpus(name);
+      RssFeedProcessor rss = new RssFeedProcessor();
+      assertTrue(name, rss.canHandle(FEED, FeedContent.of(content)));
+      assertEquals(name, DomFeedReference.rssTitle(content),
+        rss.parseTitle(FEED, FeedContent.of(content)));
+      assertSamePosts(name, DomFeedReference.rssPosts(FEED, content),
+        rss.parsePosts(FEED, FeedContent.of(content)));
+    }
+  }
+
+  @Test
+  public void atomMatchesDomReference() throws Exception {
+    for (String name : new String[] { "atom.xml", "atom-prefixed.xml" }) {
+      String content = corpus(name);
+      AtomFeedProcessor atom = new AtomFeedProcessor();
+      assertTrue(name, atom.canHandle(FEED, FeedContent.of(content)));
+      assertEquals(name, DomFeedReference.atomTitle(content),
+        atom.parseTitle(FEED, FeedContent.of(content)));
+      assertSamePosts(name, DomFeedReference.atomPosts(FEED, content),
+        atom.parsePosts(FEED, FeedContent.of(content)));
+    }
+  }
+
+  @Test
+  public void missingDateFailsLikeDomReference() throws Exception {
+    String content = corpus("rss-no-date.xml");
+    try {
+      DomFeedReference.rssPosts(FEED, content);
+      fail("Reference accepted a missing date.");
+    } catch (IllegalArgumentException expected) {
+      // reference behaviour
+    }
+    try {
+      new RssFeedProcessor().parsePosts(FEED, FeedContent.of(content));
+      fail("Missing date was accepted.");
+    } catch (IllegalArgumentException expected) {
+      // same as reference
+    }
+  }
+
+  @Test
+  public void decodesDeclaredCharsetFromBytes() throws Exception {
+    String content = corpus("rss2.xml").replaceFirst(
+      "encoding=['\"][^'\"]+['\"]", "encoding='ISO-8859-1'");
+    byte[] latin1 = content.getBytes(StandardCharsets.ISO_8859_1);
+    List<Post> expected = DomFeedReference.rssPosts(FEED, content);
+    try (FeedContent fc = FeedContent.of(
+      new ByteArrayInputStream(latin1), "application/rss+xml", null, null)) {
+      assertEquals(StandardCharsets.ISO_8859_1, fc.getCharset());
+      assertSamePosts("latin1", expected,
+        new RssFeedProcessor().parsePosts(FEED, fc));
+    }
+  }
+
+  @Test
+  public void byteOrderMarkWinsAndIsSkipped() throws Exception {
+    String content = corpus("atom.xml");
+    byte[] bom = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+    byte[] utf8 = content.getBytes(StandardCharsets.UTF_8);
+    byte[] bytes = new byte[bom.length + utf8.length];
+    System.arraycopy(bom, 0, bytes, 0, bom.length);
+    System.arraycopy(utf8, 0, bytes, bom.length, utf8.length);
+    try (FeedContent fc = FeedContent.of(new ByteArrayInputStream(bytes),
+      "text/xml; charset=ISO-8859-1", null, null)) {
+      assertEquals(StandardCharsets.UTF_8, fc.getCharset());
+      AtomFeedProcessor atom = new AtomFeedProcessor();
+      assertTrue(atom.canHandle(FEED, fc));
+      assertSamePosts("bom", DomFeedReference.atomPosts(FEED, content),
+        atom.parsePosts(FEED, fc));
+    }
+  }
+
+  private static void assertSamePosts(
+    String name, List<Post> expected, List<Post> actual) {
+    assertFalse(name + " corpus must not be trivial", expected.isEmpty());
+    assertEquals(name, expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Post e = expected.get(i);
+      Post a = actual.get(i);
+      String msg = name + " #" + i;
+      assertEquals(msg, e.getTitle(), a.getTitle());
+      assertEquals(msg, e.getLocation(), a.getLocation());
+      assertEquals(msg, e.getSnippet(), a.getSnippet());
+      assertEquals(msg, e.getDate(), a.getDate());
+      assertEquals(msg, e.isRead(), a.isRead());
+    }
+  }
+
+  static String corpus(String name) throws IOException {
+    try (InputStream in = StaxFeedProcessorTest.class
+      .getResourceAsStream("corpus/" + name)) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package fiets.views;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import fiets.Server;
+import fiets.http.Response;
+import fiets.model.Feed;
+import fiets.model.Post;
+import fiets.views.Pages.Name;
+
+public class PostsHtmlViewTest {
+
+  @Test
+  public void streamsTheSamePage() throws Exception {
+    PostsHtmlView view = view(200);
+    String content = view.getContent();
+    assertTrue(content.endsWith("</html>"));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    view.writeTo(out);
+    assertEquals(content, out.toString(StandardCharsets.UTF_8));
+
+    Response rsp = Server.respond(view);
+    assertEquals("text/html", rsp.getMimeType());
+    try (InputStream in = rsp.getData()) {
+      assertEquals(content,
+        new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void rendersBrokenPostAsError() throws Exception {
+    List<Post> posts = new ArrayList<>();
+    posts.add(new Post(1L, "http://example.com/1", new Date(), "Fine",
+      "", false, feed()));
+    posts.add(new Post(2L, "http://example.com/2", new Date(), "Broken",
+      "", false, null));
+    String content = new PostsHtmlView(
+      Name.unread, posts, Collections.singleton(2L), 2).getContent();
+    assertTrue(content.contains("data-post-id='1'"));
+    assertTrue(content.contains(
+      "<li class='list-group-item post error bookmarked'>"
+      + "<small>Could not render post 2</small>"));
+  }
+
+  private static PostsHtmlView view(int num) {
+    List<Post> posts = new ArrayList<>();
+    for (int i = 0; i < num; i++) {
+      posts.add(new Post(i + 1L, "http://example.com/" + i, new Date(),
+        "Title äöü " + i, "<p>Snippet &amp; more</p>",
+        false, feed()));
+    }
+    return new PostsHtmlView(Name.unread, posts, Collections.emptySet(), num);
+  }
+
+  private static Feed feed() {
+    return new Feed(1L, "http://example.com/feed", "Feed", null, "OK");
+  }
+}